@@ -0,0 +1,403 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.elmakers.mine.bukkit.meta.config.ConfigSchema;
+
+/**
+ * The config keys of every property holder, compiled into minimal perfect hash tables.
+ *
+ * <p>There is a table for every type that holds properties, such as "spell_properties" or "wand_properties",
+ * and for every action and EffectLib class, including the parameters the class inherits. Each table maps a
+ * config field, aliases included, to the id of its property type. Enum types also get a table of their
+ * options, so a value can be checked without going through meta.json.
+ *
+ * <p>Lookups take any CharSequence, hash it in place and compare it against packed key characters, so
+ * checking a key or an option allocates nothing. This is written next to meta.json as {@link #FILE_NAME}
+ * and never changes once loaded.
+ */
+public final class CompiledSchema {
+    public static final String FILE_NAME = "schema.bin";
+
+    private static final int MAGIC = 0x4D534348;
+    private static final int VERSION = 1;
+
+    private final String[] typeKeys;
+    private final Map<String, Integer> typeIds;
+    private final KeyHash[] typeOptions;
+    private final Map<String, KeyHash> holders;
+    private final Map<String, Map<String, KeyHash>> classHolders;
+
+    public CompiledSchema(@Nonnull MetaData data) {
+        // The compiled schema covers every version, so options are not limited to one
+        ConfigSchema schema = new ConfigSchema(data);
+        Map<String, ParameterType> types = schema.getTypes();
+        typeKeys = types.keySet().toArray(new String[0]);
+        typeIds = new HashMap<>();
+        for (int id = 0; id < typeKeys.length; id++) {
+            typeIds.put(typeKeys[id], id);
+        }
+
+        typeOptions = new KeyHash[typeKeys.length];
+        for (int id = 0; id < typeKeys.length; id++) {
+            if (schema.isEnum(typeKeys[id])) {
+                typeOptions[id] = new KeyHash(new ArrayList<>(schema.getOptions(typeKeys[id])), null);
+            }
+        }
+        holders = new HashMap<>();
+        for (Map.Entry<String, Map<String, Parameter>> entry : schema.getHolders().entrySet()) {
+            holders.put(entry.getKey(), compileHolder(entry.getValue()));
+        }
+
+        classHolders = new HashMap<>();
+        for (String section : Arrays.asList(MetaIndex.ACTIONS, MetaIndex.EFFECTLIB_EFFECTS)) {
+            Map<String, KeyHash> compiled = new HashMap<>();
+            for (Map.Entry<String, Map<String, Parameter>> entry : schema.getClassProperties(section).entrySet()) {
+                compiled.put(entry.getKey(), compileHolder(entry.getValue()));
+            }
+            classHolders.put(section, compiled);
+        }
+    }
+
+    private CompiledSchema(String[] typeKeys, KeyHash[] typeOptions, Map<String, KeyHash> holders, Map<String, Map<String, KeyHash>> classHolders) {
+        this.typeKeys = typeKeys;
+        this.typeOptions = typeOptions;
+        this.holders = holders;
+        this.classHolders = classHolders;
+        typeIds = new HashMap<>();
+        for (int id = 0; id < typeKeys.length; id++) {
+            typeIds.put(typeKeys[id], id);
+        }
+    }
+
+    private KeyHash compileHolder(Map<String, Parameter> properties) {
+        // Where parameters share a field, the config schema has already picked which one wins
+        Map<String, Integer> fields = new TreeMap<>();
+        for (Map.Entry<String, Parameter> entry : properties.entrySet()) {
+            fields.put(entry.getKey(), getTypeId(entry.getValue().getType()));
+        }
+        int[] values = new int[fields.size()];
+        int index = 0;
+        for (Integer value : fields.values()) {
+            values[index++] = value;
+        }
+        return new KeyHash(new ArrayList<>(fields.keySet()), values);
+    }
+
+    public int getTypeCount() {
+        return typeKeys.length;
+    }
+
+    /**
+     * Get the id of a type, or -1 if there is no such type.
+     */
+    public int getTypeId(String typeKey) {
+        Integer id = typeIds.get(typeKey);
+        return id == null ? -1 : id;
+    }
+
+    @Nonnull
+    public String getTypeKey(int typeId) {
+        return typeKeys[typeId];
+    }
+
+    public boolean isEnum(int typeId) {
+        return typeId >= 0 && typeOptions[typeId] != null;
+    }
+
+    /**
+     * Check a value against the options of an enum type. Options are lower case.
+     * Any value is allowed for types that are not enums.
+     */
+    public boolean hasOption(int typeId, @Nonnull CharSequence value) {
+        if (!isEnum(typeId)) return true;
+        return typeOptions[typeId].indexOf(value) >= 0;
+    }
+
+    /**
+     * Get the table for a property holder type, such as "spell_properties".
+     */
+    @Nullable
+    public KeyHash getHolder(String typeKey) {
+        return holders.get(typeKey);
+    }
+
+    /**
+     * Get the table for an action or EffectLib class, by section and class key.
+     */
+    @Nullable
+    public KeyHash getClassHolder(String section, String classKey) {
+        Map<String, KeyHash> sectionHolders = classHolders.get(section);
+        return sectionHolders == null ? null : sectionHolders.get(classKey);
+    }
+
+    public void save(@Nonnull File outputFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(typeKeys.length);
+            for (int id = 0; id < typeKeys.length; id++) {
+                out.writeUTF(typeKeys[id]);
+                out.writeBoolean(typeOptions[id] != null);
+                if (typeOptions[id] != null) {
+                    typeOptions[id].write(out);
+                }
+            }
+            writeHolders(out, holders);
+            out.writeInt(classHolders.size());
+            for (Map.Entry<String, Map<String, KeyHash>> entry : new TreeMap<>(classHolders).entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeHolders(out, entry.getValue());
+            }
+        }
+    }
+
+    private static void writeHolders(DataOutputStream out, Map<String, KeyHash> holders) throws IOException {
+        out.writeInt(holders.size());
+        for (Map.Entry<String, KeyHash> entry : new TreeMap<>(holders).entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    @Nonnull
+    public static CompiledSchema load(@Nonnull File inputFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a compiled schema: " + inputFile.getAbsolutePath());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compiled schema version " + version + ": " + inputFile.getAbsolutePath());
+            }
+            String[] typeKeys = new String[in.readInt()];
+            KeyHash[] typeOptions = new KeyHash[typeKeys.length];
+            for (int id = 0; id < typeKeys.length; id++) {
+                typeKeys[id] = in.readUTF();
+                if (in.readBoolean()) {
+                    typeOptions[id] = KeyHash.read(in);
+                }
+            }
+            Map<String, KeyHash> holders = readHolders(in);
+            Map<String, Map<String, KeyHash>> classHolders = new HashMap<>();
+            int sectionCount = in.readInt();
+            for (int i = 0; i < sectionCount; i++) {
+                String section = in.readUTF();
+                classHolders.put(section, readHolders(in));
+            }
+            return new CompiledSchema(typeKeys, typeOptions, holders, classHolders);
+        }
+    }
+
+    private static Map<String, KeyHash> readHolders(DataInputStream in) throws IOException {
+        Map<String, KeyHash> holders = new HashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            holders.put(key, KeyHash.read(in));
+        }
+        return holders;
+    }
+
+    /**
+     * A minimal perfect hash table over a fixed set of keys, built with hash and displace:
+     * keys are split into buckets by one hash, and each bucket gets the seed of a second hash
+     * that puts all of its keys in free slots. Every key has its own slot, and there are exactly
+     * as many slots as keys.
+     */
+    public static final class KeyHash {
+        private static final int MAX_SEED = 1 << 24;
+
+        private final int[] seeds;
+        // Key characters for each slot, packed end to end
+        private final char[] chars;
+        private final int[] offsets;
+        private final int[] values;
+
+        KeyHash(List<String> keys, @Nullable int[] values) {
+            int size = keys.size();
+            seeds = new int[Math.max(1, (size + 1) / 2)];
+            int[] slotKeys = new int[size];
+            Arrays.fill(slotKeys, -1);
+
+            List<List<Integer>> buckets = new ArrayList<>();
+            for (int i = 0; i < seeds.length; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            for (int i = 0; i < size; i++) {
+                buckets.get(hash(keys.get(i), 0) % seeds.length).add(i);
+            }
+            List<Integer> bucketOrder = new ArrayList<>();
+            for (int i = 0; i < seeds.length; i++) {
+                bucketOrder.add(i);
+            }
+            // Place the largest buckets first, while there are still plenty of free slots
+            Collections.sort(bucketOrder, (a, b) -> Integer.compare(buckets.get(b).size(), buckets.get(a).size()));
+
+            int[] bucketSlots = new int[0];
+            for (int bucket : bucketOrder) {
+                List<Integer> bucketKeys = buckets.get(bucket);
+                if (bucketKeys.isEmpty()) break;
+                if (bucketSlots.length < bucketKeys.size()) {
+                    bucketSlots = new int[bucketKeys.size()];
+                }
+                int seed = 1;
+                while (!tryPlace(keys, bucketKeys, seed, slotKeys, bucketSlots)) {
+                    if (++seed >= MAX_SEED) {
+                        throw new IllegalStateException("Could not build a perfect hash for " + bucketKeys.size() + " keys, are there duplicates?");
+                    }
+                }
+                seeds[bucket] = seed;
+                for (int i = 0; i < bucketKeys.size(); i++) {
+                    slotKeys[bucketSlots[i]] = bucketKeys.get(i);
+                }
+            }
+
+            offsets = new int[size + 1];
+            StringBuilder packed = new StringBuilder();
+            this.values = values == null ? null : new int[size];
+            for (int slot = 0; slot < size; slot++) {
+                packed.append(keys.get(slotKeys[slot]));
+                offsets[slot + 1] = packed.length();
+                if (values != null) {
+                    this.values[slot] = values[slotKeys[slot]];
+                }
+            }
+            chars = new char[packed.length()];
+            packed.getChars(0, packed.length(), chars, 0);
+        }
+
+        private KeyHash(int[] seeds, char[] chars, int[] offsets, @Nullable int[] values) {
+            this.seeds = seeds;
+            this.chars = chars;
+            this.offsets = offsets;
+            this.values = values;
+        }
+
+        private static boolean tryPlace(List<String> keys, List<Integer> bucketKeys, int seed, int[] slotKeys, int[] bucketSlots) {
+            int size = slotKeys.length;
+            for (int i = 0; i < bucketKeys.size(); i++) {
+                int slot = hash(keys.get(bucketKeys.get(i)), seed) % size;
+                if (slotKeys[slot] != -1) return false;
+                for (int j = 0; j < i; j++) {
+                    if (bucketSlots[j] == slot) return false;
+                }
+                bucketSlots[i] = slot;
+            }
+            return true;
+        }
+
+        private static int hash(CharSequence key, int seed) {
+            int hash = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x01000193;
+            }
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            hash ^= hash >>> 13;
+            hash *= 0xC2B2AE35;
+            hash ^= hash >>> 16;
+            return hash & 0x7FFFFFFF;
+        }
+
+        public int size() {
+            return offsets.length - 1;
+        }
+
+        /**
+         * Get the slot of a key, or -1 if it is not in the table.
+         */
+        public int indexOf(@Nullable CharSequence key) {
+            int size = size();
+            if (key == null || size == 0) return -1;
+            int seed = seeds[hash(key, 0) % seeds.length];
+            if (seed == 0) return -1;
+            int slot = hash(key, seed) % size;
+            int start = offsets[slot];
+            int length = offsets[slot + 1] - start;
+            if (key.length() != length) return -1;
+            for (int i = 0; i < length; i++) {
+                if (chars[start + i] != key.charAt(i)) return -1;
+            }
+            return slot;
+        }
+
+        public boolean contains(@Nullable CharSequence key) {
+            return indexOf(key) >= 0;
+        }
+
+        /**
+         * Get the type id of a property, or -1 if the key is unknown or its type is not in the schema.
+         */
+        public int getTypeId(@Nullable CharSequence key) {
+            int slot = indexOf(key);
+            return slot < 0 || values == null ? -1 : values[slot];
+        }
+
+        @Nonnull
+        public String getKey(int slot) {
+            return new String(chars, offsets[slot], offsets[slot + 1] - offsets[slot]);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(seeds.length);
+            for (int seed : seeds) {
+                out.writeInt(seed);
+            }
+            out.writeInt(offsets.length);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(chars.length);
+            for (char c : chars) {
+                out.writeChar(c);
+            }
+            out.writeBoolean(values != null);
+            if (values != null) {
+                for (int value : values) {
+                    out.writeInt(value);
+                }
+            }
+        }
+
+        private static KeyHash read(DataInputStream in) throws IOException {
+            int[] seeds = new int[in.readInt()];
+            for (int i = 0; i < seeds.length; i++) {
+                seeds[i] = in.readInt();
+            }
+            int[] offsets = new int[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readInt();
+            }
+            char[] chars = new char[in.readInt()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = in.readChar();
+            }
+            int[] values = null;
+            if (in.readBoolean()) {
+                values = new int[offsets.length - 1];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = in.readInt();
+                }
+            }
+            return new KeyHash(seeds, chars, offsets, values);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Completion indexes for the editor hints, written next to meta.json as completions.json.
+ *
+ * <p>There is one index per type with options and one per property holder. Each index lists its
+ * keys sorted by the lowercased text the hints match against, so a prefix lookup is a binary search,
+ * and has trigram postings for substring lookups and a precomputed rank for sorting.
+ */
+public class CompletionIndex {
+    public static final String FILE_NAME = "completions.json";
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Completions> types = new TreeMap<>();
+    private final Map<String, Completions> properties = new TreeMap<>();
+
+    public CompletionIndex(@Nonnull MetaData data) {
+        ParameterStore parameterStore = data.getParameterStore();
+        for (Map.Entry<String, ParameterType> typeEntry : data.getTypes().entrySet()) {
+            ParameterType type = typeEntry.getValue();
+            Map<String, String> options = type.getOptions();
+            if (options != null && !options.isEmpty()) {
+                List<Entry> entries = new ArrayList<>();
+                for (Map.Entry<String, String> option : options.entrySet()) {
+                    entries.add(new Entry(option.getKey(), option.getKey() + trimTags(option.getValue())));
+                }
+                types.put(typeEntry.getKey(), new Completions(entries));
+            }
+
+            // This mirrors Hints.getProperties, which maps fields to property keys
+            Map<String, String> parameters = type.getParameters();
+            if (parameters != null && !parameters.isEmpty()) {
+                Map<String, Entry> fields = new TreeMap<>();
+                for (String key : new TreeSet<>(parameters.keySet())) {
+                    Parameter parameter = parameterStore.getParameter(key);
+                    if (parameter == null || parameter.getAlias() != null || parameter.getImportance() < 0) continue;
+                    String field = parameter.getField();
+                    fields.put(field, new Entry(field, field + key));
+                }
+                if (!fields.isEmpty()) {
+                    properties.put(typeEntry.getKey(), new Completions(new ArrayList<>(fields.values())));
+                }
+            }
+        }
+    }
+
+    @JsonProperty("types")
+    public Map<String, Completions> getTypes() {
+        return types;
+    }
+
+    @JsonProperty("properties")
+    public Map<String, Completions> getProperties() {
+        return properties;
+    }
+
+    public void save(@Nonnull File outputFile, @Nonnull SortedObjectMapper mapper) throws IOException {
+        mapper.writeValue(outputFile, this);
+    }
+
+    // Same as trimTags in formatters.js
+    private static String trimTags(@Nullable String description) {
+        if (description == null) return "";
+        int index = description.lastIndexOf('>');
+        if (index > 0 && index < description.length() - 1) {
+            description = description.substring(index + 1);
+        }
+        return description;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String text;
+
+        Entry(String key, String text) {
+            this.key = key;
+            this.text = text.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static class Completions {
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private final int[] ranks;
+        private final Map<String, int[]> prefixes = new TreeMap<>();
+        private final Map<String, List<Integer>> trigrams = new TreeMap<>();
+
+        Completions(List<Entry> entries) {
+            // Sorted by plain string order, which is also how javascript compares strings
+            Collections.sort(entries, (a, b) -> a.text.compareTo(b.text));
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                keys.add(entry.key);
+                texts.add(entry.text);
+
+                String first = entry.text.isEmpty() ? "" : entry.text.substring(0, 1);
+                int[] range = prefixes.get(first);
+                if (range == null) {
+                    range = new int[] {i, i + 1};
+                    prefixes.put(first, range);
+                } else {
+                    range[1] = i + 1;
+                }
+
+                for (int start = 0; start + GRAM_LENGTH <= entry.text.length(); start++) {
+                    String gram = entry.text.substring(start, start + GRAM_LENGTH);
+                    List<Integer> postings = trigrams.get(gram);
+                    if (postings == null) {
+                        postings = new ArrayList<>();
+                        trigrams.put(gram, postings);
+                    }
+                    if (postings.isEmpty() || postings.get(postings.size() - 1) != i) {
+                        postings.add(i);
+                    }
+                }
+            }
+
+            // Hints.sortProperties breaks ties in importance by key, in plain string order. The editor works
+            // out importance itself, so ranks only stand in for comparing keys.
+            List<Integer> byKey = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                byKey.add(i);
+            }
+            Collections.sort(byKey, (a, b) -> entries.get(a).key.compareTo(entries.get(b).key));
+            ranks = new int[entries.size()];
+            for (int rank = 0; rank < byKey.size(); rank++) {
+                ranks[byKey.get(rank)] = rank;
+            }
+        }
+
+        @JsonProperty("keys")
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        @JsonProperty("texts")
+        public List<String> getTexts() {
+            return texts;
+        }
+
+        @JsonProperty("ranks")
+        public int[] getRanks() {
+            return ranks;
+        }
+
+        @JsonProperty("prefixes")
+        public Map<String, int[]> getPrefixes() {
+            return prefixes;
+        }
+
+        @JsonProperty("trigrams")
+        public Map<String, List<Integer>> getTrigrams() {
+            return trigrams;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The append-only log of property descriptions written by the reference page's describe.php.
+ *
+ * <p>The web side overlays this log on top of meta.json when serving metadata, this class folds
+ * the pending entries back into meta.json so the log can start over empty.
+ *
+ * <p>describe.php checks edits against the list of property keys in {@link #KEYS_FILE}, which is
+ * much cheaper to read than meta.json.
+ */
+public class DescriptionLog {
+    public static final String LOG_FILE = "descriptions.log";
+    public static final String KEYS_FILE = "property_keys.json";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String EDITS_FILE = "edits.json";
+
+    private final SortedObjectMapper mapper;
+    private final File logFile;
+    private final File compactingFile;
+    private final File editsFile;
+    private final List<ObjectNode> applied = new ArrayList<>();
+    private long compactedLength;
+
+    public DescriptionLog(@Nonnull File metaFile, @Nonnull SortedObjectMapper mapper) {
+        this.mapper = mapper;
+        File folder = metaFile.getAbsoluteFile().getParentFile();
+        logFile = new File(folder, LOG_FILE);
+        compactingFile = new File(folder, LOG_FILE + COMPACTING_SUFFIX);
+        editsFile = new File(folder, EDITS_FILE);
+    }
+
+    /**
+     * Save the sorted keys of every property that can be described, next to meta.json.
+     */
+    public static void saveKeys(@Nonnull MetaData data, @Nonnull File metaFile, @Nonnull SortedObjectMapper mapper) throws IOException {
+        File keysFile = new File(metaFile.getAbsoluteFile().getParentFile(), KEYS_FILE);
+        mapper.writeValue(keysFile, new TreeSet<>(data.getParameters().keySet()));
+    }
+
+    /**
+     * Move the pending log aside and apply its entries to the given metadata, in order.
+     * A log left over from a previous compaction that was never saved is applied first.
+     */
+    public void apply(@Nonnull MetaData data) throws IOException {
+        if (logFile.exists() && !compactingFile.exists()) {
+            // describe.php opens the log in append mode for every edit, so renaming it here
+            // lets new edits start a fresh log while we work on this one.
+            if (!logFile.renameTo(compactingFile)) {
+                throw new IOException("Could not move " + logFile.getAbsolutePath() + " aside for compaction");
+            }
+        }
+        if (!compactingFile.exists()) return;
+
+        System.out.println("Compacting description edits from " + compactingFile.getAbsolutePath());
+        byte[] contents = Files.readAllBytes(compactingFile.toPath());
+        // Only whole lines are applied, a partly written edit is left for commit to carry over
+        int length = contents.length;
+        while (length > 0 && contents[length - 1] != '\n') length--;
+        compactedLength = length;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents, 0, length), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                JsonNode node;
+                try {
+                    node = mapper.readTree(line);
+                } catch (IOException ex) {
+                    System.out.println("  Skipping malformed description edit: " + line);
+                    continue;
+                }
+                if (!node.isObject() || !node.has("property") || !node.has("description")) continue;
+                ObjectNode edit = (ObjectNode)node;
+                String key = edit.get("property").asText();
+                Parameter parameter = data.getParameterStore().getParameter(key);
+                if (parameter == null) {
+                    System.out.println("  Skipping description edit for unknown property: " + key);
+                    continue;
+                }
+                List<String> description = new ArrayList<>();
+                for (JsonNode descriptionLine : edit.get("description")) {
+                    description.add(descriptionLine.asText());
+                }
+                edit.set("previous", mapper.valueToTree(parameter.getDescription()));
+                parameter.setDescription(description);
+                applied.add(edit);
+                System.out.println("  Updated description of " + key);
+            }
+        }
+    }
+
+    /**
+     * Call once the metadata has been saved, this drops the compacted log and records
+     * the applied edits in edits.json, if that file is in use.
+     *
+     * <p>describe.php may have opened the log just before it was moved aside, and written to it
+     * after it was read. Anything past what was applied goes back into the log for next time.
+     */
+    public void commit() throws IOException {
+        if (!applied.isEmpty() && editsFile.exists()) {
+            JsonNode root = mapper.readTree(editsFile);
+            ArrayNode edits = root != null && root.isArray() ? (ArrayNode)root : mapper.createArrayNode();
+            edits.addAll(applied);
+            mapper.writerWithDefaultPrettyPrinter().writeValue(editsFile, edits);
+        }
+        applied.clear();
+        if (!compactingFile.exists()) return;
+        byte[] appended = readFrom(compactingFile, compactedLength);
+        if (appended.length > 0) {
+            System.out.println("Carrying over description edits made while compacting");
+            Files.write(logFile.toPath(), appended, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        compactedLength = 0;
+        if (!compactingFile.delete()) {
+            throw new IOException("Could not remove " + compactingFile.getAbsolutePath());
+        }
+    }
+
+    @Nonnull
+    private static byte[] readFrom(@Nonnull File file, long offset) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            if (input.length() <= offset) return new byte[0];
+            input.seek(offset);
+            byte[] contents = new byte[(int)(input.length() - offset)];
+            input.readFully(contents);
+            return contents;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Lookups derived from the metadata that the web editors would otherwise build on every page load.
+ * These are written out with meta.json as its "indexes" section.
+ */
+public class EditorIndexes {
+    private final Map<String, List<String>> aliases = new TreeMap<>();
+    private final Map<String, Map<String, String>> fields = new TreeMap<>();
+    private final Map<String, Map<String, String>> mergedClassFields = new TreeMap<>();
+
+    public EditorIndexes(@Nonnull MetaData data) {
+        ParameterStore parameterStore = data.getParameterStore();
+        for (Map.Entry<String, Parameter> entry : data.getParameters().entrySet()) {
+            String alias = entry.getValue().getAlias();
+            if (alias == null) continue;
+            List<String> aliasKeys = aliases.get(alias);
+            if (aliasKeys == null) {
+                aliasKeys = new ArrayList<>();
+                aliases.put(alias, aliasKeys);
+            }
+            aliasKeys.add(entry.getKey());
+        }
+        for (List<String> aliasKeys : aliases.values()) {
+            Collections.sort(aliasKeys);
+        }
+
+        for (Map.Entry<String, ParameterType> entry : data.getTypes().entrySet()) {
+            Map<String, String> parameters = entry.getValue().getParameters();
+            if (parameters != null && !parameters.isEmpty()) {
+                Map<String, String> typeFields = new TreeMap<>();
+                addFields(parameters, typeFields, parameterStore);
+                fields.put(entry.getKey(), typeFields);
+            }
+        }
+
+        Map<String, String> actionFields = new TreeMap<>();
+        for (SpellActionDescription action : data.getClasses().getActions().values()) {
+            addFields(action.getParameters(), actionFields, parameterStore);
+        }
+        mergedClassFields.put("actions", actionFields);
+        Map<String, String> effectFields = new TreeMap<>();
+        for (EffectDescription effect : data.getClasses().getEffects().values()) {
+            addFields(effect.getParameters(), effectFields, parameterStore);
+        }
+        mergedClassFields.put("effectlib_effects", effectFields);
+    }
+
+    private static void addFields(Map<String, String> parameters, Map<String, String> fields, ParameterStore parameterStore) {
+        if (parameters == null) return;
+        for (String key : parameters.keySet()) {
+            Parameter parameter = parameterStore.getParameter(key);
+            if (parameter != null) {
+                fields.put(parameter.getField(), key);
+            }
+        }
+    }
+
+    /**
+     * Property keys that have aliases, mapped to the keys of their aliases.
+     */
+    @JsonProperty("aliases")
+    public Map<String, List<String>> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Property holder types mapped to their fields, each mapped to its property key.
+     */
+    @JsonProperty("fields")
+    public Map<String, Map<String, String>> getFields() {
+        return fields;
+    }
+
+    /**
+     * The fields of every class of each classed section, merged, mapped to their property keys.
+     */
+    @JsonProperty("merged_class_fields")
+    public Map<String, Map<String, String>> getMergedClassFields() {
+        return mergedClassFields;
+    }
+}
@@ -0,0 +1,107 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.entity.Player;
+
+import com.google.common.base.CaseFormat;
+
+/**
+ * The public instance fields of an EffectLib effect class that can be configured, with their config keys and
+ * getters for reading their default values.
+ *
+ * <p>These are looked up once per class and are safe to use from several threads. Every effect has
+ * all of the fields of Effect, so getters and key conversions are also shared between classes.
+ */
+class EffectFields {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final Map<Class<?>, EffectFields> CLASSES = new ConcurrentHashMap<>();
+    private static final Map<Field, MethodHandle> GETTERS = new ConcurrentHashMap<>();
+    private static final Map<String, String> KEYS = new ConcurrentHashMap<>();
+
+    private final Class<?> classType;
+    private final String[] names;
+    private final String[] keys;
+    private final Class<?>[] types;
+    private final MethodHandle[] getters;
+
+    private EffectFields(Class<?> classType) {
+        this.classType = classType;
+        List<Field> fields = new ArrayList<>();
+        for (Field field : classType.getFields()) {
+            // Constants aren't configured per effect
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            if (field.getType() == Player.class || field.getType() == Runnable.class) continue;
+            fields.add(field);
+        }
+        names = new String[fields.size()];
+        keys = new String[fields.size()];
+        types = new Class<?>[fields.size()];
+        getters = new MethodHandle[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            names[i] = field.getName();
+            keys[i] = KEYS.computeIfAbsent(field.getName(), name -> CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name));
+            types[i] = field.getType();
+            getters[i] = GETTERS.computeIfAbsent(field, EffectFields::unreflect);
+        }
+    }
+
+    @Nullable
+    private static MethodHandle unreflect(Field field) {
+        try {
+            // Typed as Object (Object) so every getter can be called with invokeExact
+            return MethodHandles.publicLookup().unreflectGetter(field).asType(GETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException ex) {
+            System.err.println("Error reading " + field.getName() + " of " + field.getDeclaringClass().getName());
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    @Nonnull
+    static EffectFields of(@Nonnull Class<?> classType) {
+        return CLASSES.computeIfAbsent(classType, EffectFields::new);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    Class<?> getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * Read the value of every field from an effect, as the strings ParameterList stores.
+     */
+    @Nonnull
+    String[] getDefaults(@Nonnull Object instance) {
+        String[] defaults = new String[getters.length];
+        for (int i = 0; i < getters.length; i++) {
+            if (getters[i] == null) continue;
+            try {
+                Object value = (Object)getters[i].invokeExact(instance);
+                defaults[i] = value == null ? null : value.toString().toLowerCase();
+            } catch (Throwable ex) {
+                System.err.println("Error reading " + names[i] + " of " + classType.getName());
+                ex.printStackTrace();
+            }
+        }
+        return defaults;
+    }
+}
@@ -1,18 +1,29 @@
 package com.elmakers.mine.bukkit.meta;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.entity.EntityType;
-import org.bukkit.entity.Player;
 import org.reflections.Reflections;
 
 import com.elmakers.mine.bukkit.action.BaseSpellAction;
@@ -35,6 +46,7 @@ import com.elmakers.mine.bukkit.magic.MageClass;
 import com.elmakers.mine.bukkit.magic.MageModifier;
 import com.elmakers.mine.bukkit.magic.MagicController;
 import com.elmakers.mine.bukkit.meta.platform.Platform;
+import com.elmakers.mine.bukkit.meta.server.MetaServer;
 import com.elmakers.mine.bukkit.mob.GoalType;
 import com.elmakers.mine.bukkit.spell.ActionSpell;
 import com.elmakers.mine.bukkit.spell.BaseSpell;
@@ -46,7 +58,9 @@ import com.elmakers.mine.bukkit.utility.CompatibilityLib;
 import com.elmakers.mine.bukkit.wand.WandProperties;
 import com.elmakers.mine.bukkit.world.MagicWorld;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.google.common.base.CaseFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import de.slikey.effectlib.Effect;
 import de.slikey.effectlib.EffectManager;
@@ -61,54 +75,368 @@ public class MagicMeta {
     private final Mage mage;
 
     private MetaData data;
+    private DescriptionLog descriptionLog;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private WorkerPool workers;
+
+    // Set up by prepareActionSpell, actions are all interrogated against the same spell
+    private ActionSpell actionSpell;
+    private CastContext actionContext;
 
     public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("--worker")) {
+            runWorker();
+            return;
+        }
         if (args.length == 0) {
-            System.out.println("Usage: MagicMeta <meta.json>");
+            System.out.println("Usage: MagicMeta <meta.json> [--regenerate] [--serve=port] [--threads=N] [--workers=N] [--versions=folder]");
             return;
         }
-        DummyPlugin plugin = new DummyPlugin();
-        MagicController controller = new MagicController(plugin);
-        Platform platform = new Platform(controller);
-        CompatibilityLib.initialize(platform);
+        boolean regenerate = false;
+        int port = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int workerCount = 0;
+        File versionsFolder = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--regenerate")) {
+                regenerate = true;
+            } else if (args[i].startsWith("--serve=")) {
+                port = Integer.parseInt(args[i].substring("--serve=".length()));
+            } else if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].startsWith("--workers=")) {
+                workerCount = Integer.parseInt(args[i].substring("--workers=".length()));
+            } else if (args[i].startsWith("--versions=")) {
+                versionsFolder = new File(args[i].substring("--versions=".length()));
+            }
+        }
 
         String fileName = args[0];
-        boolean regenerate = (args.length > 1 && args[1].equals("--regenerate"));
-        MagicMeta meta = new MagicMeta(controller);
+        File metaFile = new File(fileName);
+        if (versionsFolder != null) {
+            // Each version gets its own Magic, so don't set up the one MagicMeta was built with
+            try {
+                new MultiVersionGenerator(metaFile, versionsFolder, threads).generate();
+            } catch (Exception ex) {
+                System.out.println("An error ocurred generating metadata " + ex.getMessage());
+                ex.printStackTrace();
+            }
+            return;
+        }
+
+        MagicMeta meta;
         try {
-            File metaFile = new File(fileName);
             if (!regenerate) {
                 System.out.println("Loading " + metaFile.getAbsolutePath());
-                meta.loadMeta(metaFile);
             } else {
                 System.out.println("Regenerating");
             }
+            meta = createAndLoad(regenerate ? null : metaFile);
+        } catch (Exception ex) {
+            System.out.println("An error ocurred loading metadata " + ex.getMessage());
+            ex.printStackTrace();
+            return;
+        }
+        meta.threads = threads;
+        try {
+            if (workerCount > 0) {
+                meta.workers = new WorkerPool(workerCount);
+            }
             meta.generateMeta();
             System.out.println("Saving to " + metaFile.getAbsolutePath());
             meta.saveMeta(metaFile);
         } catch (Exception ex) {
             System.out.println("An error ocurred generating metadata " + ex.getMessage());
             ex.printStackTrace();
+            meta.closeWorkers();
+            return;
         }
+
+        if (port > 0) {
+            try {
+                MetaServer server = new MetaServer(port, threads, () -> meta.regenerate(metaFile));
+                server.publish(meta.data);
+                // Descriptions edited on the website go out to editors without waiting for a regeneration
+                File descriptionLogFile = new File(metaFile.getAbsoluteFile().getParentFile(), DescriptionLog.LOG_FILE);
+                server.watch(descriptionLogFile, () -> meta.reload(metaFile));
+                server.start();
+                System.out.println("Serving metadata on http://localhost:" + port + "/");
+            } catch (Exception ex) {
+                System.out.println("An error ocurred starting the server " + ex.getMessage());
+                ex.printStackTrace();
+            }
+            // Workers are kept for regenerating, they exit when this process does
+            return;
+        }
+        meta.closeWorkers();
         System.out.println("Done.");
     }
 
+    private static MagicMeta create() {
+        DummyPlugin plugin = new DummyPlugin();
+        MagicController controller = new MagicController(plugin);
+        Platform platform = new Platform(controller);
+        CompatibilityLib.initialize(platform);
+        return new MagicMeta(controller);
+    }
+
+    /**
+     * Set up Magic, and load the metadata last saved to the given file if there is any.
+     * Reading metadata doesn't need Magic, so that happens while Magic is being set up.
+     */
+    @Nonnull
+    private static MagicMeta createAndLoad(@Nullable File metaFile) throws IOException {
+        ExecutorService startup = Executors.newSingleThreadExecutor();
+        Future<MagicMeta> creating = startup.submit(MagicMeta::create);
+        startup.shutdown();
+        MetaData loaded = metaFile == null ? null : readMeta(metaFile, new SortedObjectMapper(), true);
+        MagicMeta meta;
+        try {
+            meta = creating.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted setting up Magic", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new IOException("Error setting up Magic", cause);
+        }
+        if (loaded != null) {
+            meta.useMeta(loaded, metaFile);
+        }
+        return meta;
+    }
+
+    /**
+     * Generate and save metadata for the version of Magic this class was loaded with,
+     * see {@link MultiVersionGenerator}.
+     * This picks up from the last metadata saved for this version, or the given metadata if there isn't any yet.
+     * Descriptions are edited on the given metadata, so those always replace this version's own.
+     */
+    @Nonnull
+    public static JsonNode generateVersion(@Nullable JsonNode base, @Nonnull File metaFile) throws IOException {
+        MagicMeta meta = createAndLoad(metaFile);
+        if (meta.data == null && base != null) {
+            meta.data = meta.mapper.convertValue(base, MetaData.class);
+            meta.data.loaded();
+        } else if (base != null) {
+            copyDescriptions(base, meta.data);
+        }
+        meta.generateMeta();
+        metaFile.getAbsoluteFile().getParentFile().mkdirs();
+        System.out.println("Saving to " + metaFile.getAbsolutePath());
+        meta.saveMeta(metaFile);
+        return meta.mapper.valueToTree(meta.data);
+    }
+
+    private static void copyDescriptions(@Nonnull JsonNode base, @Nonnull MetaData data) {
+        JsonNode baseProperties = base.path("properties");
+        for (Map.Entry<String, Parameter> entry : data.getParameters().entrySet()) {
+            JsonNode description = baseProperties.path(entry.getKey()).path("description");
+            if (!description.isArray()) continue;
+            List<String> lines = new ArrayList<>();
+            for (JsonNode line : description) {
+                lines.add(line.asText());
+            }
+            entry.getValue().setDescription(lines);
+        }
+    }
+
+    /**
+     * Answer requests from a {@link WorkerPool}, until the pool closes stdin.
+     * Each request is one line of JSON, and so is each response.
+     */
+    private static void runWorker() {
+        // Magic logs to stdout, keep that for responses
+        PrintStream responses = System.out;
+        System.setOut(System.err);
+        MagicMeta meta = create();
+        try {
+            meta.answerRequests(System.in, responses);
+        } catch (IOException ex) {
+            System.err.println("Worker stopped: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    private void answerRequests(@Nonnull InputStream input, @Nonnull PrintStream responses) throws IOException {
+        // Not the sorted mapper, that drops null defaults
+        ObjectMapper mapper = new ObjectMapper();
+        EffectManager effectManager = new EffectManager(new DummyPlugin());
+        prepareActionSpell(new ParameterStore());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            JsonNode request = mapper.readTree(line);
+            String kind = request.path("kind").asText();
+            ObjectNode response = mapper.createObjectNode();
+            ArrayNode results = response.putArray("results");
+            for (JsonNode nameNode : request.path("names")) {
+                String name = nameNode.asText();
+                ObjectNode result = results.addObject();
+                result.put("name", name);
+                // A new store for each class, so lookups don't depend on what this worker did before
+                RecordingParameterStore parameterStore = new RecordingParameterStore();
+                try {
+                    ParameterList parameters;
+                    switch (kind) {
+                        case "action":
+                            ScannedAction action = interrogateAction(Class.forName(name).asSubclass(SpellAction.class), parameterStore);
+                            parameters = action.parameters;
+                            if (action.handlers != null) {
+                                result.set("handlers", mapper.valueToTree(action.handlers));
+                            }
+                            break;
+                        case "effect":
+                            Class<? extends Effect> effectClass = Class.forName(name).asSubclass(Effect.class);
+                            parameters = collectEffectProperties(new ScannedEffect(effectClass, effectManager, null), parameterStore);
+                            break;
+                        case "mob":
+                            parameters = interrogateMob(EntityType.valueOf(name), parameterStore);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown kind: " + kind);
+                    }
+                    result.set("parameters", mapper.valueToTree(parameters));
+                    parameterStore.writeReads(result.putArray("reads"));
+                } catch (Exception ex) {
+                    System.err.println("Error interrogating " + name);
+                    ex.printStackTrace();
+                    result.put("error", ex.toString());
+                }
+            }
+            responses.println(mapper.writeValueAsString(response));
+            responses.flush();
+        }
+    }
+
+    /**
+     * Interrogate on the worker processes, if there are any, returning results by name.
+     * If the workers fail, this returns null and everything is interrogated in this process instead.
+     */
+    @Nullable
+    private Map<String, JsonNode> interrogateOnWorkers(@Nonnull String kind, @Nonnull List<String> names) {
+        if (workers == null) return null;
+        try {
+            Map<String, JsonNode> results = new HashMap<>();
+            for (JsonNode result : workers.interrogate(kind, names)) {
+                results.put(result.path("name").asText(), result);
+            }
+            return results;
+        } catch (IOException | InterruptedException ex) {
+            System.out.println("Worker processes failed, interrogating here instead: " + ex.getMessage());
+            ex.printStackTrace();
+            closeWorkers();
+            return null;
+        }
+    }
+
+    /**
+     * The parameters a worker found for one class, with their keys in our own parameter store.
+     */
+    @Nonnull
+    private ParameterList replay(@Nonnull JsonNode result) throws ClassNotFoundException {
+        if (result.has("error")) {
+            throw new IllegalStateException("Worker failed: " + result.get("error").asText());
+        }
+        return RecordingParameterStore.replay(result, data.getParameterStore());
+    }
+
+    private void closeWorkers() {
+        if (workers == null) return;
+        try {
+            workers.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        workers = null;
+    }
+
     private MagicMeta(MagicController controller) {
         this.controller = controller;
         mage = new Mage("Interrogator", controller);
     }
 
-    private void loadMeta(@Nonnull File inputFile) throws IOException {
-        if (inputFile.exists()) {
-            JsonNode root = mapper.readTree(inputFile);
-            data = mapper.convertValue(root, MetaData.class);
-            data.loaded();
+    /**
+     * Generate again, on top of what was last saved, for the server. This always builds new MetaData
+     * rather than changing the copy the server is still serving.
+     */
+    private MetaData regenerate(@Nonnull File metaFile) throws IOException {
+        data = null;
+        loadMeta(metaFile, true);
+        generateMeta();
+        saveMeta(metaFile);
+        return data;
+    }
+
+    /**
+     * Load what was last saved along with any new description edits, and save it again.
+     * This is much quicker than regenerating, for when only descriptions have changed.
+     */
+    private MetaData reload(@Nonnull File metaFile) throws IOException {
+        data = null;
+        loadMeta(metaFile, false);
+        saveMeta(metaFile);
+        return data;
+    }
+
+    private void loadMeta(@Nonnull File inputFile, boolean generating) throws IOException {
+        MetaData loaded = readMeta(inputFile, mapper, generating);
+        if (loaded != null) {
+            useMeta(loaded, inputFile);
+        }
+    }
+
+    /**
+     * Read saved metadata. When it is going to be generated again, and was generated for several versions
+     * before, the other versions' options and the version masks are dropped since this generates one version.
+     */
+    @Nullable
+    private static MetaData readMeta(@Nonnull File inputFile, @Nonnull SortedObjectMapper mapper, boolean generating) throws IOException {
+        if (!inputFile.exists()) return null;
+        JsonNode root = mapper.readTree(inputFile);
+        if (generating) {
+            MultiVersionGenerator.removeVersionedOptions(root);
         }
+        MetaData loaded = mapper.convertValue(root, MetaData.class);
+        loaded.loaded();
+        return loaded;
+    }
+
+    private void useMeta(@Nonnull MetaData loaded, @Nonnull File inputFile) throws IOException {
+        data = loaded;
+
+        // Fold in any descriptions edited on the website since the last run
+        descriptionLog = new DescriptionLog(inputFile, mapper);
+        descriptionLog.apply(data);
     }
 
     private void saveMeta(@Nonnull File outputFile) throws IOException {
         data.update();
+        saveMeta(data, outputFile, mapper);
+        if (descriptionLog != null) {
+            descriptionLog.commit();
+        }
+    }
+
+    /**
+     * Save metadata along with the completions, search index, schema and property keys built from it,
+     * which are all kept next to meta.json.
+     */
+    static void saveMeta(@Nonnull MetaData data, @Nonnull File outputFile, @Nonnull SortedObjectMapper mapper) throws IOException {
         mapper.writerWithDefaultPrettyPrinter().writeValue(outputFile, data);
+
+        File completionsFile = new File(outputFile.getAbsoluteFile().getParentFile(), CompletionIndex.FILE_NAME);
+        System.out.println("Saving completions to " + completionsFile.getAbsolutePath());
+        new CompletionIndex(data).save(completionsFile, mapper);
+        File searchFile = new File(outputFile.getAbsoluteFile().getParentFile(), SearchIndex.FILE_NAME);
+        System.out.println("Saving search index to " + searchFile.getAbsolutePath());
+        new SearchIndex(data).save(searchFile, mapper);
+        File schemaFile = new File(outputFile.getAbsoluteFile().getParentFile(), CompiledSchema.FILE_NAME);
+        System.out.println("Saving compiled schema to " + schemaFile.getAbsolutePath());
+        new CompiledSchema(data).save(schemaFile);
+        DescriptionLog.saveKeys(data, outputFile, mapper);
     }
 
     private void addSpellParameters(MagicController controller, Mage mage, BaseSpell spell, ParameterList parameters, ParameterList properties, String categoryKey) {
@@ -151,6 +479,45 @@ public class MagicMeta {
         data.addSpellParameters(parameters);
     }
 
+    private void prepareActionSpell(ParameterStore parameterStore) {
+        InterrogatingConfiguration templateConfiguration = new InterrogatingConfiguration(parameterStore);
+        actionSpell = new ActionSpell();
+        actionSpell.initialize(controller);
+        actionSpell.setMage(mage);
+        actionSpell.loadTemplate("interrogator", templateConfiguration);
+
+        actionContext = new CastContext(actionSpell);
+    }
+
+    /**
+     * The parameters of one action class, and its handlers if it is a compound action.
+     */
+    private static class ScannedAction {
+        private final ParameterList parameters;
+        private final List<String> handlers;
+
+        ScannedAction(ParameterList parameters, List<String> handlers) {
+            this.parameters = parameters;
+            this.handlers = handlers;
+        }
+    }
+
+    private ScannedAction interrogateAction(Class<? extends SpellAction> actionClass, ParameterStore parameterStore) throws Exception {
+        SpellAction testAction = actionClass.getConstructor().newInstance();
+        InterrogatingConfiguration actionConfiguration = new InterrogatingConfiguration(parameterStore);
+        testAction.initialize(actionSpell, actionConfiguration);
+        testAction.prepare(actionContext, actionConfiguration);
+
+        List<String> handlers = null;
+        if (testAction instanceof CompoundAction) {
+            handlers = new ArrayList<>();
+            for (String handler : ((CompoundAction)testAction).getAllHandlerKeys()) {
+                handlers.add(handler);
+            }
+        }
+        return new ScannedAction(actionConfiguration.getParameters(), handlers);
+    }
+
     private void generateActionMeta() {
         // Note that this seems to get everything outside of this package as well. Not sure why.
         Reflections reflections = new Reflections(BUILTIN_SPELL_PACKAGE);
@@ -159,13 +526,7 @@ public class MagicMeta {
         List<Class<? extends SpellAction>> allClasses = new ArrayList<>(classSet);
         Collections.sort(allClasses, new ClassComparator());
 
-        InterrogatingConfiguration templateConfiguration = new InterrogatingConfiguration(data.getParameterStore());
-        ActionSpell spell = new ActionSpell();
-        spell.initialize(controller);
-        spell.setMage(mage);
-        spell.loadTemplate("interrogator", templateConfiguration);
-
-        CastContext context = new CastContext(spell);
+        prepareActionSpell(data.getParameterStore());
 
         // First get base action parameters
 
@@ -176,18 +537,20 @@ public class MagicMeta {
             }
         };
         InterrogatingConfiguration baseConfiguration = new InterrogatingConfiguration(data.getParameterStore());
-        baseAction.initialize(spell, baseConfiguration);
-        baseAction.prepare(context, baseConfiguration);
+        baseAction.initialize(actionSpell, baseConfiguration);
+        baseAction.prepare(actionContext, baseConfiguration);
         ParameterList baseParameters = baseConfiguration.getParameters();
         data.addActionParameters(baseParameters);
 
         SpellAction compoundAction = new CompoundAction() {};
         InterrogatingConfiguration compoundConfiguration = new InterrogatingConfiguration(data.getParameterStore());
-        compoundAction.initialize(spell, compoundConfiguration);
-        compoundAction.prepare(context, compoundConfiguration);
+        compoundAction.initialize(actionSpell, compoundConfiguration);
+        compoundAction.prepare(actionContext, compoundConfiguration);
         ParameterList compoundParameters = compoundConfiguration.getParameters();
         data.addCompoundActionParameters(compoundParameters);
 
+        List<Class<? extends SpellAction>> actionClasses = new ArrayList<>();
+        List<String> actionNames = new ArrayList<>();
         for (Class<? extends SpellAction> actionClass : allClasses) {
             if (!actionClass.getPackage().getName().equals(BUILTIN_SPELL_PACKAGE)
                 || actionClass.getAnnotation(Deprecated.class) != null
@@ -195,21 +558,38 @@ public class MagicMeta {
                 System.out.println("Skipping " + actionClass.getName());
                 continue;
             }
+            actionClasses.add(actionClass);
+            actionNames.add(actionClass.getName());
+        }
+
+        // Workers look up parameters in their own stores, those lookups are made again here in class
+        // order so parameter keys come out the same as interrogating everything here would.
+        Map<String, JsonNode> workerResults = interrogateOnWorkers("action", actionNames);
+        for (Class<? extends SpellAction> actionClass : actionClasses) {
             System.out.println("Scanning " + actionClass.getName());
             ParameterStore parameterStore = data.getParameterStore();
             try {
-                SpellAction testAction = actionClass.getConstructor().newInstance();
-                InterrogatingConfiguration actionConfiguration = new InterrogatingConfiguration(parameterStore);
-                testAction.initialize(spell, actionConfiguration);
-                testAction.prepare(context, actionConfiguration);
+                ScannedAction scanned;
+                if (workerResults != null) {
+                    JsonNode result = workerResults.get(actionClass.getName());
+                    List<String> handlers = null;
+                    if (result.has("handlers")) {
+                        handlers = new ArrayList<>();
+                        for (JsonNode handler : result.get("handlers")) {
+                            handlers.add(handler.asText());
+                        }
+                    }
+                    scanned = new ScannedAction(replay(result), handlers);
+                } else {
+                    scanned = interrogateAction(actionClass, parameterStore);
+                }
 
-                ParameterList spellParameters = actionConfiguration.getParameters();
+                ParameterList spellParameters = scanned.parameters;
                 spellParameters.removeDefaults(baseParameters);
                 SpellActionDescription spellAction = new SpellActionDescription(actionClass, spellParameters);
-                if (testAction instanceof CompoundAction) {
+                if (scanned.handlers != null) {
                     spellAction.setCategory(getCategory("compound").getKey());
-                    CompoundAction testCompound = (CompoundAction)testAction;
-                    for (String handler : testCompound.getAllHandlerKeys()) {
+                    for (String handler : scanned.handlers) {
                         // Actions is handled as part of Compound inheritance
                         if (handler.equals("actions")) continue;
                         String handlerKey = handler + "_actions";
@@ -247,31 +627,34 @@ public class MagicMeta {
         data.addEffectParameters(singleParameters);
     }
 
-    private ParameterList collectEffectProperties(Class<? extends Effect> classType, EffectManager manager, Effect instance) {
-        if (instance == null) {
-            try {
-                instance = classType.getConstructor(EffectManager.class).newInstance(manager);
-            } catch (Exception ex) {
-                System.err.println("Error instantiating " + classType.getName());
-                ex.printStackTrace();
-            }
-        }
-        ParameterList properties = new ParameterList();
-        Field[] fields = classType.getFields();
-        for (Field field : fields) {
-            if (field.getType() == Player.class || field.getType() == Runnable.class) continue;
-            String key = CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, field.getName());
-            Parameter parameter = data.getParameter(key, field.getType());
-            Object defaultValue = null;
-            if (instance != null) {
+    /**
+     * The default values of an effect class, read from a new instance. This only looks at the effect,
+     * so it is safe to do for several classes at once.
+     */
+    private static class ScannedEffect {
+        private final EffectFields fields;
+        private final String[] defaults;
+
+        ScannedEffect(Class<? extends Effect> classType, EffectManager manager, Effect instance) {
+            if (instance == null) {
                 try {
-                    defaultValue = field.get(instance);
-                } catch (IllegalAccessException e) {
-                    System.err.println("Error reading " + field.getName() + " of " + classType.getName());
-                    e.printStackTrace();
+                    instance = classType.getConstructor(EffectManager.class).newInstance(manager);
+                } catch (Exception ex) {
+                    System.err.println("Error instantiating " + classType.getName());
+                    ex.printStackTrace();
                 }
             }
-            properties.add(parameter, defaultValue);
+            fields = EffectFields.of(classType);
+            defaults = instance == null ? new String[fields.size()] : fields.getDefaults(instance);
+        }
+    }
+
+    private static ParameterList collectEffectProperties(ScannedEffect effect, ParameterStore parameterStore) {
+        ParameterList properties = new ParameterList();
+        EffectFields fields = effect.fields;
+        for (int i = 0; i < fields.size(); i++) {
+            Parameter parameter = parameterStore.getParameter(fields.getKey(i), fields.getType(i));
+            properties.add(parameter, effect.defaults[i]);
         }
         return properties;
     }
@@ -287,7 +670,7 @@ public class MagicMeta {
 
             }
         };
-        ParameterList baseEffectParameters = collectEffectProperties(Effect.class, manager, baseEffect);
+        ParameterList baseEffectParameters = collectEffectProperties(new ScannedEffect(Effect.class, manager, baseEffect), data.getParameterStore());
         data.addEffectLibParameters(baseEffectParameters);
 
         // Gather all effect classes
@@ -297,15 +680,37 @@ public class MagicMeta {
         List<Class<? extends Effect>> allEffects = new ArrayList<>(effectsSet);
         Collections.sort(allEffects, new ClassComparator());
 
+        List<Class<? extends Effect>> effectClasses = new ArrayList<>();
+        List<String> effectNames = new ArrayList<>();
         for (Class<? extends Effect> effectClass : allEffects) {
             if (effectClass.getAnnotation(Deprecated.class) != null
                 || Modifier.isAbstract(effectClass.getModifiers())) {
                 System.out.println("Skipping " + effectClass.getName());
                 continue;
             }
+            effectClasses.add(effectClass);
+            effectNames.add(effectClass.getName());
+        }
+
+        // Instantiating effects and reading their defaults doesn't touch the metadata, so without workers
+        // that happens on threads here. Parameters are then added in class order, so the output doesn't
+        // depend on timing.
+        Map<String, JsonNode> workerResults = interrogateOnWorkers("effect", effectNames);
+        Map<Class<? extends Effect>, Future<ScannedEffect>> scanned = new LinkedHashMap<>();
+        if (workerResults == null) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (Class<? extends Effect> effectClass : effectClasses) {
+                scanned.put(effectClass, executor.submit(() -> new ScannedEffect(effectClass, manager, null)));
+            }
+            executor.shutdown();
+        }
+
+        for (Class<? extends Effect> effectClass : effectClasses) {
             System.out.println("Scanning " + effectClass.getName());
             try {
-                ParameterList effectParameters = collectEffectProperties(effectClass, manager, null);
+                ParameterList effectParameters = workerResults != null
+                    ? replay(workerResults.get(effectClass.getName()))
+                    : collectEffectProperties(scanned.get(effectClass).get(), data.getParameterStore());
 
                 // Filter out common parameters
                 effectParameters.removeDefaults(baseEffectParameters);
@@ -362,16 +767,41 @@ public class MagicMeta {
         data.addModifierParameters(modifierParameters);
     }
 
+    private ParameterList interrogateMob(EntityType entityType, ParameterStore parameterStore) {
+        InterrogatingConfiguration mobConfiguration = new InterrogatingConfiguration(parameterStore);
+        mobConfiguration.set("type", entityType.name().toLowerCase());
+        new EntityData(controller, "interrogator", mobConfiguration);
+        return mobConfiguration.getParameters();
+    }
+
     private void generateMobMeta() {
         System.out.println("Scanning EntityData");
         InterrogatingConfiguration mobConfiguration = new InterrogatingConfiguration(data.getParameterStore());
         // First one to get defaults
         new EntityData(controller, "interrogator", mobConfiguration);
+
+        List<String> entityNames = new ArrayList<>();
         for (EntityType entityType : EntityType.values()) {
-            mobConfiguration.set("type", entityType.name().toLowerCase());
-            new EntityData(controller, "interrogator", mobConfiguration);
+            entityNames.add(entityType.name());
+        }
+        Map<String, JsonNode> workerResults = interrogateOnWorkers("mob", entityNames);
+        if (workerResults == null) {
+            for (EntityType entityType : EntityType.values()) {
+                mobConfiguration.set("type", entityType.name().toLowerCase());
+                new EntityData(controller, "interrogator", mobConfiguration);
+            }
         }
         ParameterList mobParameters = mobConfiguration.getParameters();
+        if (workerResults != null) {
+            // Later types replace earlier defaults, the same as sharing one configuration does
+            for (String entityName : entityNames) {
+                try {
+                    mobParameters.putAll(replay(workerResults.get(entityName)));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
         data.addMobParameters(mobParameters);
     }
 
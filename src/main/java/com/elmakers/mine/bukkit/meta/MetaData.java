@@ -1,15 +1,20 @@
 package com.elmakers.mine.bukkit.meta;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+// Indexes and resolved parameters are derived from everything else, they are written out but never read back in
+@JsonIgnoreProperties(value = {"indexes", "resolved"}, allowGetters = true)
 public class MetaData {
     private Map<String, Category> categories = new HashMap<>();
     private ParameterStore parameterStore = new ParameterStore();
     private ClassStore classStore = new ClassStore();
+    private List<String> versions;
 
     @JsonProperty("categories")
     public Map<String, Category> getCategories() {
@@ -47,6 +52,33 @@ public class MetaData {
         parameterStore.setTypes(types);
     }
 
+    /**
+     * The versions this was generated for, oldest first, or null if generated for just one.
+     * See {@link ParameterType#hasOption(String, int)}.
+     */
+    @JsonProperty("versions")
+    public List<String> getVersions() {
+        return versions;
+    }
+
+    public void setVersions(List<String> versions) {
+        this.versions = versions;
+    }
+
+    public int getVersionIndex(String version) {
+        return versions == null ? -1 : versions.indexOf(version);
+    }
+
+    @JsonProperty("indexes")
+    public EditorIndexes getIndexes() {
+        return new EditorIndexes(this);
+    }
+
+    @JsonProperty("resolved")
+    public ResolvedParameters getResolvedParameters() {
+        return new ResolvedParameters(this);
+    }
+
     @JsonIgnore
     public ParameterStore getParameterStore() {
         return parameterStore;
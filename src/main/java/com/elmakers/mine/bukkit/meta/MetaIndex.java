@@ -0,0 +1,181 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+
+/**
+ * Lookups over the metadata for tools that need to query it, rather than walking meta.json.
+ *
+ * <p>Everything is indexed up front and the index never changes after that, so it can be shared
+ * between threads. All results are sorted sets of keys, empty if nothing matches. Class lookups
+ * take the class section, {@link #ACTIONS} or {@link #EFFECTLIB_EFFECTS}, and include parameters
+ * the classes inherit from their base, see {@link ResolvedParameters}.
+ */
+public final class MetaIndex {
+    public static final String ACTIONS = "actions";
+    public static final String EFFECTLIB_EFFECTS = "effectlib_effects";
+
+    private final Map<String, SortedSet<String>> parametersByField;
+    private final Map<String, SortedSet<String>> parametersByType;
+    private final Map<String, SortedSet<String>> parametersByCategory;
+    private final Map<String, SortedSet<String>> holdersByParameter;
+    private final Map<String, SortedSet<String>> typesByOption;
+    private final Map<String, Map<String, SortedSet<String>>> classesByCategory;
+    private final Map<String, Map<String, SortedSet<String>>> classParameters;
+    private final Map<String, Map<String, SortedSet<String>>> classesByParameter;
+
+    public MetaIndex(@Nonnull MetaData data) {
+        Map<String, SortedSet<String>> byField = new TreeMap<>();
+        Map<String, SortedSet<String>> byType = new TreeMap<>();
+        Map<String, SortedSet<String>> byCategory = new TreeMap<>();
+        for (Map.Entry<String, Parameter> entry : data.getParameters().entrySet()) {
+            Parameter parameter = entry.getValue();
+            add(byField, parameter.getField(), entry.getKey());
+            add(byType, parameter.getType(), entry.getKey());
+            add(byCategory, parameter.getCategory(), entry.getKey());
+        }
+        parametersByField = freeze(byField);
+        parametersByType = freeze(byType);
+        parametersByCategory = freeze(byCategory);
+
+        Map<String, SortedSet<String>> holders = new TreeMap<>();
+        Map<String, SortedSet<String>> byOption = new TreeMap<>();
+        for (Map.Entry<String, ParameterType> entry : data.getTypes().entrySet()) {
+            ParameterType type = entry.getValue();
+            if (type.getParameters() != null) {
+                for (String key : type.getParameters().keySet()) {
+                    add(holders, key, entry.getKey());
+                }
+            }
+            if (type.getOptions() != null) {
+                for (String option : type.getOptions().keySet()) {
+                    add(byOption, option, entry.getKey());
+                }
+            }
+        }
+        holdersByParameter = freeze(holders);
+        typesByOption = freeze(byOption);
+
+        ResolvedParameters resolved = data.getResolvedParameters();
+        Map<String, Map<String, SortedSet<String>>> categories = new TreeMap<>();
+        Map<String, Map<String, SortedSet<String>>> parameters = new TreeMap<>();
+        Map<String, Map<String, SortedSet<String>>> byParameter = new TreeMap<>();
+        indexClasses(ACTIONS, data.getClasses().getActions(), resolved.getActions(), resolved, categories, parameters, byParameter);
+        indexClasses(EFFECTLIB_EFFECTS, data.getClasses().getEffects(), resolved.getEffects(), resolved, categories, parameters, byParameter);
+        classesByCategory = Collections.unmodifiableMap(categories);
+        classParameters = Collections.unmodifiableMap(parameters);
+        classesByParameter = Collections.unmodifiableMap(byParameter);
+    }
+
+    private static void indexClasses(String section, Map<String, ? extends Configurable> classes, Map<String, ResolvedParameters.Resolved> resolvedClasses,
+                                     ResolvedParameters resolved, Map<String, Map<String, SortedSet<String>>> categories,
+                                     Map<String, Map<String, SortedSet<String>>> parameters, Map<String, Map<String, SortedSet<String>>> byParameter) {
+        Map<String, SortedSet<String>> sectionCategories = new TreeMap<>();
+        Map<String, SortedSet<String>> sectionParameters = new TreeMap<>();
+        Map<String, SortedSet<String>> sectionByParameter = new TreeMap<>();
+        for (Map.Entry<String, ? extends Configurable> entry : classes.entrySet()) {
+            String classKey = entry.getKey();
+            add(sectionCategories, entry.getValue().getCategory(), classKey);
+            Set<String> allParameters = resolved.getAllParameters(resolvedClasses.get(classKey)).keySet();
+            sectionParameters.put(classKey, new TreeSet<>(allParameters));
+            for (String parameterKey : allParameters) {
+                add(sectionByParameter, parameterKey, classKey);
+            }
+        }
+        categories.put(section, freeze(sectionCategories));
+        parameters.put(section, freeze(sectionParameters));
+        byParameter.put(section, freeze(sectionByParameter));
+    }
+
+    private static void add(Map<String, SortedSet<String>> index, String key, String value) {
+        if (key == null) return;
+        SortedSet<String> values = index.get(key);
+        if (values == null) {
+            values = new TreeSet<>();
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static Map<String, SortedSet<String>> freeze(Map<String, SortedSet<String>> index) {
+        for (Map.Entry<String, SortedSet<String>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableSortedSet(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    @Nonnull
+    private static SortedSet<String> get(Map<String, SortedSet<String>> index, String key) {
+        SortedSet<String> values = index.get(key);
+        return values == null ? Collections.<String>emptySortedSet() : values;
+    }
+
+    @Nonnull
+    private SortedSet<String> get(Map<String, Map<String, SortedSet<String>>> index, String section, String key) {
+        Map<String, SortedSet<String>> sectionIndex = index.get(section);
+        return sectionIndex == null ? Collections.<String>emptySortedSet() : get(sectionIndex, key);
+    }
+
+    /**
+     * The keys of properties with the given config field, which includes aliases.
+     */
+    @Nonnull
+    public SortedSet<String> getParametersByField(String field) {
+        return get(parametersByField, field);
+    }
+
+    /**
+     * The keys of properties of the given type, such as "material".
+     */
+    @Nonnull
+    public SortedSet<String> getParametersOfType(String typeKey) {
+        return get(parametersByType, typeKey);
+    }
+
+    @Nonnull
+    public SortedSet<String> getParametersInCategory(String categoryKey) {
+        return get(parametersByCategory, categoryKey);
+    }
+
+    /**
+     * The property holder types a property belongs to, such as "spell_properties" or "wand_properties".
+     */
+    @Nonnull
+    public SortedSet<String> getHoldersOfParameter(String parameterKey) {
+        return get(holdersByParameter, parameterKey);
+    }
+
+    /**
+     * The types that have the given value as one of their options.
+     */
+    @Nonnull
+    public SortedSet<String> getTypesWithOption(String option) {
+        return get(typesByOption, option);
+    }
+
+    @Nonnull
+    public SortedSet<String> getClassesInCategory(String section, String categoryKey) {
+        return get(classesByCategory, section, categoryKey);
+    }
+
+    /**
+     * Every parameter a class accepts, including those of its base class.
+     */
+    @Nonnull
+    public SortedSet<String> getClassParameters(String section, String classKey) {
+        return get(classParameters, section, classKey);
+    }
+
+    /**
+     * The classes that accept the given parameter, for instance which actions accept "radius".
+     */
+    @Nonnull
+    public SortedSet<String> getClassesWithParameter(String section, String parameterKey) {
+        return get(classesByParameter, section, parameterKey);
+    }
+}
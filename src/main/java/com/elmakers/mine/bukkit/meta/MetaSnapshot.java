@@ -0,0 +1,370 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A frozen copy of the metadata, for reading from several threads at once.
+ *
+ * <p>MetaData and its stores are mutable maps that generation keeps changing. This copies what
+ * readers need into arrays, shares repeated strings, and builds a hash table for every key lookup,
+ * then never changes again. Readers need no locks: MetaServer builds one for each generation it
+ * publishes and answers queries from it, swapping in the next generation's snapshot as a whole.
+ */
+public final class MetaSnapshot {
+    private final KeyTable parameters;
+    private final String[] fields;
+    private final String[] types;
+    private final String[] categories;
+    private final String[] aliases;
+    private final String[] names;
+    private final int[] importance;
+    private final List<String>[] descriptions;
+
+    private final KeyTable typeKeys;
+    private final String[] typeNames;
+    private final List<String>[] typeDescriptions;
+    private final KeyTable[] typeOptions;
+    private final KeyTable[] typeParameters;
+    private final String[][] typeDefaults;
+
+    private final Map<String, ClassTable> classes;
+
+    @SuppressWarnings("unchecked")
+    public MetaSnapshot(@Nonnull MetaData data) {
+        Map<String, String> strings = new HashMap<>();
+
+        Map<String, Parameter> sortedParameters = new TreeMap<>(data.getParameters());
+        parameters = new KeyTable(sortedParameters.keySet(), strings);
+        int count = parameters.size();
+        fields = new String[count];
+        types = new String[count];
+        categories = new String[count];
+        aliases = new String[count];
+        names = new String[count];
+        importance = new int[count];
+        descriptions = new List[count];
+        int index = 0;
+        for (Parameter parameter : sortedParameters.values()) {
+            fields[index] = intern(parameter.getField(), strings);
+            types[index] = intern(parameter.getType(), strings);
+            categories[index] = intern(parameter.getCategory(), strings);
+            aliases[index] = intern(parameter.getAlias(), strings);
+            names[index] = parameter.getName();
+            importance[index] = parameter.getImportance();
+            descriptions[index] = freeze(parameter.getDescription());
+            index++;
+        }
+
+        Map<String, ParameterType> sortedTypes = new TreeMap<>(data.getTypes());
+        typeKeys = new KeyTable(sortedTypes.keySet(), strings);
+        typeNames = new String[typeKeys.size()];
+        typeDescriptions = new List[typeKeys.size()];
+        typeOptions = new KeyTable[typeKeys.size()];
+        typeParameters = new KeyTable[typeKeys.size()];
+        typeDefaults = new String[typeKeys.size()][];
+        index = 0;
+        for (ParameterType type : sortedTypes.values()) {
+            typeNames[index] = type.getName();
+            typeDescriptions[index] = freeze(type.getDescription());
+            typeOptions[index] = new KeyTable(type.getOptions() == null ? Collections.<String>emptySet() : new TreeMap<>(type.getOptions()).keySet(), strings);
+            Map<String, String> defaults = type.getParameters() == null ? Collections.<String, String>emptyMap() : new TreeMap<>(type.getParameters());
+            typeParameters[index] = new KeyTable(defaults.keySet(), strings);
+            typeDefaults[index] = internValues(defaults, strings);
+            index++;
+        }
+
+        classes = new HashMap<>();
+        classes.put(MetaIndex.ACTIONS, new ClassTable(data.getClasses().getActions(), strings));
+        classes.put(MetaIndex.EFFECTLIB_EFFECTS, new ClassTable(data.getClasses().getEffects(), strings));
+    }
+
+    @Nullable
+    private static String intern(@Nullable String value, Map<String, String> strings) {
+        if (value == null) return null;
+        String interned = strings.get(value);
+        if (interned == null) {
+            strings.put(value, value);
+            interned = value;
+        }
+        return interned;
+    }
+
+    private static String[] internValues(Map<String, String> values, Map<String, String> strings) {
+        String[] interned = new String[values.size()];
+        int index = 0;
+        for (String value : values.values()) {
+            interned[index++] = intern(value, strings);
+        }
+        return interned;
+    }
+
+    @Nonnull
+    private static List<String> freeze(@Nullable List<String> list) {
+        return list == null ? Collections.<String>emptyList() : Collections.unmodifiableList(Arrays.asList(list.toArray(new String[0])));
+    }
+
+    public boolean hasParameter(String key) {
+        return parameters.indexOf(key) >= 0;
+    }
+
+    @Nullable
+    public String getField(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? null : fields[index];
+    }
+
+    @Nullable
+    public String getType(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? null : types[index];
+    }
+
+    @Nullable
+    public String getCategory(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? null : categories[index];
+    }
+
+    @Nullable
+    public String getAlias(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? null : aliases[index];
+    }
+
+    @Nullable
+    public String getName(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? null : names[index];
+    }
+
+    public int getImportance(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? 0 : importance[index];
+    }
+
+    @Nonnull
+    public List<String> getDescription(String key) {
+        int index = parameters.indexOf(key);
+        return index < 0 ? Collections.<String>emptyList() : descriptions[index];
+    }
+
+    @Nonnull
+    public List<String> getParameterKeys() {
+        return parameters.getKeys();
+    }
+
+    public boolean hasType(String typeKey) {
+        return typeKeys.indexOf(typeKey) >= 0;
+    }
+
+    @Nonnull
+    public List<String> getTypeKeys() {
+        return typeKeys.getKeys();
+    }
+
+    @Nullable
+    public String getTypeName(String typeKey) {
+        int index = typeKeys.indexOf(typeKey);
+        return index < 0 ? null : typeNames[index];
+    }
+
+    @Nonnull
+    public List<String> getTypeDescription(String typeKey) {
+        int index = typeKeys.indexOf(typeKey);
+        return index < 0 ? Collections.<String>emptyList() : typeDescriptions[index];
+    }
+
+    public boolean hasOption(String typeKey, String option) {
+        int index = typeKeys.indexOf(typeKey);
+        return index >= 0 && typeOptions[index].indexOf(option) >= 0;
+    }
+
+    @Nonnull
+    public List<String> getOptions(String typeKey) {
+        int index = typeKeys.indexOf(typeKey);
+        return index < 0 ? Collections.<String>emptyList() : typeOptions[index].getKeys();
+    }
+
+    /**
+     * Check if a property holder type, such as "spell_properties", has a parameter.
+     */
+    public boolean hasTypeParameter(String typeKey, String parameterKey) {
+        int index = typeKeys.indexOf(typeKey);
+        return index >= 0 && typeParameters[index].indexOf(parameterKey) >= 0;
+    }
+
+    @Nullable
+    public String getTypeDefault(String typeKey, String parameterKey) {
+        int index = typeKeys.indexOf(typeKey);
+        if (index < 0) return null;
+        int parameterIndex = typeParameters[index].indexOf(parameterKey);
+        return parameterIndex < 0 ? null : typeDefaults[index][parameterIndex];
+    }
+
+    @Nonnull
+    public List<String> getTypeParameters(String typeKey) {
+        int index = typeKeys.indexOf(typeKey);
+        return index < 0 ? Collections.<String>emptyList() : typeParameters[index].getKeys();
+    }
+
+    public boolean hasClass(String section, String classKey) {
+        ClassTable table = classes.get(section);
+        return table != null && table.keys.indexOf(classKey) >= 0;
+    }
+
+    @Nonnull
+    public List<String> getClassKeys(String section) {
+        ClassTable table = classes.get(section);
+        return table == null ? Collections.<String>emptyList() : table.keys.getKeys();
+    }
+
+    /**
+     * The display name of a class, such as "Projectile".
+     */
+    @Nullable
+    public String getClassName(String section, String classKey) {
+        ClassTable table = classes.get(section);
+        if (table == null) return null;
+        int index = table.keys.indexOf(classKey);
+        return index < 0 ? null : table.names[index];
+    }
+
+    @Nonnull
+    public List<String> getClassDescription(String section, String classKey) {
+        ClassTable table = classes.get(section);
+        if (table == null) return Collections.emptyList();
+        int index = table.keys.indexOf(classKey);
+        return index < 0 ? Collections.<String>emptyList() : table.descriptions[index];
+    }
+
+    @Nullable
+    public String getClassCategory(String section, String classKey) {
+        ClassTable table = classes.get(section);
+        if (table == null) return null;
+        int index = table.keys.indexOf(classKey);
+        return index < 0 ? null : table.categories[index];
+    }
+
+    /**
+     * Check if a class declares a parameter itself, not counting those of its base class.
+     */
+    public boolean hasClassParameter(String section, String classKey, String parameterKey) {
+        ClassTable table = classes.get(section);
+        if (table == null) return false;
+        int index = table.keys.indexOf(classKey);
+        return index >= 0 && table.parameters[index].indexOf(parameterKey) >= 0;
+    }
+
+    @Nullable
+    public String getClassDefault(String section, String classKey, String parameterKey) {
+        ClassTable table = classes.get(section);
+        if (table == null) return null;
+        int index = table.keys.indexOf(classKey);
+        if (index < 0) return null;
+        int parameterIndex = table.parameters[index].indexOf(parameterKey);
+        return parameterIndex < 0 ? null : table.defaults[index][parameterIndex];
+    }
+
+    @Nonnull
+    public List<String> getClassParameters(String section, String classKey) {
+        ClassTable table = classes.get(section);
+        if (table == null) return Collections.emptyList();
+        int index = table.keys.indexOf(classKey);
+        return index < 0 ? Collections.<String>emptyList() : table.parameters[index].getKeys();
+    }
+
+    private static final class ClassTable {
+        private final KeyTable keys;
+        private final String[] names;
+        private final List<String>[] descriptions;
+        private final String[] categories;
+        private final KeyTable[] parameters;
+        private final String[][] defaults;
+
+        @SuppressWarnings("unchecked")
+        ClassTable(Map<String, ? extends Configurable> classes, Map<String, String> strings) {
+            Map<String, ? extends Configurable> sorted = new TreeMap<>(classes);
+            keys = new KeyTable(sorted.keySet(), strings);
+            names = new String[keys.size()];
+            descriptions = new List[keys.size()];
+            categories = new String[keys.size()];
+            parameters = new KeyTable[keys.size()];
+            defaults = new String[keys.size()][];
+            int index = 0;
+            for (Configurable configurable : sorted.values()) {
+                names[index] = configurable.getName();
+                descriptions[index] = freeze(configurable.getDescription());
+                categories[index] = intern(configurable.getCategory(), strings);
+                Map<String, String> classDefaults = configurable.getParameters() == null
+                    ? Collections.<String, String>emptyMap() : new TreeMap<>(configurable.getParameters());
+                parameters[index] = new KeyTable(classDefaults.keySet(), strings);
+                defaults[index] = internValues(classDefaults, strings);
+                index++;
+            }
+        }
+    }
+
+    /**
+     * A fixed set of keys with an open addressing hash table from each key to its position.
+     */
+    static final class KeyTable {
+        private final String[] keys;
+        private final int[] slots;
+        private final int mask;
+
+        KeyTable(Iterable<String> keyList, Map<String, String> strings) {
+            List<String> internedKeys = new ArrayList<>();
+            for (String key : keyList) {
+                internedKeys.add(intern(key, strings));
+            }
+            keys = internedKeys.toArray(new String[0]);
+
+            // At most half full, so probe sequences stay short
+            int capacity = 2;
+            while (capacity < keys.length * 2) {
+                capacity <<= 1;
+            }
+            slots = new int[capacity];
+            mask = capacity - 1;
+            for (int index = 0; index < keys.length; index++) {
+                int slot = spread(keys[index].hashCode()) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = index + 1;
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        int indexOf(@Nullable String key) {
+            if (key == null) return -1;
+            int slot = spread(key.hashCode()) & mask;
+            while (true) {
+                int entry = slots[slot];
+                if (entry == 0) return -1;
+                String candidate = keys[entry - 1];
+                if (candidate == key || candidate.equals(key)) return entry - 1;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        List<String> getKeys() {
+            return Collections.unmodifiableList(Arrays.asList(keys));
+        }
+    }
+}
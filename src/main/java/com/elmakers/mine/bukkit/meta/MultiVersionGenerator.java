@@ -0,0 +1,326 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates metadata for several versions of Magic, EffectLib and Spigot in one run.
+ *
+ * <p>The versions folder has a folder of jars for each version, named after the version. Each one is
+ * loaded in its own {@link VersionClassLoader} and interrogated at the same time as the others, then
+ * saved to a folder of the same name next to meta.json, along with its completions, search index
+ * and schema.
+ *
+ * <p>When all versions are done, meta.json is replaced with the union of all of them. Each type has
+ * the options of every version, and option_versions holds a bit mask of the versions for each option
+ * that some of them don't have, see {@link ParameterType#hasOption(String, int)}. Since most options
+ * exist in every version this is about the size of one version's metadata. compatibility.json lists
+ * the parameters, types, options and classes that are missing from some versions as well.
+ *
+ * <p>meta.json is read once at the start, minus the options only some versions have, along with any
+ * description edits waiting in its descriptions.log. Its descriptions are copied onto every version,
+ * and it is used as is to start any version that has not been generated before.
+ */
+public class MultiVersionGenerator {
+    public static final String COMPATIBILITY_FILE = "compatibility.json";
+    // One bit per version, masks are read as numbers by the editors so they have to fit in the
+    // 53 bits a JavaScript number holds exactly
+    private static final int MAX_VERSIONS = 53;
+
+    // Compare versions numerically, so 1.9 comes before 1.16
+    private static final Comparator<String> VERSION_COMPARATOR = (version1, version2) -> {
+        String[] pieces1 = version1.split("[.\\-]");
+        String[] pieces2 = version2.split("[.\\-]");
+        for (int i = 0; i < Math.min(pieces1.length, pieces2.length); i++) {
+            int compare;
+            try {
+                compare = Integer.compare(Integer.parseInt(pieces1[i]), Integer.parseInt(pieces2[i]));
+            } catch (NumberFormatException ex) {
+                compare = pieces1[i].compareTo(pieces2[i]);
+            }
+            if (compare != 0) return compare;
+        }
+        return Integer.compare(pieces1.length, pieces2.length);
+    };
+
+    private final SortedObjectMapper mapper = new SortedObjectMapper();
+    private final File metaFile;
+    private final File versionsFolder;
+    private final int threads;
+
+    public MultiVersionGenerator(@Nonnull File metaFile, @Nonnull File versionsFolder, int threads) {
+        this.metaFile = metaFile;
+        this.versionsFolder = versionsFolder;
+        this.threads = threads;
+    }
+
+    public void generate() throws IOException, InterruptedException {
+        URL metaJar = MagicMeta.class.getProtectionDomain().getCodeSource().getLocation();
+        File outputFolder = metaFile.getAbsoluteFile().getParentFile();
+        JsonNode base = null;
+        DescriptionLog descriptionLog = null;
+        if (metaFile.exists()) {
+            System.out.println("Loading " + metaFile.getAbsolutePath());
+            MetaData baseData = mapper.convertValue(removeVersionedOptions(mapper.readTree(metaFile)), MetaData.class);
+            baseData.loaded();
+            // Descriptions are edited for all versions at once, each version picks them up from base
+            descriptionLog = new DescriptionLog(metaFile, mapper);
+            descriptionLog.apply(baseData);
+            base = mapper.valueToTree(baseData);
+        }
+
+        Map<String, URL[]> versions = findVersions();
+        if (versions.isEmpty()) {
+            System.out.println("No versions found in " + versionsFolder.getAbsolutePath());
+            return;
+        }
+        if (versions.size() > MAX_VERSIONS) {
+            System.out.println("Can only generate up to " + MAX_VERSIONS + " versions at once, found " + versions.size());
+            return;
+        }
+        System.out.println("Generating metadata for " + versions.size() + " versions using " + threads + " threads");
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, versions.size()));
+        Map<String, Future<JsonNode>> results = new LinkedHashMap<>();
+        final JsonNode baseMeta = base;
+        for (Map.Entry<String, URL[]> entry : versions.entrySet()) {
+            String version = entry.getKey();
+            File versionFile = new File(new File(outputFolder, version), metaFile.getName());
+            VersionClassLoader loader = new VersionClassLoader(version, entry.getValue(), metaJar, MultiVersionGenerator.class.getClassLoader());
+            results.put(version, executor.submit(() -> generate(loader, baseMeta, versionFile)));
+        }
+        executor.shutdown();
+
+        Map<String, JsonNode> generated = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<JsonNode>> result : results.entrySet()) {
+            try {
+                generated.put(result.getKey(), result.getValue().get());
+            } catch (ExecutionException ex) {
+                System.out.println("An error ocurred generating metadata for " + result.getKey() + " " + ex.getCause().getMessage());
+                ex.getCause().printStackTrace();
+            }
+        }
+
+        File compatibilityFile = new File(outputFolder, COMPATIBILITY_FILE);
+        System.out.println("Saving compatibility index to " + compatibilityFile.getAbsolutePath());
+        save(compatibilityFile, getCompatibility(generated));
+        if (!generated.isEmpty()) {
+            System.out.println("Saving combined metadata to " + metaFile.getAbsolutePath());
+            // Going through MetaData rebuilds indexes and resolved parameters from the whole union,
+            // and saves completions, search index and schema for it along with meta.json
+            MetaData union = mapper.convertValue(getUnion(generated), MetaData.class);
+            union.loaded();
+            MagicMeta.saveMeta(union, metaFile, mapper);
+            if (descriptionLog != null) {
+                descriptionLog.commit();
+            }
+        }
+        System.out.println("Generated " + generated.size() + " of " + versions.size() + " versions in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void save(File file, JsonNode tree) throws IOException {
+        // Trees are not sorted when written, but Maps are
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, mapper.treeToValue(tree, Object.class));
+    }
+
+    private Map<String, URL[]> findVersions() throws IOException {
+        Map<String, URL[]> versions = new TreeMap<>(VERSION_COMPARATOR);
+        File[] folders = versionsFolder.listFiles(File::isDirectory);
+        if (folders == null) return versions;
+        for (File folder : folders) {
+            File[] jars = folder.listFiles((dir, name) -> name.endsWith(".jar"));
+            if (jars == null || jars.length == 0) {
+                System.out.println("Skipping " + folder.getName() + ", it has no jars");
+                continue;
+            }
+            Arrays.sort(jars);
+            URL[] urls = new URL[jars.length];
+            for (int i = 0; i < jars.length; i++) {
+                urls[i] = jars[i].toURI().toURL();
+            }
+            versions.put(folder.getName(), urls);
+        }
+        return versions;
+    }
+
+    private JsonNode generate(VersionClassLoader loader, @Nullable JsonNode base, File versionFile) throws Exception {
+        System.out.println("Interrogating version " + loader.getVersion());
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        // Reflections looks for classes using the context class loader
+        thread.setContextClassLoader(loader);
+        try {
+            Class<?> metaClass = loader.loadClass(MagicMeta.class.getName());
+            Method generate = metaClass.getMethod("generateVersion", JsonNode.class, File.class);
+            return (JsonNode)generate.invoke(null, base, versionFile);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof Exception ? (Exception)cause : ex;
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            loader.close();
+        }
+    }
+
+    /**
+     * Drop the options that only some versions have from a previous union, so a new version
+     * does not start out with options it might not have.
+     */
+    static JsonNode removeVersionedOptions(JsonNode meta) {
+        if (!meta.isObject()) return meta;
+        ((ObjectNode)meta).remove("versions");
+        for (JsonNode type : meta.path("types")) {
+            JsonNode optionVersions = type.path("option_versions");
+            JsonNode options = type.path("options");
+            if (options.isObject()) {
+                optionVersions.fieldNames().forEachRemaining(((ObjectNode)options)::remove);
+            }
+            if (type.isObject()) {
+                ((ObjectNode)type).remove("option_versions");
+            }
+        }
+        return meta;
+    }
+
+    /**
+     * Combine the metadata of all versions, newest first, adding anything older versions have that
+     * newer ones don't, and masks for the options that are not in every version.
+     */
+    private ObjectNode getUnion(Map<String, JsonNode> generated) {
+        List<String> versions = new ArrayList<>(generated.keySet());
+        List<JsonNode> metas = new ArrayList<>(generated.values());
+        ObjectNode union = metas.get(metas.size() - 1).deepCopy();
+        ArrayNode versionList = union.putArray("versions");
+        for (String version : versions) {
+            versionList.add(version);
+        }
+        for (int i = metas.size() - 2; i >= 0; i--) {
+            JsonNode meta = metas.get(i);
+            addMissing(union.with("properties"), meta.path("properties"));
+            addMissing(union.with("types"), meta.path("types"));
+            addMissing(union.with("categories"), meta.path("categories"));
+            for (String section : getAllKeys(generated, m -> m.path("classed"))) {
+                addMissing(union.with("classed").with(section), meta.path("classed").path(section));
+            }
+        }
+
+        long allVersions = (1L << versions.size()) - 1;
+        Iterator<Map.Entry<String, JsonNode>> types = union.with("types").fields();
+        while (types.hasNext()) {
+            Map.Entry<String, JsonNode> typeEntry = types.next();
+            JsonNode unionOptions = typeEntry.getValue().path("options");
+            if (!unionOptions.isObject()) continue;
+            Map<String, Long> masks = new TreeMap<>();
+            for (int i = metas.size() - 1; i >= 0; i--) {
+                JsonNode options = metas.get(i).path("types").path(typeEntry.getKey()).path("options");
+                Iterator<Map.Entry<String, JsonNode>> optionEntries = options.fields();
+                while (optionEntries.hasNext()) {
+                    Map.Entry<String, JsonNode> option = optionEntries.next();
+                    masks.merge(option.getKey(), 1L << i, (a, b) -> a | b);
+                    JsonNode existing = unionOptions.get(option.getKey());
+                    if (existing == null || (existing.isNull() && !option.getValue().isNull())) {
+                        ((ObjectNode)unionOptions).set(option.getKey(), option.getValue());
+                    }
+                }
+            }
+            ObjectNode optionVersions = null;
+            for (Map.Entry<String, Long> mask : masks.entrySet()) {
+                if (mask.getValue() == allVersions) continue;
+                if (optionVersions == null) {
+                    optionVersions = ((ObjectNode)typeEntry.getValue()).putObject("option_versions");
+                }
+                optionVersions.put(mask.getKey(), mask.getValue());
+            }
+        }
+        return union;
+    }
+
+    private void addMissing(ObjectNode union, JsonNode section) {
+        Iterator<Map.Entry<String, JsonNode>> entries = section.fields();
+        while (entries.hasNext()) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            if (!union.has(entry.getKey())) {
+                union.set(entry.getKey(), entry.getValue().deepCopy());
+            }
+        }
+    }
+
+    private ObjectNode getCompatibility(Map<String, JsonNode> generated) {
+        ObjectNode compatibility = mapper.createObjectNode();
+        ArrayNode versionList = compatibility.putArray("versions");
+        for (String version : generated.keySet()) {
+            versionList.add(version);
+        }
+        compatibility.set("parameters", getPartial(generated, meta -> meta.path("properties")));
+        compatibility.set("types", getPartial(generated, meta -> meta.path("types")));
+
+        ObjectNode options = compatibility.putObject("options");
+        for (String type : getAllKeys(generated, meta -> meta.path("types"))) {
+            ObjectNode typeOptions = getPartial(generated, meta -> meta.path("types").path(type).path("options"));
+            if (typeOptions.size() > 0) {
+                options.set(type, typeOptions);
+            }
+        }
+
+        ObjectNode classes = compatibility.putObject("classes");
+        for (String section : getAllKeys(generated, meta -> meta.path("classed"))) {
+            ObjectNode sectionClasses = getPartial(generated, meta -> meta.path("classed").path(section));
+            if (sectionClasses.size() > 0) {
+                classes.set(section, sectionClasses);
+            }
+        }
+        return compatibility;
+    }
+
+    private List<String> getAllKeys(Map<String, JsonNode> generated, Function<JsonNode, JsonNode> section) {
+        Set<String> keys = new TreeSet<>();
+        for (JsonNode meta : generated.values()) {
+            section.apply(meta).fieldNames().forEachRemaining(keys::add);
+        }
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * List the keys of a section that only some versions have, along with those versions.
+     */
+    private ObjectNode getPartial(Map<String, JsonNode> generated, Function<JsonNode, JsonNode> section) {
+        Map<String, List<String>> present = new TreeMap<>();
+        for (Map.Entry<String, JsonNode> entry : generated.entrySet()) {
+            String version = entry.getKey();
+            section.apply(entry.getValue()).fieldNames().forEachRemaining(key -> present.computeIfAbsent(key, k -> new ArrayList<>()).add(version));
+        }
+        ObjectNode partial = mapper.createObjectNode();
+        for (Map.Entry<String, List<String>> entry : present.entrySet()) {
+            if (entry.getValue().size() == generated.size()) continue;
+            ArrayNode versions = partial.putArray(entry.getKey());
+            for (String version : entry.getValue()) {
+                versions.add(version);
+            }
+        }
+        return partial;
+    }
+}
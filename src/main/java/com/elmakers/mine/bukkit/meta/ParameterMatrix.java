@@ -0,0 +1,226 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A cross-reference of action and EffectLib classes against the parameters they take.
+ *
+ * <p>Every parameter used by a class gets an id, the most widely used parameters getting the lowest
+ * ids, and each class's parameters are a bitset over those ids. Bitsets only take up space up to
+ * their highest bit, so most classes only need a few words, and comparing two classes is a handful
+ * of word operations instead of a map lookup per parameter.
+ *
+ * <p>Each class has its full parameter set, as resolved by {@link ResolvedParameters}, including what it
+ * inherits from its base. The class entries in meta.json only list what differs from their base, so
+ * using those directly would count a class as declaring a base parameter only when it changes its default.
+ * This does not change once built, so it can be shared between threads.
+ */
+public final class ParameterMatrix {
+    private final List<String> parameterKeys;
+    private final Map<String, Integer> parameterIds;
+    private final int[] classCounts;
+    private final Map<String, Map<String, BitSet>> classes;
+
+    public ParameterMatrix(@Nonnull MetaData data) {
+        ResolvedParameters resolved = data.getResolvedParameters();
+        Map<String, ParameterList> actions = getAllParameters(resolved, resolved.getActions());
+        Map<String, ParameterList> effects = getAllParameters(resolved, resolved.getEffects());
+
+        Map<String, Integer> counts = new TreeMap<>();
+        countParameters(actions, counts);
+        countParameters(effects, counts);
+        List<String> keys = new ArrayList<>(counts.keySet());
+        Collections.sort(keys, (a, b) -> Integer.compare(counts.get(b), counts.get(a)));
+        parameterKeys = Collections.unmodifiableList(keys);
+        parameterIds = new HashMap<>();
+        classCounts = new int[keys.size()];
+        for (int id = 0; id < keys.size(); id++) {
+            parameterIds.put(keys.get(id), id);
+            classCounts[id] = counts.get(keys.get(id));
+        }
+
+        classes = new HashMap<>();
+        classes.put(MetaIndex.ACTIONS, toBitSets(actions));
+        classes.put(MetaIndex.EFFECTLIB_EFFECTS, toBitSets(effects));
+    }
+
+    private static Map<String, ParameterList> getAllParameters(ResolvedParameters resolved, Map<String, ResolvedParameters.Resolved> classes) {
+        Map<String, ParameterList> parameters = new TreeMap<>();
+        for (Map.Entry<String, ResolvedParameters.Resolved> entry : classes.entrySet()) {
+            parameters.put(entry.getKey(), resolved.getAllParameters(entry.getValue()));
+        }
+        return parameters;
+    }
+
+    private static void countParameters(Map<String, ParameterList> classes, Map<String, Integer> counts) {
+        for (ParameterList parameters : classes.values()) {
+            for (String key : parameters.keySet()) {
+                Integer count = counts.get(key);
+                counts.put(key, count == null ? 1 : count + 1);
+            }
+        }
+    }
+
+    private Map<String, BitSet> toBitSets(Map<String, ParameterList> classes) {
+        Map<String, BitSet> bitSets = new TreeMap<>();
+        for (Map.Entry<String, ParameterList> entry : classes.entrySet()) {
+            BitSet bits = new BitSet();
+            for (String key : entry.getValue().keySet()) {
+                bits.set(parameterIds.get(key));
+            }
+            bitSets.put(entry.getKey(), bits);
+        }
+        return bitSets;
+    }
+
+    @Nullable
+    private BitSet getBits(String section, String classKey) {
+        Map<String, BitSet> sectionClasses = classes.get(section);
+        return sectionClasses == null ? null : sectionClasses.get(classKey);
+    }
+
+    public int getParameterCount() {
+        return parameterKeys.size();
+    }
+
+    /**
+     * Get the id of a parameter, or -1 if no class takes it.
+     */
+    public int getParameterId(String parameterKey) {
+        Integer id = parameterIds.get(parameterKey);
+        return id == null ? -1 : id;
+    }
+
+    @Nonnull
+    public String getParameterKey(int id) {
+        return parameterKeys.get(id);
+    }
+
+    /**
+     * Get the parameters of a class as a bitset of parameter ids. This is a copy, it is safe to modify.
+     */
+    @Nonnull
+    public BitSet getParameters(String section, String classKey) {
+        BitSet bits = getBits(section, classKey);
+        return bits == null ? new BitSet() : (BitSet)bits.clone();
+    }
+
+    @Nonnull
+    public List<String> getParameterKeys(@Nonnull BitSet parameters) {
+        List<String> keys = new ArrayList<>(parameters.cardinality());
+        for (int id = parameters.nextSetBit(0); id >= 0; id = parameters.nextSetBit(id + 1)) {
+            keys.add(parameterKeys.get(id));
+        }
+        return keys;
+    }
+
+    public boolean hasParameter(String section, String classKey, String parameterKey) {
+        BitSet bits = getBits(section, classKey);
+        int id = getParameterId(parameterKey);
+        return bits != null && id >= 0 && bits.get(id);
+    }
+
+    /**
+     * Count the parameters two classes have in common.
+     */
+    public int getSharedCount(String section, String classKey, String otherClassKey) {
+        BitSet bits = getBits(section, classKey);
+        BitSet other = getBits(section, otherClassKey);
+        if (bits == null || other == null) return 0;
+        BitSet shared = (BitSet)bits.clone();
+        shared.and(other);
+        return shared.cardinality();
+    }
+
+    /**
+     * Get the classes that share at least the given number of parameters with a class,
+     * those sharing the most first.
+     */
+    @Nonnull
+    public List<String> getSimilarClasses(String section, String classKey, int minShared) {
+        List<String> similar = new ArrayList<>();
+        BitSet bits = getBits(section, classKey);
+        if (bits == null) return similar;
+
+        Map<String, Integer> sharedCounts = new HashMap<>();
+        BitSet shared = new BitSet();
+        for (Map.Entry<String, BitSet> entry : classes.get(section).entrySet()) {
+            if (entry.getKey().equals(classKey)) continue;
+            shared.clear();
+            shared.or(bits);
+            shared.and(entry.getValue());
+            int count = shared.cardinality();
+            if (count >= minShared) {
+                similar.add(entry.getKey());
+                sharedCounts.put(entry.getKey(), count);
+            }
+        }
+        // The class map is sorted, and this sort is stable, so ties stay in key order
+        Collections.sort(similar, (a, b) -> Integer.compare(sharedCounts.get(b), sharedCounts.get(a)));
+        return similar;
+    }
+
+    /**
+     * Get every parameter taken by any of the given classes.
+     */
+    @Nonnull
+    public BitSet getUnion(String section, @Nonnull Collection<String> classKeys) {
+        BitSet union = new BitSet();
+        for (String classKey : classKeys) {
+            BitSet bits = getBits(section, classKey);
+            if (bits != null) {
+                union.or(bits);
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Get the parameters taken by all of the given classes.
+     */
+    @Nonnull
+    public BitSet getIntersection(String section, @Nonnull Collection<String> classKeys) {
+        BitSet intersection = null;
+        for (String classKey : classKeys) {
+            BitSet bits = getBits(section, classKey);
+            if (bits == null) return new BitSet();
+            if (intersection == null) {
+                intersection = (BitSet)bits.clone();
+            } else {
+                intersection.and(bits);
+            }
+        }
+        return intersection == null ? new BitSet() : intersection;
+    }
+
+    /**
+     * Get the number of classes, in either section, that take a parameter.
+     */
+    public int getClassCount(String parameterKey) {
+        int id = getParameterId(parameterKey);
+        return id < 0 ? 0 : classCounts[id];
+    }
+
+    /**
+     * Get the parameters of a class that no other class takes.
+     */
+    @Nonnull
+    public BitSet getUniqueParameters(String section, String classKey) {
+        BitSet unique = getParameters(section, classKey);
+        for (int id = unique.nextSetBit(0); id >= 0; id = unique.nextSetBit(id + 1)) {
+            if (classCounts[id] > 1) {
+                unique.clear(id);
+            }
+        }
+        return unique;
+    }
+}
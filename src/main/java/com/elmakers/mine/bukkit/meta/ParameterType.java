@@ -17,10 +17,15 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class ParameterType {
     private Class<?> classType;
     private Class<?> alternateClassType;
+    // Kept for classes that could not be loaded, such as those of another version
+    private String className;
+    private String alternateClassName;
     private String key;
     private String name;
     private List<String> description;
     private Map<String, String> options;
+    // Bit i is set if the option exists in MetaData's version i, options in every version have no mask
+    private Map<String, Long> optionVersions;
     private Map<String, String> parameters;
     private String valueType;
     private String keyType;
@@ -69,10 +74,11 @@ public class ParameterType {
 
     @JsonProperty("class_name")
     public String getClassName() {
-        return this.classType.getName();
+        return classType == null ? className : classType.getName();
     }
 
     public void setClassName(String className) {
+        this.className = className;
         try {
             classType = Class.forName(className);
         } catch (Exception ex) {
@@ -86,10 +92,11 @@ public class ParameterType {
 
     @JsonProperty("alternate_class_name")
     public String getAlternateClassName() {
-        return alternateClassType == null ? null : this.alternateClassType.getName();
+        return alternateClassType == null ? alternateClassName : this.alternateClassType.getName();
     }
 
     public void setAlternateClassName(String className) {
+        alternateClassName = className;
         try {
             alternateClassType = Class.forName(className);
         } catch (Exception ex) {
@@ -104,6 +111,7 @@ public class ParameterType {
     }
 
     public void update() {
+        if (classType == null) return;
         if (classType.isEnum()) {
             Object[] enums = classType.getEnumConstants();
             for (Object enumConstant : enums) {
@@ -133,6 +141,25 @@ public class ParameterType {
         this.options = options;
     }
 
+    @JsonProperty("option_versions")
+    public Map<String, Long> getOptionVersions() {
+        return optionVersions;
+    }
+
+    public void setOptionVersions(Map<String, Long> optionVersions) {
+        this.optionVersions = optionVersions;
+    }
+
+    /**
+     * Check if an option exists in the version with the given index in {@link MetaData#getVersions()}.
+     * Metadata generated for a single version has no masks, so every option is there.
+     */
+    public boolean hasOption(String option, int versionIndex) {
+        if (options == null || !options.containsKey(option)) return false;
+        Long mask = optionVersions == null ? null : optionVersions.get(option);
+        return mask == null || (mask & (1L << versionIndex)) != 0;
+    }
+
     public Map<String, String> getParameters() {
         return parameters;
     }
@@ -0,0 +1,95 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang.ClassUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * A parameter store that remembers every parameter looked up, in order, for worker processes.
+ *
+ * <p>The keys a store picks depend on what it has seen before, so the real store could pick different
+ * keys. Parameters found here are keyed by the field and class that were looked up instead, and workers
+ * send back the lookups so the real store makes them again, in the same order a single process would
+ * have, see {@link #replay(JsonNode, ParameterStore)}.
+ */
+class RecordingParameterStore extends ParameterStore {
+    private final List<Read> reads = new ArrayList<>();
+
+    private static class Read {
+        private final String field;
+        private final Class<?> classType;
+
+        Read(String field, Class<?> classType) {
+            this.field = field;
+            this.classType = classType;
+        }
+    }
+
+    private static String getReadKey(String field, String className) {
+        return field + "/" + className;
+    }
+
+    @Override
+    public Parameter getParameter(String field, Class<?> defaultClass) {
+        Parameter parameter = super.getParameter(field, defaultClass);
+        Class<?> classType = defaultClass.isPrimitive() ? ClassUtils.primitiveToWrapper(defaultClass) : defaultClass;
+        String key = getReadKey(field, classType.getName());
+        reads.add(new Read(field, classType));
+
+        Parameter read = new Parameter();
+        read.setKey(key);
+        read.setField(field);
+        read.setType(parameter.getType());
+        return read;
+    }
+
+    void writeReads(@Nonnull ArrayNode array) {
+        for (Read read : reads) {
+            array.addArray().add(read.field).add(read.classType.getName());
+        }
+    }
+
+    /**
+     * Make the lookups a worker made against the given store, and return the parameters the worker found
+     * with their keys in this store.
+     */
+    @Nonnull
+    static ParameterList replay(@Nonnull JsonNode result, @Nonnull ParameterStore parameterStore) throws ClassNotFoundException {
+        Map<String, String> keys = new HashMap<>();
+        Map<String, Integer> lastReads = new HashMap<>();
+        int index = 0;
+        for (JsonNode read : result.path("reads")) {
+            String field = read.get(0).asText();
+            String className = read.get(1).asText();
+            Parameter parameter = parameterStore.getParameter(field, Class.forName(className));
+            String key = getReadKey(field, className);
+            keys.put(key, parameter.getKey());
+            lastReads.put(key, ++index);
+        }
+        ParameterList parameters = new ParameterList();
+        result.path("parameters").fields().forEachRemaining(entry -> {
+            parameters.put(entry.getKey(), entry.getValue().isNull() ? null : entry.getValue().asText());
+        });
+        return translate(parameters, keys, lastReads);
+    }
+
+    private static ParameterList translate(ParameterList parameters, Map<String, String> keys, Map<String, Integer> lastReads) {
+        // Lookups of one field as different classes can end up with the same key, the last one looked
+        // up has the default a single thread would have kept
+        List<Map.Entry<String, String>> entries = new ArrayList<>(parameters.entrySet());
+        entries.sort(Comparator.comparingInt(entry -> lastReads.getOrDefault(entry.getKey(), 0)));
+        ParameterList translated = new ParameterList();
+        for (Map.Entry<String, String> entry : entries) {
+            translated.put(keys.getOrDefault(entry.getKey(), entry.getKey()), entry.getValue());
+        }
+        return translated;
+    }
+}
@@ -0,0 +1,132 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The full parameter set of each action and EffectLib class, including what it inherits.
+ *
+ * <p>The class entries in meta.json only list what differs from their base class. Here every base is
+ * resolved once and each class points at its base, so any parameter of a class can be looked up in its
+ * own parameters and then its base. Only the bases and base keys are written out, the class parameters
+ * themselves are already in the classed section.
+ */
+public class ResolvedParameters {
+    public static final String ACTION_BASE = "action_parameters";
+    public static final String COMPOUND_ACTION_BASE = "compound_action_parameters";
+    public static final String EFFECTLIB_BASE = "effectlib_properties";
+
+    private final Map<String, ParameterList> bases = new TreeMap<>();
+    private final Map<String, Resolved> actions = new TreeMap<>();
+    private final Map<String, Resolved> effects = new TreeMap<>();
+
+    public ResolvedParameters(@Nonnull MetaData data) {
+        ParameterList actionBase = getTypeParameters(data, ACTION_BASE);
+        ParameterList compoundBase = new ParameterList();
+        compoundBase.putAll(actionBase);
+        compoundBase.putAll(getTypeParameters(data, COMPOUND_ACTION_BASE));
+        bases.put(ACTION_BASE, actionBase);
+        bases.put(COMPOUND_ACTION_BASE, compoundBase);
+        bases.put(EFFECTLIB_BASE, getTypeParameters(data, EFFECTLIB_BASE));
+
+        for (Map.Entry<String, SpellActionDescription> entry : data.getClasses().getActions().entrySet()) {
+            SpellActionDescription action = entry.getValue();
+            String base = "compound".equals(action.getCategory()) ? COMPOUND_ACTION_BASE : ACTION_BASE;
+            actions.put(entry.getKey(), resolve(base, action));
+        }
+        for (Map.Entry<String, EffectDescription> entry : data.getClasses().getEffects().entrySet()) {
+            effects.put(entry.getKey(), resolve(EFFECTLIB_BASE, entry.getValue()));
+        }
+    }
+
+    private static ParameterList getTypeParameters(MetaData data, String typeKey) {
+        ParameterList parameters = new ParameterList();
+        ParameterType type = data.getTypes().get(typeKey);
+        if (type != null && type.getParameters() != null) {
+            parameters.putAll(type.getParameters());
+        }
+        return parameters;
+    }
+
+    private static Resolved resolve(String base, Configurable configurable) {
+        ParameterList parameters = configurable.getParameters();
+        return new Resolved(base, parameters != null ? parameters : new ParameterList());
+    }
+
+    @JsonProperty("bases")
+    public Map<String, ParameterList> getBases() {
+        return bases;
+    }
+
+    @JsonProperty("actions")
+    public Map<String, Resolved> getActions() {
+        return actions;
+    }
+
+    @JsonProperty("effectlib_effects")
+    public Map<String, Resolved> getEffects() {
+        return effects;
+    }
+
+    @Nullable
+    public Resolved getAction(String key) {
+        return actions.get(key);
+    }
+
+    @Nullable
+    public Resolved getEffect(String key) {
+        return effects.get(key);
+    }
+
+    /**
+     * Check if the given class has a parameter, either of its own or from its base.
+     */
+    public boolean hasParameter(@Nonnull Resolved resolved, String key) {
+        return resolved.getParameters().containsKey(key) || bases.get(resolved.getBase()).containsKey(key);
+    }
+
+    /**
+     * Get the default value of a class parameter, which may come from its base.
+     */
+    @Nullable
+    public String getDefault(@Nonnull Resolved resolved, String key) {
+        ParameterList parameters = resolved.getParameters();
+        return parameters.containsKey(key) ? parameters.get(key) : bases.get(resolved.getBase()).get(key);
+    }
+
+    /**
+     * Get a copy of the full parameter set of a class.
+     */
+    @Nonnull
+    public ParameterList getAllParameters(@Nonnull Resolved resolved) {
+        ParameterList parameters = new ParameterList();
+        parameters.putAll(bases.get(resolved.getBase()));
+        parameters.putAll(resolved.getParameters());
+        return parameters;
+    }
+
+    public static class Resolved {
+        private final String base;
+        private final ParameterList parameters;
+
+        Resolved(String base, ParameterList parameters) {
+            this.base = base;
+            this.parameters = parameters;
+        }
+
+        @JsonProperty("base")
+        public String getBase() {
+            return base;
+        }
+
+        @JsonIgnore
+        public ParameterList getParameters() {
+            return parameters;
+        }
+    }
+}
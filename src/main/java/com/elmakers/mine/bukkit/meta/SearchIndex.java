@@ -0,0 +1,352 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A full-text index over properties, types, classes and categories, written next to meta.json
+ * as search.json. The reference page uses this same file, see common/js/metasearch.js.
+ *
+ * <p>Terms are kept sorted so prefix matches are a binary search. Each term has a posting list of
+ * documents, delta encoded, where the lowest bit says whether the term is part of the document's
+ * key or name rather than its description. Terms of four or more letters also have their
+ * single-letter deletions indexed, which finds terms one typo away from a query.
+ */
+@JsonIgnoreProperties(value = {"kinds"}, allowGetters = true)
+public class SearchIndex {
+    public static final String FILE_NAME = "search.json";
+    public static final String PROPERTY = "property";
+    public static final String TYPE = "type";
+    public static final String ACTION = "action";
+    public static final String EFFECTLIB = "effectlib";
+    public static final String CATEGORY = "category";
+
+    private static final List<String> KINDS = Collections.unmodifiableList(Arrays.asList(PROPERTY, TYPE, ACTION, EFFECTLIB, CATEGORY));
+    private static final int FUZZY_LENGTH = 4;
+    private static final double NAME_WEIGHT = 4;
+    private static final double DESCRIPTION_WEIGHT = 1;
+    private static final double PREFIX_WEIGHT = 0.5;
+    private static final double FUZZY_WEIGHT = 0.25;
+
+    private final int[] documentKinds;
+    private final List<String> documentKeys;
+    private final List<String> terms;
+    private final List<int[]> postings;
+    private final Map<String, int[]> fuzzy;
+
+    public SearchIndex(@Nonnull MetaData data) {
+        List<Integer> kinds = new ArrayList<>();
+        documentKeys = new ArrayList<>();
+        Map<String, List<Integer>> termPostings = new TreeMap<>();
+
+        Map<String, List<String>> aliases = new HashMap<>();
+        for (Map.Entry<String, Parameter> entry : data.getParameters().entrySet()) {
+            String alias = entry.getValue().getAlias();
+            if (alias == null) continue;
+            if (!aliases.containsKey(alias)) {
+                aliases.put(alias, new ArrayList<>());
+            }
+            aliases.get(alias).add(entry.getKey());
+        }
+        for (Map.Entry<String, Parameter> entry : new TreeMap<>(data.getParameters()).entrySet()) {
+            Parameter parameter = entry.getValue();
+            if (parameter.getAlias() != null) continue;
+            List<String> names = new ArrayList<>(Arrays.asList(entry.getKey(), parameter.getField(), parameter.getName()));
+            if (aliases.containsKey(entry.getKey())) {
+                names.addAll(aliases.get(entry.getKey()));
+            }
+            addDocument(PROPERTY, entry.getKey(), names, parameter.getDescription(), kinds, termPostings);
+        }
+        for (Map.Entry<String, ParameterType> entry : new TreeMap<>(data.getTypes()).entrySet()) {
+            ParameterType type = entry.getValue();
+            addDocument(TYPE, entry.getKey(), Arrays.asList(entry.getKey(), type.getName()), type.getDescription(), kinds, termPostings);
+        }
+        for (Map.Entry<String, SpellActionDescription> entry : new TreeMap<>(data.getClasses().getActions()).entrySet()) {
+            addClassDocument(ACTION, entry.getKey(), entry.getValue(), kinds, termPostings);
+        }
+        for (Map.Entry<String, EffectDescription> entry : new TreeMap<>(data.getClasses().getEffects()).entrySet()) {
+            addClassDocument(EFFECTLIB, entry.getKey(), entry.getValue(), kinds, termPostings);
+        }
+        for (Map.Entry<String, Category> entry : new TreeMap<>(data.getCategories()).entrySet()) {
+            Category category = entry.getValue();
+            addDocument(CATEGORY, entry.getKey(), Arrays.asList(entry.getKey(), category.getName()), category.getDescription(), kinds, termPostings);
+        }
+
+        documentKinds = new int[kinds.size()];
+        for (int i = 0; i < documentKinds.length; i++) {
+            documentKinds[i] = kinds.get(i);
+        }
+        terms = new ArrayList<>(termPostings.keySet());
+        postings = new ArrayList<>();
+        Map<String, TreeSet<Integer>> deletions = new TreeMap<>();
+        for (int termIndex = 0; termIndex < terms.size(); termIndex++) {
+            String term = terms.get(termIndex);
+            List<Integer> documents = termPostings.get(term);
+            int[] encoded = new int[documents.size()];
+            int previous = 0;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = documents.get(i) - previous;
+                previous = documents.get(i);
+            }
+            postings.add(encoded);
+
+            if (term.length() >= FUZZY_LENGTH) {
+                for (String deletion : getDeletions(term)) {
+                    if (!deletions.containsKey(deletion)) {
+                        deletions.put(deletion, new TreeSet<>());
+                    }
+                    deletions.get(deletion).add(termIndex);
+                }
+            }
+        }
+        fuzzy = new TreeMap<>();
+        for (Map.Entry<String, TreeSet<Integer>> entry : deletions.entrySet()) {
+            fuzzy.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    @JsonCreator
+    private SearchIndex(@JsonProperty("document_kinds") int[] documentKinds, @JsonProperty("document_keys") List<String> documentKeys,
+                        @JsonProperty("terms") List<String> terms, @JsonProperty("postings") List<int[]> postings,
+                        @JsonProperty("fuzzy") Map<String, int[]> fuzzy) {
+        this.documentKinds = documentKinds;
+        this.documentKeys = documentKeys;
+        this.terms = terms;
+        this.postings = postings;
+        this.fuzzy = fuzzy;
+    }
+
+    public static SearchIndex load(@Nonnull File inputFile, @Nonnull SortedObjectMapper mapper) throws IOException {
+        return mapper.readValue(inputFile, SearchIndex.class);
+    }
+
+    public void save(@Nonnull File outputFile, @Nonnull SortedObjectMapper mapper) throws IOException {
+        mapper.writeValue(outputFile, this);
+    }
+
+    private void addClassDocument(String kind, String key, Configurable configurable, List<Integer> kinds, Map<String, List<Integer>> termPostings) {
+        List<String> names = Arrays.asList(key, configurable.getName(), configurable.getClassName());
+        addDocument(kind, key, names, configurable.getDescription(), kinds, termPostings);
+    }
+
+    private void addDocument(String kind, String key, Collection<String> names, @Nullable List<String> description,
+                             List<Integer> kinds, Map<String, List<Integer>> termPostings) {
+        int document = documentKeys.size();
+        kinds.add(KINDS.indexOf(kind));
+        documentKeys.add(key);
+
+        Map<String, Integer> documentTerms = new LinkedHashMap<>();
+        for (String name : names) {
+            for (String term : tokenize(name)) {
+                documentTerms.put(term, 1);
+            }
+        }
+        if (description != null) {
+            for (String line : description) {
+                for (String term : tokenize(line)) {
+                    if (!documentTerms.containsKey(term)) {
+                        documentTerms.put(term, 0);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : documentTerms.entrySet()) {
+            if (!termPostings.containsKey(entry.getKey())) {
+                termPostings.put(entry.getKey(), new ArrayList<>());
+            }
+            termPostings.get(entry.getKey()).add(document * 2 + entry.getValue());
+        }
+    }
+
+    // Same as MetaSearch.tokenize in metasearch.js
+    public static List<String> tokenize(@Nullable String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        text = text.replaceAll("<[^>]*>", " ").toLowerCase(Locale.ROOT);
+        for (String token : text.split("[^a-z0-9]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> getDeletions(String term) {
+        List<String> deletions = new ArrayList<>();
+        for (int i = 0; i < term.length(); i++) {
+            deletions.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return deletions;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int index = 0;
+        for (Integer value : values) {
+            array[index++] = value;
+        }
+        return array;
+    }
+
+    /**
+     * Find the documents matching every word of a query, best matches first.
+     *
+     * <p>Words match terms exactly, by prefix, or one typo away, in decreasing order of score.
+     */
+    @Nonnull
+    public List<Result> search(@Nullable String query, int limit) {
+        List<String> tokens = tokenize(query);
+        List<Result> results = new ArrayList<>();
+        if (tokens.isEmpty()) return results;
+
+        double[] scores = new double[documentKeys.size()];
+        double[] tokenScores = new double[documentKeys.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            Arrays.fill(tokenScores, 0);
+            scoreToken(tokens.get(i), tokenScores);
+            for (int document = 0; document < scores.length; document++) {
+                // Every word has to match
+                boolean matched = tokenScores[document] > 0 && (i == 0 || scores[document] > 0);
+                scores[document] = matched ? scores[document] + tokenScores[document] : 0;
+            }
+        }
+
+        for (int document = 0; document < scores.length; document++) {
+            if (scores[document] > 0) {
+                results.add(new Result(KINDS.get(documentKinds[document]), documentKeys.get(document), scores[document], document));
+            }
+        }
+        Collections.sort(results, (a, b) -> {
+            if (a.score != b.score) {
+                return Double.compare(b.score, a.score);
+            }
+            // Shorter keys first, so "radius" comes before "inner_radius"
+            if (a.key.length() != b.key.length()) {
+                return Integer.compare(a.key.length(), b.key.length());
+            }
+            return Integer.compare(a.document, b.document);
+        });
+        return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    private void scoreToken(String token, double[] tokenScores) {
+        int exact = Collections.binarySearch(terms, token);
+        if (exact >= 0) {
+            scoreTerm(exact, 1, tokenScores);
+        }
+
+        // Everything after the exact match in sort order that starts with the token
+        if (token.length() >= 2) {
+            int start = exact >= 0 ? exact + 1 : -exact - 1;
+            for (int termIndex = start; termIndex < terms.size() && terms.get(termIndex).startsWith(token); termIndex++) {
+                scoreTerm(termIndex, PREFIX_WEIGHT, tokenScores);
+            }
+        }
+
+        if (token.length() >= FUZZY_LENGTH) {
+            TreeSet<Integer> candidates = new TreeSet<>();
+            addFuzzy(fuzzy.get(token), candidates);
+            for (String deletion : getDeletions(token)) {
+                addFuzzy(fuzzy.get(deletion), candidates);
+                int termIndex = Collections.binarySearch(terms, deletion);
+                if (termIndex >= 0) {
+                    candidates.add(termIndex);
+                }
+            }
+            candidates.remove(exact);
+            for (int termIndex : candidates) {
+                scoreTerm(termIndex, FUZZY_WEIGHT, tokenScores);
+            }
+        }
+    }
+
+    private static void addFuzzy(@Nullable int[] termIndexes, Collection<Integer> candidates) {
+        if (termIndexes == null) return;
+        for (int termIndex : termIndexes) {
+            candidates.add(termIndex);
+        }
+    }
+
+    private void scoreTerm(int termIndex, double weight, double[] tokenScores) {
+        int value = 0;
+        for (int delta : postings.get(termIndex)) {
+            value += delta;
+            int document = value >> 1;
+            double score = weight * ((value & 1) != 0 ? NAME_WEIGHT : DESCRIPTION_WEIGHT);
+            tokenScores[document] = Math.max(tokenScores[document], score);
+        }
+    }
+
+    @JsonProperty("kinds")
+    public List<String> getKinds() {
+        return KINDS;
+    }
+
+    @JsonProperty("document_kinds")
+    public int[] getDocumentKinds() {
+        return documentKinds;
+    }
+
+    @JsonProperty("document_keys")
+    public List<String> getDocumentKeys() {
+        return documentKeys;
+    }
+
+    @JsonProperty("terms")
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    @JsonProperty("postings")
+    public List<int[]> getPostings() {
+        return postings;
+    }
+
+    @JsonProperty("fuzzy")
+    public Map<String, int[]> getFuzzy() {
+        return fuzzy;
+    }
+
+    public static class Result {
+        private final String kind;
+        private final String key;
+        private final double score;
+        private final int document;
+
+        Result(String kind, String key, double score, int document) {
+            this.kind = kind;
+            this.key = key;
+            this.score = score;
+            this.document = document;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Loads MagicMeta against one version of Magic, EffectLib and Spigot.
+ *
+ * <p>MagicMeta's own classes come from the MagicMeta jar, Magic, EffectLib and Bukkit classes only
+ * from the version's jars, even though the shaded MagicMeta jar has its own copies of them. Anything
+ * else is looked for in the version's jars first. Jackson is shared with the loader that created this,
+ * so generated metadata can be handed back as a JsonNode.
+ *
+ * <p>Every version gets its own copy of all of Magic's static state this way, so several can be
+ * interrogated in one process at the same time.
+ */
+class VersionClassLoader extends URLClassLoader {
+    private static final String META_PACKAGE = "com.elmakers.mine.bukkit.meta.";
+    private static final String[] VERSIONED_PACKAGES = {
+        "com.elmakers.mine.bukkit.", "de.slikey.effectlib.", "org.bukkit.", "org.spigotmc.",
+        "net.md_5.", "net.minecraft.", "com.mojang."
+    };
+    private static final String[] SHARED_PACKAGES = {"com.fasterxml.jackson."};
+
+    private final String version;
+
+    /**
+     * Only exposes the shared packages of the given loader, and the platform classes.
+     */
+    private static class SharedClassLoader extends ClassLoader {
+        private final ClassLoader shared;
+
+        SharedClassLoader(ClassLoader shared) {
+            super(ClassLoader.getSystemClassLoader().getParent());
+            this.shared = shared;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            for (String prefix : SHARED_PACKAGES) {
+                if (name.startsWith(prefix)) {
+                    return shared.loadClass(name);
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    VersionClassLoader(@Nonnull String version, @Nonnull URL[] versionJars, @Nonnull URL metaJar, @Nonnull ClassLoader shared) {
+        super(new URL[] {metaJar}, new URLClassLoader(versionJars, new SharedClassLoader(shared)));
+        this.version = version;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    private static boolean isMeta(String name) {
+        return name.startsWith(META_PACKAGE);
+    }
+
+    private static boolean isVersioned(String name) {
+        for (String prefix : VERSIONED_PACKAGES) {
+            if (name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static String toClassName(String resourceName) {
+        return resourceName.replace('/', '.');
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                if (isMeta(name)) {
+                    loaded = findClass(name);
+                } else {
+                    try {
+                        loaded = getParent().loadClass(name);
+                    } catch (ClassNotFoundException ex) {
+                        // Don't fall back to the copies shaded into MagicMeta, this version doesn't have it
+                        if (isVersioned(name)) throw ex;
+                        loaded = findClass(name);
+                    }
+                }
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        String className = toClassName(name);
+        if (isMeta(className)) return findResource(name);
+        URL resource = getParent().getResource(name);
+        if (resource == null && !isVersioned(className)) {
+            resource = findResource(name);
+        }
+        return resource;
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        // Reflections finds the jars to scan this way, so this has to hide the shaded packages as well
+        String className = toClassName(name);
+        if (isMeta(className)) return findResources(name);
+        List<URL> resources = Collections.list(getParent().getResources(name));
+        if (!isVersioned(className)) {
+            resources.addAll(Collections.list(findResources(name)));
+        }
+        return Collections.enumeration(resources);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        ((URLClassLoader)getParent()).close();
+    }
+}
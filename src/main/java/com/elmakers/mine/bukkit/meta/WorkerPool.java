@@ -0,0 +1,202 @@
+package com.elmakers.mine.bukkit.meta;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A set of MagicMeta processes that interrogate classes for the main one.
+ *
+ * <p>Magic keeps a lot of state in statics, so interrogating more than one class at a time needs more
+ * than one JVM. Each worker is started with --worker, sets Magic up once and then answers requests, one
+ * JSON line each way: a kind (action, effect or mob) and a slice of class or entity type names in, and
+ * for each name the parameters found and the parameter lookups made out, see {@link RecordingParameterStore}.
+ *
+ * <p>Slices are handed to whichever worker is free, results are returned in the order they were asked for.
+ * Several threads can interrogate at once, each worker answers one request at a time.
+ *
+ * <p>A worker that takes longer than {@link #RESPONSE_TIMEOUT_SECONDS} to answer is killed and the request
+ * fails, so a class that hangs on construction can't stall the whole run. Workers get the same JVM options
+ * as this process, so -Xmx and the like apply to them too.
+ */
+class WorkerPool implements AutoCloseable {
+    private static final int SLICE_SIZE = 8;
+    private static final long RESPONSE_TIMEOUT_SECONDS = 300;
+    private static final long EXIT_TIMEOUT_SECONDS = 10;
+    // Marks the end of a worker's output, since the queue can't hold null
+    private static final String END_OF_OUTPUT = new String();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Worker> workers = new ArrayList<>();
+    private final ExecutorService executor;
+
+    private class Worker {
+        private final Process process;
+        private final Writer input;
+        private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+        Worker() throws IOException {
+            process = createProcessBuilder().start();
+            input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            // Read on a separate thread, so waiting for a response can time out
+            BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = output.readLine()) != null) {
+                        responses.add(line);
+                    }
+                } catch (IOException ignored) {
+                } finally {
+                    responses.add(END_OF_OUTPUT);
+                }
+            }, "MagicMeta worker reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized JsonNode request(String kind, List<String> names) throws IOException {
+            ObjectNode request = mapper.createObjectNode();
+            request.put("kind", kind);
+            request.set("names", mapper.valueToTree(names));
+            input.write(mapper.writeValueAsString(request));
+            input.write('\n');
+            input.flush();
+            String line;
+            try {
+                line = responses.poll(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while interrogating " + names, ex);
+            }
+            if (line == null) {
+                process.destroyForcibly();
+                throw new IOException("Worker process took longer than " + RESPONSE_TIMEOUT_SECONDS + " seconds interrogating " + names);
+            }
+            if (line == END_OF_OUTPUT) {
+                // Leave it there for anyone else asking this worker
+                responses.add(END_OF_OUTPUT);
+                throw new IOException("Worker process exited while interrogating " + names);
+            }
+            return mapper.readTree(line);
+        }
+
+        void close() throws InterruptedException {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+            if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("Worker process did not exit, killing it");
+                process.destroyForcibly();
+                process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static ProcessBuilder createProcessBuilder() {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // A debugger agent would try to listen on the same port in every worker
+            if (argument.startsWith("-agentlib:jdwp") || argument.startsWith("-Xrunjdwp")) continue;
+            command.add(argument);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MagicMeta.class.getName());
+        command.add("--worker");
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // Workers log to stderr, stdout is for results
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder;
+    }
+
+    WorkerPool(int count) throws IOException {
+        System.out.println("Starting " + count + " worker processes");
+        for (int i = 0; i < count; i++) {
+            workers.add(new Worker());
+        }
+        executor = Executors.newFixedThreadPool(count);
+    }
+
+    /**
+     * Interrogate the given names on the workers, returning the result for each name in the same order.
+     */
+    @Nonnull
+    List<JsonNode> interrogate(@Nonnull String kind, @Nonnull List<String> names) throws IOException, InterruptedException {
+        ConcurrentLinkedQueue<List<String>> slices = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < names.size(); i += SLICE_SIZE) {
+            slices.add(names.subList(i, Math.min(names.size(), i + SLICE_SIZE)));
+        }
+        Map<String, JsonNode> results = new ConcurrentHashMap<>();
+        List<Future<?>> running = new ArrayList<>();
+        for (Worker worker : workers) {
+            running.add(executor.submit(() -> {
+                List<String> slice;
+                while ((slice = slices.poll()) != null) {
+                    for (JsonNode result : worker.request(kind, slice).path("results")) {
+                        results.put(result.path("name").asText(), result);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+            }
+        }
+
+        List<JsonNode> ordered = new ArrayList<>();
+        for (String name : names) {
+            JsonNode result = results.get(name);
+            if (result == null) {
+                throw new IOException("No result from workers for " + name);
+            }
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdownNow();
+        try {
+            for (Worker worker : workers) {
+                worker.close();
+            }
+        } finally {
+            // Don't leave workers behind if closing was interrupted
+            for (Worker worker : workers) {
+                worker.process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package com.elmakers.mine.bukkit.meta.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compiles the Magic example configurations used by the magic/ viewer into JSON.
+ *
+ * <p>Each example gets one JSON file per section (spells, wands, ...) with the survival defaults
+ * already merged in the same way magic/configs.inc.php does it, so the PHP side only has to decode JSON.
+ *
+ * <p>On top of that the viewer gets its processed lists and details for each example and language,
+ * see {@link ViewerConfigs}, which magic/catalog.php and magic/index.php serve without any more processing.
+ *
+ * <p>Every source YAML file is cached as JSON alongside the output and tracked by modification time and size,
+ * so editing a single spell only re-parses that one file, and only the sections that include it are rewritten.
+ */
+public class ConfigCompiler {
+    private static final String SURVIVAL = "survival";
+    private static final String LOCALIZATIONS = "localizations";
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String SOURCE_CACHE_FOLDER = ".sources";
+    private static final String VIEWER_FOLDER = "viewer";
+    private static final String DEFAULT_LANGUAGE = "default";
+    // Bump this whenever ViewerConfigs changes what it writes, so existing viewer output gets rebuilt
+    private static final int VIEWER_VERSION = 1;
+    private static final List<String> SECTIONS = Arrays.asList("config", "spells", "wands", "crafting", "paths", "mobs", "messages");
+    // These sections are always merged with the survival defaults, matching configs.inc.php
+    private static final Set<String> ALWAYS_INHERITED = new HashSet<>(Arrays.asList("config", "mobs", "messages"));
+    // configs.inc.php only honors disable_inherited for these
+    private static final Set<String> DISABLEABLE = new HashSet<>(Arrays.asList("spells", "wands"));
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final File magicRootFolder;
+    private final File resourcePackFolder;
+    private final File outputFolder;
+    private final File sourceCacheFolder;
+    private final int threads;
+
+    private final Map<String, SourceStamp> previousFiles = new TreeMap<>();
+    private final Map<String, String> previousSections = new TreeMap<>();
+    private final Map<String, SourceStamp> currentFiles = new ConcurrentHashMap<>();
+    private final Map<String, String> currentSections = new ConcurrentHashMap<>();
+    private final Map<String, Future<Object>> parsed = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private int parsedCount;
+    private int writtenCount;
+
+    public static class SourceStamp {
+        public long modified;
+        public long size;
+
+        public SourceStamp() {
+        }
+
+        public SourceStamp(File file) {
+            modified = file.lastModified();
+            size = file.length();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SourceStamp)) return false;
+            SourceStamp otherStamp = (SourceStamp)other;
+            return modified == otherStamp.modified && size == otherStamp.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(modified) * 31 + Long.hashCode(size);
+        }
+
+        @Override
+        public String toString() {
+            return modified + ":" + size;
+        }
+    }
+
+    public static class Manifest {
+        public Map<String, SourceStamp> files = new TreeMap<>();
+        public Map<String, String> sections = new TreeMap<>();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: ConfigCompiler <magic root folder> <output folder> [resource pack folder] [--threads=N]");
+            return;
+        }
+        File resourcePackFolder = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else {
+                resourcePackFolder = new File(args[i]);
+            }
+        }
+        ConfigCompiler compiler = new ConfigCompiler(new File(args[0]), new File(args[1]), resourcePackFolder, threads);
+        try {
+            long start = System.currentTimeMillis();
+            compiler.compile();
+            System.out.println("Parsed " + compiler.parsedCount + " files, wrote " + compiler.writtenCount
+                + " sections in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception ex) {
+            System.out.println("An error ocurred compiling configs " + ex.getMessage());
+            ex.printStackTrace();
+        }
+        System.out.println("Done.");
+    }
+
+    public ConfigCompiler(@Nonnull File magicRootFolder, @Nonnull File outputFolder, @Nullable File resourcePackFolder, int threads) {
+        this.magicRootFolder = magicRootFolder;
+        this.outputFolder = outputFolder;
+        this.resourcePackFolder = resourcePackFolder;
+        this.sourceCacheFolder = new File(outputFolder, SOURCE_CACHE_FOLDER);
+        this.threads = Math.max(1, threads);
+    }
+
+    public void compile() throws IOException, InterruptedException, ExecutionException {
+        loadManifest();
+        File examplesFolder = new File(magicRootFolder, "examples");
+        File survivalFolder = new File(examplesFolder, SURVIVAL);
+        if (!survivalFolder.isDirectory()) {
+            throw new IOException("Missing survival configs at " + survivalFolder.getAbsolutePath());
+        }
+
+        executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Plan out every section and the files it is built from
+            List<SectionPlan> plans = new ArrayList<>();
+            List<String> exampleKeys = new ArrayList<>();
+            List<String> languages = new ArrayList<>();
+            exampleKeys.add(SURVIVAL);
+            languages.add(DEFAULT_LANGUAGE);
+            // Survival itself is customized by the root configs, every other example by its own folder
+            planExample(plans, SURVIVAL, survivalFolder, magicRootFolder, false);
+            File[] examples = examplesFolder.listFiles();
+            if (examples != null) {
+                Arrays.sort(examples);
+                for (File example : examples) {
+                    String exampleKey = example.getName();
+                    if (!example.isDirectory() || exampleKey.equals(SURVIVAL) || exampleKey.equals(LOCALIZATIONS)) continue;
+                    planExample(plans, exampleKey, survivalFolder, example, true);
+                    exampleKeys.add(exampleKey);
+                }
+            }
+
+            File[] localizations = new File(examplesFolder, LOCALIZATIONS).listFiles();
+            if (localizations != null) {
+                Arrays.sort(localizations);
+                for (File localization : localizations) {
+                    String fileName = localization.getName();
+                    if (!fileName.endsWith(".yml")) continue;
+                    if (fileName.startsWith("messages.")) {
+                        languages.add(fileName.substring("messages.".length(), fileName.length() - 4));
+                    }
+                    String sectionKey = LOCALIZATIONS + "/" + fileName.substring(0, fileName.length() - 4);
+                    plans.add(new SectionPlan(sectionKey, Collections.<File>emptyList(), Collections.singletonList(localization), false));
+                }
+            }
+
+            if (resourcePackFolder != null) {
+                File imageMap = new File(resourcePackFolder, "common/source/image_map.yml");
+                if (imageMap.exists()) {
+                    plans.add(new SectionPlan("resource-pack/textures", Collections.<File>emptyList(), Collections.singletonList(imageMap), false));
+                }
+            }
+
+            // Only sections whose inputs changed get rebuilt
+            List<SectionPlan> dirty = new ArrayList<>();
+            Map<String, File> needed = new TreeMap<>();
+            for (SectionPlan plan : plans) {
+                String fingerprint = plan.getFingerprint();
+                currentSections.put(plan.key, fingerprint);
+                if (getOutputFile(plan.key).exists() && fingerprint.equals(previousSections.get(plan.key))) continue;
+                dirty.add(plan);
+                for (File source : plan.getSources()) {
+                    needed.put(getRelativePath(source), source);
+                }
+            }
+
+            // Parse or load every needed file in parallel, one file per task
+            List<Future<?>> tasks = new ArrayList<>();
+            for (File source : needed.values()) {
+                tasks.add(executor.submit(() -> getParsed(source)));
+            }
+            waitFor(tasks);
+
+            // Then merge and write out the dirty sections
+            for (SectionPlan plan : dirty) {
+                tasks.add(executor.submit(() -> {
+                    writeJson(getOutputFile(plan.key), plan.build());
+                    synchronized (this) {
+                        writtenCount++;
+                    }
+                    return null;
+                }));
+            }
+            waitFor(tasks);
+
+            // Then the processed viewer data for each example and language, built from the sections written above
+            for (String exampleKey : exampleKeys) {
+                for (String language : languages) {
+                    String viewerKey = exampleKey + "/" + VIEWER_FOLDER + "/" + language;
+                    String fingerprint = getViewerFingerprint(exampleKey, language);
+                    currentSections.put(viewerKey, fingerprint);
+                    if (new File(outputFolder, viewerKey + "/index.json").exists() && fingerprint.equals(previousSections.get(viewerKey))) continue;
+                    tasks.add(executor.submit(() -> {
+                        writeViewer(exampleKey, language, new File(outputFolder, viewerKey));
+                        synchronized (this) {
+                            writtenCount++;
+                        }
+                        return null;
+                    }));
+                }
+            }
+            waitFor(tasks);
+        } finally {
+            executor.shutdown();
+        }
+
+        removeStaleOutput();
+        saveManifest();
+    }
+
+    private void waitFor(List<Future<?>> tasks) throws InterruptedException, ExecutionException {
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        tasks.clear();
+    }
+
+    private File getOutputFile(String sectionKey) {
+        return new File(outputFolder, sectionKey + ".json");
+    }
+
+    private File getLocalizationFile(String language) {
+        return getOutputFile(LOCALIZATIONS + "/messages." + language);
+    }
+
+    /**
+     * The viewer data only depends on the compiled sections it is built from, so their stamps are enough.
+     */
+    private String getViewerFingerprint(String exampleKey, String language) {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(VIEWER_VERSION).append(';');
+        for (String section : SECTIONS) {
+            fingerprint.append(new SourceStamp(getOutputFile(exampleKey + "/" + section))).append(';');
+        }
+        if (!language.equals(DEFAULT_LANGUAGE)) {
+            fingerprint.append(new SourceStamp(getLocalizationFile(language)));
+        }
+        return fingerprint.toString();
+    }
+
+    private void writeViewer(String exampleKey, String language, File viewerFolder) throws IOException {
+        Map<String, Map<String, Object>> sections = new LinkedHashMap<>();
+        for (String section : SECTIONS) {
+            sections.put(section, asMap(mapper.readValue(getOutputFile(exampleKey + "/" + section), Object.class)));
+        }
+        Map<String, Object> localization = null;
+        if (!language.equals(DEFAULT_LANGUAGE)) {
+            localization = asMap(mapper.readValue(getLocalizationFile(language), Object.class));
+        }
+        ViewerConfigs viewer = new ViewerConfigs(exampleKey, sections, localization);
+        for (Map.Entry<String, Map<String, Object>> catalog : viewer.getCatalogs().entrySet()) {
+            writeJson(new File(viewerFolder, "catalog/" + catalog.getKey() + ".json"), catalog.getValue());
+        }
+        // The index is written last, the PHP side only uses a viewer folder once it has one
+        writeJson(new File(viewerFolder, "index.json"), viewer.getIndex());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void planExample(List<SectionPlan> plans, String exampleKey, File defaultsFolder, File overrideFolder, boolean isExample)
+            throws InterruptedException, ExecutionException {
+        // The general config decides which of the other sections inherit from survival, so it is always loaded up front
+        Map<String, Object> general = mergeSection(getSectionFiles(defaultsFolder, "config"), getSectionFiles(overrideFolder, "config"), false);
+        List<Object> skipInherited = general.get("skip_inherited") instanceof List ? (List<Object>)general.get("skip_inherited") : Collections.emptyList();
+        List<Object> disableInherited = general.get("disable_inherited") instanceof List ? (List<Object>)general.get("disable_inherited") : Collections.emptyList();
+
+        // Another hack carried over from configs.inc.php, if we're not inheriting then don't load any defaults
+        boolean inheritsNothing = isExample && !general.containsKey("inherit");
+
+        for (String section : SECTIONS) {
+            boolean loadDefaults = ALWAYS_INHERITED.contains(section) || (!inheritsNothing && !skipInherited.contains(section));
+            List<File> defaultFiles = loadDefaults ? getSectionFiles(defaultsFolder, section) : Collections.<File>emptyList();
+            boolean disableDefaults = loadDefaults && DISABLEABLE.contains(section) && disableInherited.contains(section);
+            plans.add(new SectionPlan(exampleKey + "/" + section, defaultFiles, getSectionFiles(overrideFolder, section), disableDefaults));
+        }
+    }
+
+    private class SectionPlan {
+        private final String key;
+        private final List<File> defaultFiles;
+        private final List<File> overrideFiles;
+        private final boolean disableDefaults;
+
+        private SectionPlan(String key, List<File> defaultFiles, List<File> overrideFiles, boolean disableDefaults) {
+            this.key = key;
+            this.defaultFiles = defaultFiles;
+            this.overrideFiles = overrideFiles;
+            this.disableDefaults = disableDefaults;
+        }
+
+        private List<File> getSources() {
+            List<File> sources = new ArrayList<>(defaultFiles);
+            sources.addAll(overrideFiles);
+            return sources;
+        }
+
+        private String getFingerprint() {
+            StringBuilder fingerprint = new StringBuilder();
+            fingerprint.append(disableDefaults).append(';');
+            for (File source : getSources()) {
+                SourceStamp stamp = new SourceStamp(source);
+                String path = getRelativePath(source);
+                currentFiles.put(path, stamp);
+                fingerprint.append(path).append('=').append(stamp).append(';');
+            }
+            return fingerprint.toString();
+        }
+
+        private Object build() throws InterruptedException, ExecutionException {
+            return mergeSection(defaultFiles, overrideFiles, disableDefaults);
+        }
+    }
+
+    private Map<String, Object> mergeSection(List<File> defaultFiles, List<File> overrideFiles, boolean disableDefaults)
+            throws InterruptedException, ExecutionException {
+        Map<String, Object> config = new LinkedHashMap<>();
+        for (File file : defaultFiles) {
+            config = replaceRecursive(config, asMap(getParsed(file)));
+        }
+        Map<String, Object> override = new LinkedHashMap<>();
+        for (File file : overrideFiles) {
+            override = replaceRecursive(override, asMap(getParsed(file)));
+        }
+        if (!override.isEmpty()) {
+            if (disableDefaults) {
+                for (Object entry : config.values()) {
+                    if (entry instanceof Map) {
+                        asMap(entry).put("enabled", false);
+                    }
+                }
+            }
+            config = replaceRecursive(config, override);
+        }
+        return config;
+    }
+
+    /**
+     * A section is either a single name.yml file, a name/ folder of yml files, or both.
+     */
+    private List<File> getSectionFiles(File folder, String section) {
+        List<File> files = new ArrayList<>();
+        File sectionFile = new File(folder, section + ".yml");
+        if (sectionFile.isFile()) {
+            files.add(sectionFile);
+        }
+        collectYaml(new File(folder, section), files);
+        return files;
+    }
+
+    private void collectYaml(File folder, List<File> files) {
+        File[] children = folder.listFiles();
+        if (children == null) return;
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectYaml(child, files);
+            } else if (child.getName().endsWith(".yml") && !child.getName().startsWith("_")) {
+                files.add(child);
+            }
+        }
+    }
+
+    private Object getParsed(File file) throws InterruptedException, ExecutionException {
+        String path = getRelativePath(file);
+        Future<Object> future = parsed.get(path);
+        if (future == null) {
+            // Parsing happens on the calling thread, anyone else needing this file waits on the same result
+            FutureTask<Object> task = new FutureTask<>(() -> loadSource(file));
+            future = parsed.putIfAbsent(path, task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+        return future.get();
+    }
+
+    private Object loadSource(File file) throws IOException {
+        String path = getRelativePath(file);
+        SourceStamp stamp = new SourceStamp(file);
+        File cacheFile = new File(sourceCacheFolder, path + ".json");
+        if (cacheFile.exists() && stamp.equals(previousFiles.get(path))) {
+            return mapper.readValue(cacheFile, Object.class);
+        }
+
+        Object config;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            // Yaml instances are not thread-safe, so each parse gets its own
+            config = normalize(new Yaml().load(reader));
+        } catch (Exception ex) {
+            System.out.println("Error parsing " + file.getAbsolutePath() + ": " + ex.getMessage());
+            config = null;
+        }
+        if (config == null) {
+            config = new LinkedHashMap<String, Object>();
+        }
+        writeJson(cacheFile, config);
+        synchronized (this) {
+            parsedCount++;
+        }
+        return config;
+    }
+
+    /**
+     * SnakeYAML will happily produce integer or boolean map keys, JSON needs them to be strings.
+     */
+    private Object normalize(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> normalized = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                normalized.put(String.valueOf(entry.getKey()), normalize(entry.getValue()));
+            }
+            return normalized;
+        }
+        if (value instanceof List) {
+            List<Object> normalized = new ArrayList<>();
+            for (Object item : (List<?>)value) {
+                normalized.add(normalize(item));
+            }
+            return normalized;
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asMap(Object value) {
+        return value instanceof Map ? (Map<String, Object>)value : new LinkedHashMap<>();
+    }
+
+    /**
+     * Works like PHP's array_replace_recursive, lists are replaced index by index.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> replaceRecursive(Map<String, Object> base, Map<String, Object> override) {
+        Map<String, Object> result = new LinkedHashMap<>(base);
+        for (Map.Entry<String, Object> entry : override.entrySet()) {
+            result.put(entry.getKey(), replaceValue(result.get(entry.getKey()), entry.getValue()));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object replaceValue(Object base, Object override) {
+        if (base instanceof Map && override instanceof Map) {
+            return replaceRecursive((Map<String, Object>)base, (Map<String, Object>)override);
+        }
+        if (base instanceof List && override instanceof List) {
+            List<Object> baseList = (List<Object>)base;
+            List<Object> overrideList = (List<Object>)override;
+            List<Object> result = new ArrayList<>(baseList);
+            for (int i = 0; i < overrideList.size(); i++) {
+                if (i < result.size()) {
+                    result.set(i, replaceValue(result.get(i), overrideList.get(i)));
+                } else {
+                    result.add(overrideList.get(i));
+                }
+            }
+            return result;
+        }
+        return override;
+    }
+
+    private String getRelativePath(File file) {
+        String root = magicRootFolder.getAbsoluteFile().toPath().normalize().toString();
+        String path = file.getAbsoluteFile().toPath().normalize().toString();
+        if (path.startsWith(root)) {
+            return "magic" + path.substring(root.length()).replace(File.separatorChar, '/');
+        }
+        if (resourcePackFolder != null) {
+            String packRoot = resourcePackFolder.getAbsoluteFile().toPath().normalize().toString();
+            if (path.startsWith(packRoot)) {
+                return "resource-pack" + path.substring(packRoot.length()).replace(File.separatorChar, '/');
+            }
+        }
+        return path.replace(File.separatorChar, '/');
+    }
+
+    private void writeJson(File outputFile, Object value) throws IOException {
+        File folder = outputFile.getParentFile();
+        if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+            throw new IOException("Could not create folder " + folder.getAbsolutePath());
+        }
+        // Write to a temporary file first so the PHP side never streams a half-written section
+        File tempFile = new File(folder, outputFile.getName() + ".tmp");
+        mapper.writeValue(tempFile, value);
+        if (!tempFile.renameTo(outputFile)) {
+            outputFile.delete();
+            if (!tempFile.renameTo(outputFile)) {
+                throw new IOException("Could not write " + outputFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private void removeStaleOutput() {
+        for (String sectionKey : previousSections.keySet()) {
+            if (!currentSections.containsKey(sectionKey)) {
+                new File(outputFolder, sectionKey + ".json").delete();
+                deleteFolder(new File(outputFolder, sectionKey));
+            }
+        }
+        for (String path : previousFiles.keySet()) {
+            if (!currentFiles.containsKey(path)) {
+                new File(sourceCacheFolder, path + ".json").delete();
+            }
+        }
+    }
+
+    private static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                deleteFolder(file);
+            } else {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    private void loadManifest() throws IOException {
+        File manifestFile = new File(outputFolder, MANIFEST_FILE);
+        if (!manifestFile.exists()) return;
+        try (InputStream input = new FileInputStream(manifestFile)) {
+            Manifest manifest = mapper.readValue(input, new TypeReference<Manifest>() {});
+            previousFiles.putAll(manifest.files);
+            previousSections.putAll(manifest.sections);
+        } catch (IOException ex) {
+            System.out.println("Ignoring unreadable manifest, recompiling everything: " + ex.getMessage());
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.files.putAll(currentFiles);
+        manifest.sections.putAll(currentSections);
+        // The PHP side keys its caches off the manifest modification time, so it is written last
+        writeJson(new File(outputFolder, MANIFEST_FILE), manifest);
+    }
+}
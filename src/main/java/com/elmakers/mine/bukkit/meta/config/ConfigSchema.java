@@ -0,0 +1,229 @@
+package com.elmakers.mine.bukkit.meta.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.elmakers.mine.bukkit.meta.Configurable;
+import com.elmakers.mine.bukkit.meta.MetaData;
+import com.elmakers.mine.bukkit.meta.MetaIndex;
+import com.elmakers.mine.bukkit.meta.Parameter;
+import com.elmakers.mine.bukkit.meta.ParameterType;
+import com.elmakers.mine.bukkit.meta.ResolvedParameters;
+
+/**
+ * The metadata indexed by config field, for looking up what a key in a config file means.
+ * The config validator, the language server and the compiled schema are all built from this.
+ *
+ * <p>With metadata generated for several versions, enum options can be limited to one of them.
+ * This is built once and only read after that, so it can be shared between threads.
+ */
+public class ConfigSchema {
+    private final Map<String, ParameterType> types;
+    // Holder type -> config field -> parameter
+    private final Map<String, Map<String, Parameter>> holders = new TreeMap<>();
+    // Class section -> class key -> config field -> parameter, including inherited parameters
+    private final Map<String, Map<String, Map<String, Parameter>>> classProperties = new HashMap<>();
+    // Class section -> lowercase class name, short class or key -> class key
+    private final Map<String, Map<String, String>> classNames = new HashMap<>();
+    private final Map<String, Map<String, ? extends Configurable>> classes = new HashMap<>();
+    // Enum type -> options in the chosen version, or all of them
+    private final Map<String, Set<String>> enumOptions = new HashMap<>();
+    // Options left out of enumOptions because they are only in other versions
+    private final Map<String, Set<String>> otherVersionOptions = new HashMap<>();
+    private final String version;
+
+    public ConfigSchema(@Nonnull MetaData data) {
+        this(data, null);
+    }
+
+    public ConfigSchema(@Nonnull MetaData data, @Nullable String version) {
+        int versionIndex = version == null ? -1 : data.getVersionIndex(version);
+        this.version = versionIndex < 0 ? null : version;
+        types = new TreeMap<>(data.getTypes());
+        Map<String, Parameter> parameters = data.getParameters();
+        Map<String, List<String>> aliases = new HashMap<>();
+        for (Map.Entry<String, Parameter> entry : parameters.entrySet()) {
+            String alias = entry.getValue().getAlias();
+            if (alias == null) continue;
+            if (!aliases.containsKey(alias)) {
+                aliases.put(alias, new ArrayList<>());
+            }
+            aliases.get(alias).add(entry.getKey());
+        }
+
+        for (Map.Entry<String, ParameterType> entry : types.entrySet()) {
+            ParameterType type = entry.getValue();
+            if (type.getParameters() != null && !type.getParameters().isEmpty()) {
+                holders.put(entry.getKey(), getProperties(type.getParameters().keySet(), parameters, aliases));
+            }
+            Class<?> classType = type.getClassType();
+            if (classType != null && classType.isEnum() && type.getOptions() != null && !type.getOptions().isEmpty()) {
+                Set<String> options = new TreeSet<>();
+                Set<String> otherOptions = new TreeSet<>();
+                for (String option : type.getOptions().keySet()) {
+                    if (versionIndex < 0 || type.hasOption(option, versionIndex)) {
+                        options.add(option);
+                    } else {
+                        otherOptions.add(option);
+                    }
+                }
+                enumOptions.put(entry.getKey(), options);
+                if (!otherOptions.isEmpty()) {
+                    otherVersionOptions.put(entry.getKey(), otherOptions);
+                }
+            }
+        }
+
+        ResolvedParameters resolved = data.getResolvedParameters();
+        addClasses(MetaIndex.ACTIONS, data.getClasses().getActions(), resolved.getActions(), resolved, parameters, aliases);
+        addClasses(MetaIndex.EFFECTLIB_EFFECTS, data.getClasses().getEffects(), resolved.getEffects(), resolved, parameters, aliases);
+    }
+
+    private void addClasses(String section, Map<String, ? extends Configurable> sectionClasses, Map<String, ResolvedParameters.Resolved> resolvedClasses,
+                            ResolvedParameters resolved, Map<String, Parameter> parameters, Map<String, List<String>> aliases) {
+        Map<String, Map<String, Parameter>> sectionProperties = new TreeMap<>();
+        Map<String, String> names = new HashMap<>();
+        for (Map.Entry<String, ? extends Configurable> entry : sectionClasses.entrySet()) {
+            String classKey = entry.getKey();
+            Set<String> keys = resolved.getAllParameters(resolvedClasses.get(classKey)).keySet();
+            sectionProperties.put(classKey, getProperties(keys, parameters, aliases));
+            names.put(classKey.toLowerCase(Locale.ROOT), classKey);
+            String className = entry.getValue().getClassName();
+            if (className != null) {
+                names.put(className.toLowerCase(Locale.ROOT), classKey);
+            }
+            String shortClass = entry.getValue().getShortClass();
+            if (shortClass != null) {
+                names.put(shortClass.toLowerCase(Locale.ROOT), classKey);
+            }
+        }
+        classProperties.put(section, sectionProperties);
+        classNames.put(section, names);
+        classes.put(section, sectionClasses);
+    }
+
+    /**
+     * Where two parameters share a field, the one named after the field wins, then any other parameter, then aliases.
+     * Aliases map to the parameter they are an alias of.
+     */
+    private static Map<String, Parameter> getProperties(Set<String> keys, Map<String, Parameter> parameters, Map<String, List<String>> aliases) {
+        Map<String, Parameter> properties = new TreeMap<>();
+        for (String key : keys) {
+            Parameter parameter = parameters.get(key);
+            if (parameter != null && parameter.getField().equals(key)) {
+                properties.put(key, parameter);
+            }
+        }
+        for (String key : keys) {
+            Parameter parameter = parameters.get(key);
+            if (parameter != null && !properties.containsKey(parameter.getField())) {
+                properties.put(parameter.getField(), parameter);
+            }
+        }
+        for (String key : keys) {
+            Parameter parameter = parameters.get(key);
+            List<String> aliasKeys = aliases.get(key);
+            if (parameter == null || aliasKeys == null) continue;
+            for (String aliasKey : aliasKeys) {
+                String field = parameters.get(aliasKey).getField();
+                if (!properties.containsKey(field)) {
+                    properties.put(field, parameter);
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * The version enum options are limited to, or null if they are not.
+     */
+    @Nullable
+    public String getVersion() {
+        return version;
+    }
+
+    @Nonnull
+    public Map<String, ParameterType> getTypes() {
+        return types;
+    }
+
+    @Nullable
+    public ParameterType getType(@Nullable String typeKey) {
+        return typeKey == null ? null : types.get(typeKey);
+    }
+
+    public boolean isHolder(String typeKey) {
+        return holders.containsKey(typeKey);
+    }
+
+    public boolean isEnum(String typeKey) {
+        return enumOptions.containsKey(typeKey);
+    }
+
+    /**
+     * The options of an enum type, only those in the chosen version if there is one.
+     */
+    @Nonnull
+    public Set<String> getOptions(String typeKey) {
+        Set<String> options = enumOptions.get(typeKey);
+        return options == null ? Collections.<String>emptySet() : options;
+    }
+
+    /**
+     * Check if an option of an enum type is only left out because it is not in the chosen version.
+     */
+    public boolean isOtherVersionOption(String typeKey, String option) {
+        Set<String> options = otherVersionOptions.get(typeKey);
+        return options != null && options.contains(option);
+    }
+
+    @Nonnull
+    public Map<String, Map<String, Parameter>> getHolders() {
+        return holders;
+    }
+
+    @Nonnull
+    public Map<String, Parameter> getHolder(String typeKey) {
+        Map<String, Parameter> holder = holders.get(typeKey);
+        return holder == null ? Collections.<String, Parameter>emptyMap() : holder;
+    }
+
+    @Nullable
+    public String getClassKey(String section, String className) {
+        Map<String, String> names = classNames.get(section);
+        return names == null ? null : names.get(className.toLowerCase(Locale.ROOT));
+    }
+
+    @Nullable
+    public Configurable getClass(String section, String classKey) {
+        Map<String, ? extends Configurable> sectionClasses = classes.get(section);
+        return sectionClasses == null ? null : sectionClasses.get(classKey);
+    }
+
+    @Nonnull
+    public Map<String, ? extends Configurable> getClasses(String section) {
+        Map<String, ? extends Configurable> sectionClasses = classes.get(section);
+        return sectionClasses == null ? Collections.<String, Configurable>emptyMap() : sectionClasses;
+    }
+
+    @Nonnull
+    public Map<String, Map<String, Parameter>> getClassProperties(String section) {
+        Map<String, Map<String, Parameter>> sectionProperties = classProperties.get(section);
+        return sectionProperties == null ? Collections.<String, Map<String, Parameter>>emptyMap() : sectionProperties;
+    }
+
+    @Nonnull
+    public Map<String, Parameter> getClassProperties(String section, String classKey) {
+        Map<String, Parameter> properties = getClassProperties(section).get(classKey);
+        return properties == null ? Collections.<String, Parameter>emptyMap() : properties;
+    }
+}
@@ -0,0 +1,391 @@
+package com.elmakers.mine.bukkit.meta.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.yaml.snakeyaml.Yaml;
+
+import com.elmakers.mine.bukkit.meta.MetaData;
+import com.elmakers.mine.bukkit.meta.MetaIndex;
+import com.elmakers.mine.bukkit.meta.Parameter;
+import com.elmakers.mine.bukkit.meta.ParameterType;
+import com.elmakers.mine.bukkit.meta.ResolvedParameters;
+import com.elmakers.mine.bukkit.meta.SortedObjectMapper;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Checks Magic configuration files against meta.json without starting a server.
+ *
+ * <p>Every yml file under the given folders whose folder or file name is a known section (spells, wands,
+ * mobs, ...) is parsed and checked in parallel, one file per task. Keys are checked against the properties
+ * of their section, following nested types the same way the editor hints do, including action and
+ * EffectLib classes. Values of enum types are checked against their options. The issues found are written
+ * out as a JSON report.
+ *
+ * <p>With metadata generated for several versions, --version=1.16 checks options against that version only.
+ */
+public class ConfigValidator {
+    public static final String ERROR = "error";
+    public static final String WARNING = "warning";
+
+    private static final Map<String, String> SECTIONS = new HashMap<>();
+    private static final Set<String> SKIPPED_FOLDERS = new HashSet<>(Arrays.asList("messages", "localizations"));
+    // Values that are plainly an option key, anything else may be a variable, an expression or extra data
+    private static final Pattern OPTION_VALUE = Pattern.compile("[a-z0-9_]+");
+
+    static {
+        SECTIONS.put("spells", "spell_properties");
+        SECTIONS.put("wands", "wand_properties");
+        SECTIONS.put("mobs", "mob_properties");
+        SECTIONS.put("classes", "class_properties");
+        SECTIONS.put("modifiers", "modifier_properties");
+        SECTIONS.put("crafting", "crafting_properties");
+        SECTIONS.put("recipes", "crafting_properties");
+        SECTIONS.put("kits", "kit_properties");
+        SECTIONS.put("arenas", "arena_properties");
+        SECTIONS.put("worlds", "world_properties");
+        SECTIONS.put("blocks", "block_properties");
+    }
+
+    private final ConfigSchema schema;
+    private final int threads;
+    private final ThreadLocal<Yaml> yaml = ThreadLocal.withInitial(Yaml::new);
+
+    public static class Issue {
+        @JsonProperty("file")
+        public final String file;
+        @JsonProperty("path")
+        public final String path;
+        @JsonProperty("severity")
+        public final String severity;
+        @JsonProperty("message")
+        public final String message;
+
+        Issue(String file, String path, String severity, String message) {
+            this.file = file;
+            this.path = path;
+            this.severity = severity;
+            this.message = message;
+        }
+    }
+
+    public static class Report {
+        @JsonProperty("files")
+        public int files;
+        @JsonProperty("errors")
+        public int errors;
+        @JsonProperty("warnings")
+        public int warnings;
+        @JsonProperty("elapsed_ms")
+        public long elapsedMs;
+        @JsonProperty("issues")
+        public List<Issue> issues = new ArrayList<>();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: ConfigValidator <meta.json> <report.json> <config folder>... [--threads=N] [--version=V]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        String version = null;
+        List<File> folders = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].startsWith("--version=")) {
+                version = args[i].substring("--version=".length());
+            } else {
+                folders.add(new File(args[i]));
+            }
+        }
+        SortedObjectMapper mapper = new SortedObjectMapper();
+        try {
+            File metaFile = new File(args[0]);
+            System.out.println("Loading " + metaFile.getAbsolutePath());
+            JsonNode root = mapper.readTree(metaFile);
+            MetaData data = mapper.convertValue(root, MetaData.class);
+            data.loaded();
+            if (version != null && data.getVersionIndex(version) < 0) {
+                System.out.println("Metadata was not generated for version " + version + ", checking against all versions");
+                version = null;
+            }
+
+            ConfigValidator validator = new ConfigValidator(data, threads, version);
+            Report report = validator.validate(folders);
+            File reportFile = new File(args[1]);
+            mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            System.out.println("Checked " + report.files + " files in " + report.elapsedMs + "ms, found "
+                + report.errors + " errors and " + report.warnings + " warnings, see " + reportFile.getAbsolutePath());
+        } catch (Exception ex) {
+            System.out.println("An error ocurred validating configs " + ex.getMessage());
+            ex.printStackTrace();
+        }
+        System.out.println("Done.");
+    }
+
+    public ConfigValidator(@Nonnull MetaData data, int threads) {
+        this(data, threads, null);
+    }
+
+    public ConfigValidator(@Nonnull MetaData data, int threads, @Nullable String version) {
+        this.schema = new ConfigSchema(data, version);
+        this.threads = Math.max(1, threads);
+    }
+
+    @Nonnull
+    public Report validate(@Nonnull List<File> folders) throws InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        Map<File, String> files = new HashMap<>();
+        for (File folder : folders) {
+            collectFiles(folder, null, files);
+        }
+        List<File> sortedFiles = new ArrayList<>(files.keySet());
+        Collections.sort(sortedFiles);
+
+        List<Future<List<Issue>>> tasks = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (File file : sortedFiles) {
+                tasks.add(executor.submit(() -> validateFile(file, files.get(file))));
+            }
+            Report report = new Report();
+            report.files = sortedFiles.size();
+            // Collected in file order, so the report is the same for any number of threads
+            for (Future<List<Issue>> task : tasks) {
+                for (Issue issue : task.get()) {
+                    report.issues.add(issue);
+                    if (issue.severity.equals(ERROR)) {
+                        report.errors++;
+                    } else {
+                        report.warnings++;
+                    }
+                }
+            }
+            report.elapsedMs = System.currentTimeMillis() - start;
+            return report;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Files go in the section of their closest folder, or their own name, that is a known section.
+     */
+    private void collectFiles(File file, @Nullable String section, Map<File, String> files) {
+        String name = file.getName();
+        if (file.isDirectory()) {
+            if (SKIPPED_FOLDERS.contains(name)) return;
+            String folderSection = SECTIONS.get(name);
+            File[] children = file.listFiles();
+            if (children == null) return;
+            for (File child : children) {
+                collectFiles(child, folderSection == null ? section : folderSection, files);
+            }
+        } else if (name.endsWith(".yml") && !name.startsWith("_")) {
+            String fileSection = SECTIONS.get(name.substring(0, name.length() - 4));
+            if (fileSection != null) {
+                files.put(file, fileSection);
+            } else if (section != null) {
+                files.put(file, section);
+            }
+        }
+    }
+
+    /**
+     * Get the property holder type for a single config file, the same way folders are walked.
+     * Returns null for files that are not in a known section.
+     */
+    @Nullable
+    public static String getSectionType(@Nonnull File file) {
+        String name = file.getName();
+        if (!name.endsWith(".yml") || name.startsWith("_")) return null;
+        String section = SECTIONS.get(name.substring(0, name.length() - 4));
+        for (File folder = file.getParentFile(); folder != null; folder = folder.getParentFile()) {
+            if (SKIPPED_FOLDERS.contains(folder.getName())) return null;
+            if (section == null) {
+                section = SECTIONS.get(folder.getName());
+            }
+        }
+        return section;
+    }
+
+    private List<Issue> validateFile(File file, String typeKey) {
+        FileValidation validation = new FileValidation(file.getPath());
+        Object config;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            config = yaml.get().load(reader);
+        } catch (Exception ex) {
+            validation.issue("", ERROR, "Could not parse file: " + ex.getMessage());
+            return validation.issues;
+        }
+        if (!(config instanceof Map)) return validation.issues;
+
+        // Each top-level entry is one spell, wand, mob, ...
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>)config).entrySet()) {
+            if (!(entry.getValue() instanceof Map)) continue;
+            String key = String.valueOf(entry.getKey());
+            validation.actionClasses = collectClasses(entry.getValue(), new HashSet<>());
+            validation.validateMap((Map<?, ?>)entry.getValue(), typeKey, null, key);
+        }
+        return validation.issues;
+    }
+
+    /**
+     * Find every action class used anywhere in a config, for parameters sections which
+     * take the parameters of the actions used.
+     */
+    private Set<String> collectClasses(Object value, Set<String> classes) {
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                if ("class".equals(entry.getKey()) && entry.getValue() != null) {
+                    String classKey = schema.getClassKey(MetaIndex.ACTIONS, entry.getValue().toString());
+                    if (classKey != null) {
+                        classes.add(classKey);
+                    }
+                } else {
+                    collectClasses(entry.getValue(), classes);
+                }
+            }
+        } else if (value instanceof List) {
+            for (Object item : (List<?>)value) {
+                collectClasses(item, classes);
+            }
+        }
+        return classes;
+    }
+
+    private class FileValidation {
+        private final String file;
+        private final List<Issue> issues = new ArrayList<>();
+        private Set<String> actionClasses = Collections.emptySet();
+
+        FileValidation(String file) {
+            this.file = file;
+        }
+
+        void issue(String path, String severity, String message) {
+            issues.add(new Issue(file, path, severity, message));
+        }
+
+        /**
+         * Check the keys of a section against a property holder type, and any extra properties it accepts.
+         */
+        void validateMap(Map<?, ?> section, String typeKey, @Nullable List<Map<String, Parameter>> extra, String path) {
+            if (!schema.isHolder(typeKey)) return;
+            Map<String, Parameter> properties = schema.getHolder(typeKey);
+            for (Map.Entry<?, ?> entry : section.entrySet()) {
+                String field = String.valueOf(entry.getKey());
+                Parameter property = properties.get(field);
+                if (property == null && extra != null) {
+                    for (Map<String, Parameter> extraProperties : extra) {
+                        property = extraProperties.get(field);
+                        if (property != null) break;
+                    }
+                }
+                if (property == null) {
+                    issue(path + "." + field, ERROR, "Unknown property " + field + " in " + typeKey);
+                    continue;
+                }
+                validateValue(entry.getValue(), property.getType(), path + "." + field);
+            }
+        }
+
+        void validateValue(Object value, String typeKey, String path) {
+            ParameterType type = schema.getType(typeKey);
+            if (type == null || value == null) return;
+
+            if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)value;
+                if (type.getPopulateFrom() != null) {
+                    List<Map<String, Parameter>> extra = new ArrayList<>();
+                    for (String classKey : actionClasses) {
+                        extra.add(schema.getClassProperties(type.getPopulateFrom(), classKey));
+                    }
+                    extra.add(schema.getHolder(ResolvedParameters.ACTION_BASE));
+                    validateMap(map, typeKey, extra, path);
+                } else if (type.getClassed() != null) {
+                    validateClassed(map, typeKey, type, path);
+                } else if (schema.isHolder(typeKey)) {
+                    validateMap(map, typeKey, null, path);
+                } else if (type.getValueType() != null) {
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        String key = String.valueOf(entry.getKey());
+                        if (type.getKeyType() != null) {
+                            validateOption(key, type.getKeyType(), path + "." + key);
+                        }
+                        validateValue(entry.getValue(), type.getValueType(), path + "." + key);
+                    }
+                }
+            } else if (value instanceof List) {
+                if (type.getItemType() == null) return;
+                List<?> list = (List<?>)value;
+                for (int i = 0; i < list.size(); i++) {
+                    validateValue(list.get(i), type.getItemType(), path + "[" + i + "]");
+                }
+            } else {
+                validateOption(value.toString(), typeKey, path);
+            }
+        }
+
+        void validateClassed(Map<?, ?> section, String typeKey, ParameterType type, String path) {
+            Object className = section.get("class");
+            if (className == null) {
+                issue(path, ERROR, "Missing class");
+                return;
+            }
+            String classKey = schema.getClassKey(type.getClassed(), className.toString());
+            if (classKey == null) {
+                issue(path + ".class", ERROR, "Unknown class " + className);
+                return;
+            }
+            List<Map<String, Parameter>> extra = new ArrayList<>();
+            extra.add(schema.getClassProperties(type.getClassed(), classKey));
+            if (type.getClassed().equals(MetaIndex.ACTIONS)) {
+                // Actions also see the spell parameters
+                extra.add(schema.getHolder("spell_parameters"));
+            }
+            validateMap(section, typeKey, extra, path);
+        }
+
+        void validateOption(String value, String typeKey, String path) {
+            if (!schema.isEnum(typeKey)) return;
+            String option = value.toLowerCase(Locale.ROOT);
+            // Drop data and counts, as in diamond_axe:5 or stone@64
+            for (char separator : new char[] {':', '@', '{'}) {
+                int index = option.indexOf(separator);
+                if (index > 0) {
+                    option = option.substring(0, index);
+                }
+            }
+            if (!OPTION_VALUE.matcher(option).matches()) return;
+            if (!schema.getOptions(typeKey).contains(option)) {
+                if (schema.isOtherVersionOption(typeKey, option)) {
+                    issue(path, WARNING, typeKey + " " + value + " is not in version " + schema.getVersion());
+                } else {
+                    issue(path, WARNING, "Unknown " + typeKey + " " + value);
+                }
+            }
+        }
+    }
+}
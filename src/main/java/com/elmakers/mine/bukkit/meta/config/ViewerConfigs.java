@@ -0,0 +1,429 @@
+package com.elmakers.mine.bukkit.meta.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Does the processing magic/configs.inc.php used to do on every cache miss: localized names, spell levels,
+ * path inheritance, wand worth and so on, so the viewer can serve the results as they are.
+ *
+ * <p>The index holds the settings and just the fields the lists in magic/index.php show,
+ * the catalogs hold every processed spell, wand, etc. for the details panes.
+ */
+class ViewerConfigs {
+    private final Map<String, Object> general;
+    private final Map<String, Object> allSpells;
+    private final Map<String, Object> messages;
+    private final Map<String, Object> enchantingConfig;
+    private final Map<String, Object> enchanting = new LinkedHashMap<>();
+    private final Set<String> resolvingPaths = new HashSet<>();
+    private final Map<String, Map<String, Object>> catalogs = new LinkedHashMap<>();
+    private final Map<String, Object> index = new LinkedHashMap<>();
+
+    ViewerConfigs(String exampleKey, Map<String, Map<String, Object>> sections, Map<String, Object> localization) {
+        general = sections.get("config");
+        allSpells = sections.get("spells");
+        enchantingConfig = sections.get("paths");
+        messages = localization == null ? sections.get("messages") : ConfigCompiler.replaceRecursive(sections.get("messages"), localization);
+
+        Map<String, Object> spells = processSpells();
+        Map<String, Object> mobs = processMobs(sections.get("mobs"));
+        Map<String, Object> paths = processPaths();
+        Map<String, Object> wands = new TreeMap<>();
+        Map<String, Object> upgrades = new TreeMap<>();
+        processWands(sections.get("wands"), spells, wands, upgrades);
+        Map<String, Object> crafting = processCrafting(sections.get("crafting"), wands, upgrades);
+
+        // Spell details show the first path that teaches or requires them
+        for (Object spell : spells.values()) {
+            Map<String, Object> spellConfig = ConfigCompiler.asMap(spell);
+            spellConfig.put("path_availability", getPathAvailability((String)spellConfig.get("key"), paths));
+        }
+
+        catalogs.put("spells", spells);
+        catalogs.put("wands", wands);
+        catalogs.put("upgrades", upgrades);
+        catalogs.put("crafting", crafting);
+        catalogs.put("enchanting", paths);
+        catalogs.put("mobs", mobs);
+
+        index.put("spells", summarize(spells, "name", "icon", "icon_url"));
+        index.put("crafting", summarizeCrafting(crafting));
+        index.put("enchanting", summarize(paths, "name"));
+        index.put("wands", summarize(wands, "name", "icon", "effect_color"));
+        index.put("upgrades", summarize(upgrades, "name", "icon", "effect_color"));
+        index.put("mobs", summarize(mobs, "name", "enabled", "hidden"));
+
+        index.put("worthItems", getWorthItems());
+        index.put("categories", messages.get("categories") != null ? messages.get("categories") : new LinkedHashMap<>());
+        index.put("worthBase", get(general, "worth_base", 1));
+        index.put("maxXpRegeneration", get(general, "max_mana_regeneration", 0));
+        index.put("maxXp", get(general, "max_mana", 0));
+        index.put("enchantingEnabled", get(general, "enable_enchanting", false));
+        index.put("combiningEnabled", get(general, "enable_combining", false));
+        index.put("wandItem", get(general, "wand_item", ""));
+        index.put("craftingEnabled", get(general, "enable_crafting", true));
+        index.put("rightClickCycles", get(general, "right_click_cycles", true));
+        index.put("eraseMaterial", get(general, "erase_item", "sulphur"));
+        index.put("copyMaterial", get(general, "copy_item", "sugar"));
+        index.put("replicateMaterial", get(general, "replicate_item", "nether_stalk"));
+        index.put("cloneMaterial", get(general, "clone_item", "pumpkin_seeds"));
+
+        // special-case hackiness to show painterly icons
+        String texturePath = "default";
+        if (exampleKey.equals("painterly")) texturePath = "painterly";
+        else if (exampleKey.equals("potter")) texturePath = "potter";
+        index.put("texturePath", texturePath);
+    }
+
+    Map<String, Object> getIndex() {
+        return index;
+    }
+
+    Map<String, Map<String, Object>> getCatalogs() {
+        return catalogs;
+    }
+
+    private Map<String, Object> processSpells() {
+        Map<String, Object> spells = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : allSpells.entrySet()) {
+            String key = entry.getKey();
+            Map<String, Object> spell = new LinkedHashMap<>(ConfigCompiler.asMap(entry.getValue()));
+            if (key.equals("default") || isTrue(spell.get("hidden")) || isDisabled(spell)) continue;
+            spell.put("key", key);
+            spell.put("upgrade_description", getMessage("spells", key, "upgrade_description", ""));
+
+            int levelIndex = key.indexOf('|');
+            if (levelIndex >= 0) {
+                String baseKey = key.substring(0, levelIndex);
+                String level = key.substring(levelIndex + 1).split("\\|")[0];
+                if (spells.containsKey(baseKey)) {
+                    Map<String, Object> spellLevel = new LinkedHashMap<>(ConfigCompiler.asMap(entry.getValue()));
+                    spellLevel.put("key", key);
+                    Map<String, Object> baseSpell = ConfigCompiler.asMap(spells.get(baseKey));
+                    Map<String, Object> levels = ConfigCompiler.asMap(baseSpell.get("spell_levels"));
+                    levels.put(level, spellLevel);
+                    baseSpell.put("spell_levels", levels);
+                }
+                continue;
+            }
+
+            if (isTrue(spell.get("inherit"))) {
+                String inheritKey = spell.get("inherit").toString();
+                // this is a little hacky but should be good enough!
+                if (inheritKey.contains("|")) {
+                    String baseKey = inheritKey.substring(0, inheritKey.indexOf('|'));
+                    if (allSpells.get(baseKey) != null) {
+                        spell.putAll(ConfigCompiler.asMap(allSpells.get(baseKey)));
+                    }
+                }
+                if (allSpells.get(inheritKey) != null) {
+                    spell.putAll(ConfigCompiler.asMap(allSpells.get(inheritKey)));
+                }
+                spell.put("enabled", true);
+            }
+            if (isTrue(spell.get("hidden")) || isDisabled(spell)) continue;
+            if (spell.get("name") == null) {
+                spell.put("name", getMessage("spells", key, "name", key));
+            }
+            if (spell.get("description") == null) {
+                spell.put("description", getMessage("spells", key, "description", ""));
+            }
+            spell.put("extended_description", getMessage("spells", key, "extended_description", ""));
+            spell.put("usage", getMessage("spells", key, "usage", ""));
+            spells.put(key, spell);
+        }
+        return spells;
+    }
+
+    private Map<String, Object> processMobs(Map<String, Object> mobConfig) {
+        Map<String, Object> mobs = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : mobConfig.entrySet()) {
+            String key = entry.getKey();
+            Map<String, Object> mob = new LinkedHashMap<>(ConfigCompiler.asMap(entry.getValue()));
+            if (isTrue(mob.get("hidden"))) continue;
+
+            // This is kind of a hack, but we don't load in the actual defaults
+            Object inherit = mob.get("inherit");
+            if (inherit != null && inherit.toString().equals("base_npc")) continue;
+            if (inherit != null && isTrue(ConfigCompiler.asMap(mobConfig.get(inherit.toString())).get("hidden"))) continue;
+
+            mob.put("key", key);
+            if (mob.get("name") == null) {
+                mob.put("name", getMessage("mobs", key, "name", key));
+            }
+            if (mob.get("description") == null) {
+                mob.put("description", getMessage("mobs", key, "description", ""));
+            }
+            mobs.put(key, mob);
+        }
+        return mobs;
+    }
+
+    private Map<String, Object> processPaths() {
+        for (String key : enchantingConfig.keySet()) {
+            getPath(key);
+        }
+
+        // Two-passes for inheritance
+        Map<String, Object> paths = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : enchanting.entrySet()) {
+            String key = entry.getKey();
+            Map<String, Object> path = new LinkedHashMap<>(ConfigCompiler.asMap(entry.getValue()));
+            if (key.equals("default") || isTrue(path.get("hidden"))) continue;
+            path.put("name", getMessage("paths", key, "name", ""));
+            path.put("description", getMessage("paths", key, "description", ""));
+            paths.put(key, path);
+        }
+        return paths;
+    }
+
+    private Map<String, Object> getPath(String key) {
+        if (!enchanting.containsKey(key)) {
+            if (enchantingConfig.get(key) == null || !resolvingPaths.add(key)) {
+                return null;
+            }
+            Map<String, Object> config = new LinkedHashMap<>(ConfigCompiler.asMap(enchantingConfig.get(key)));
+            Object pathSpells = config.get("spells") != null ? config.get("spells") : new ArrayList<>();
+            Object requiredSpells = config.get("required_spells") != null ? config.get("required_spells") : new ArrayList<>();
+            if (config.get("inherit") != null) {
+                Map<String, Object> baseConfig = getPath(config.get("inherit").toString());
+                if (baseConfig != null) {
+                    baseConfig = new LinkedHashMap<>(baseConfig);
+                    baseConfig.remove("hidden");
+                    Object spells = config.get("spells");
+                    config = ConfigCompiler.replaceRecursive(baseConfig, config);
+                    if (isTrue(baseConfig.get("spells"))) {
+                        List<Object> merged = new ArrayList<>(asList(spells));
+                        merged.addAll(asList(baseConfig.get("spells")));
+                        config.put("spells", merged);
+                    }
+                }
+            }
+            config.put("required_spells", requiredSpells);
+            config.put("path_spells", pathSpells);
+            enchanting.put(key, config);
+        }
+        return ConfigCompiler.asMap(enchanting.get(key));
+    }
+
+    private void processWands(Map<String, Object> wandConfig, Map<String, Object> spells, Map<String, Object> wands, Map<String, Object> upgrades) {
+        double useModifier = toNumber(get(general, "worth_use_multiplier", 1));
+        double worthBrush = toNumber(get(general, "worth_brush", 0));
+        double worthEffectColor = toNumber(get(general, "worth_effect_color", 0));
+        double worthEffectParticle = toNumber(get(general, "worth_effect_particle", 0));
+        double worthEffectSound = toNumber(get(general, "worth_effect_sound", 0));
+
+        // Wand properties that add to the worth, and the general setting for how much each point is worth
+        Map<String, Double> worthFactors = new LinkedHashMap<>();
+        worthFactors.put("xp", toNumber(get(general, "worth_mana", 0)));
+        worthFactors.put("xp_max", toNumber(get(general, "worth_mana_max", 0)));
+        worthFactors.put("xp_regeneration", toNumber(get(general, "worth_mana_regeneration", 0)));
+        worthFactors.put("damage_reduction", toNumber(get(general, "worth_damage_reduction", 0)));
+        worthFactors.put("damage_reduction_physical", toNumber(get(general, "worth_damage_reduction_physical", 0)));
+        worthFactors.put("damage_reduction_falling", toNumber(get(general, "worth_damage_reduction_falling", 0)));
+        worthFactors.put("damage_reduction_fire", toNumber(get(general, "worth_damage_reduction_fire", 0)));
+        worthFactors.put("damage_reduction_projectiles", toNumber(get(general, "worth_damage_reduction_projectiles", 0)));
+        worthFactors.put("damage_reduction_explosions", toNumber(get(general, "worth_damage_reduction_explosions", 0)));
+        worthFactors.put("cost_reduction", toNumber(get(general, "worth_cost_reduction", 0)));
+        worthFactors.put("cooldown_reduction", toNumber(get(general, "worth_cooldown_reduction", 0)));
+
+        for (Map.Entry<String, Object> entry : wandConfig.entrySet()) {
+            String key = entry.getKey();
+            Map<String, Object> wand = new LinkedHashMap<>(ConfigCompiler.asMap(entry.getValue()));
+            if (isTrue(wand.get("hidden")) || isDisabled(wand)) continue;
+
+            wand.put("name", getMessage("wands", key, "name", ""));
+            String description = getMessage("wands", key, "description", "").toString();
+            Object upgradeDescription = getMessage("wands", key, "upgrade_item_description", null);
+            if (upgradeDescription != null) {
+                if (isTrue(description)) {
+                    description += "\n";
+                }
+                description += upgradeDescription;
+            }
+            wand.put("description", description);
+
+            Object wandSpells = wand.get("spells");
+            if (!(wandSpells instanceof List) && !(wandSpells instanceof Map)) {
+                wandSpells = new ArrayList<>();
+            }
+            double worth = 0;
+            for (Object wandSpell : asList(wandSpells)) {
+                Object spellWorth = ConfigCompiler.asMap(spells.get(String.valueOf(wandSpell))).get("worth");
+                if (spellWorth != null) {
+                    worth += toNumber(spellWorth);
+                }
+            }
+            Object brushes = wand.get("materials");
+            worth += (brushes instanceof Collection || brushes instanceof Map ? asList(brushes).size() : 0) * worthBrush;
+            for (Map.Entry<String, Double> factor : worthFactors.entrySet()) {
+                worth += toNumber(get(wand, factor.getKey(), 0)) * factor.getValue();
+            }
+            worth += hasText(wand.get("effect_particle")) ? worthEffectParticle : 0;
+            worth += hasText(wand.get("effect_color")) ? worthEffectColor : 0;
+            worth += hasText(wand.get("effect_sound")) ? worthEffectSound : 0;
+            if (wand.get("uses") != null && toNumber(wand.get("uses")) > 0) {
+                worth *= useModifier;
+            }
+
+            wand.put("worth", toJsonNumber(worth));
+            wand.put("spells", wandSpells);
+            if (isTrue(wand.get("upgrade"))) {
+                upgrades.put(key, wand);
+            } else {
+                wands.put(key, wand);
+            }
+        }
+    }
+
+    private Map<String, Object> processCrafting(Map<String, Object> craftingConfig, Map<String, Object> wands, Map<String, Object> upgrades) {
+        Map<String, Object> crafting = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : craftingConfig.entrySet()) {
+            Map<String, Object> recipe = new LinkedHashMap<>(ConfigCompiler.asMap(entry.getValue()));
+            Object output = recipe.get("output");
+            Object outputType = recipe.get("output_type");
+            if (outputType == null || !outputType.toString().equals("wand")) {
+                recipe.put("wand", null);
+            } else if (output != null && wands.containsKey(output.toString())) {
+                recipe.put("wand", wands.get(output.toString()));
+            } else if (output != null && upgrades.containsKey(output.toString())) {
+                recipe.put("wand", upgrades.get(output.toString()));
+            }
+            crafting.put(entry.getKey(), recipe);
+        }
+        return crafting;
+    }
+
+    private List<Object> getWorthItems() {
+        Map<Long, String> worth = new TreeMap<>(Collections.<Long>reverseOrder());
+        for (Map.Entry<String, Object> entry : ConfigCompiler.asMap(general.get("currency")).entrySet()) {
+            worth.put((long)toNumber(ConfigCompiler.asMap(entry.getValue()).get("worth")), entry.getKey());
+        }
+        List<Object> worthItems = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : worth.entrySet()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("item", entry.getValue());
+            item.put("amount", entry.getKey());
+            worthItems.add(item);
+        }
+        return worthItems;
+    }
+
+    private static Object getPathAvailability(String spellKey, Map<String, Object> paths) {
+        for (Object value : paths.values()) {
+            Map<String, Object> path = ConfigCompiler.asMap(value);
+            String type = null;
+            if (path.get("path_spells") instanceof List && contains((List<?>)path.get("path_spells"), spellKey)) {
+                type = "available";
+            } else if (path.get("required_spells") instanceof List && contains((List<?>)path.get("required_spells"), spellKey)) {
+                type = "required";
+            }
+            if (type != null) {
+                Map<String, Object> availability = new LinkedHashMap<>();
+                availability.put("type", type);
+                availability.put("name", path.get("name"));
+                return availability;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Object> summarize(Map<String, Object> items, String... fields) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : items.entrySet()) {
+            summary.put(entry.getKey(), summarizeItem(ConfigCompiler.asMap(entry.getValue()), fields));
+        }
+        return summary;
+    }
+
+    private static Map<String, Object> summarizeItem(Map<String, Object> item, String... fields) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (String field : fields) {
+            if (item.get(field) != null) {
+                summary.put(field, item.get(field));
+            }
+        }
+        return summary;
+    }
+
+    private static Map<String, Object> summarizeCrafting(Map<String, Object> crafting) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : crafting.entrySet()) {
+            Map<String, Object> recipe = ConfigCompiler.asMap(entry.getValue());
+            Map<String, Object> recipeSummary = summarizeItem(recipe, "output", "enabled");
+            recipeSummary.put("wand", recipe.get("wand") == null ? null : summarizeItem(ConfigCompiler.asMap(recipe.get("wand")), "name", "icon"));
+            summary.put(entry.getKey(), recipeSummary);
+        }
+        return summary;
+    }
+
+    private Object getMessage(String section, String key, String property, Object defaultValue) {
+        Object value = ConfigCompiler.asMap(ConfigCompiler.asMap(messages.get(section)).get(key)).get(property);
+        return value != null ? value : defaultValue;
+    }
+
+    private static Object get(Map<String, Object> config, String key, Object defaultValue) {
+        Object value = config.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static boolean isDisabled(Map<String, Object> config) {
+        return config.get("enabled") != null && !isTrue(config.get("enabled"));
+    }
+
+    /**
+     * PHP truthiness, so hidden: 0 or enabled: "" behave the same as they did in configs.inc.php.
+     */
+    private static boolean isTrue(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (Boolean)value;
+        if (value instanceof Number) return ((Number)value).doubleValue() != 0;
+        if (value instanceof Collection) return !((Collection<?>)value).isEmpty();
+        if (value instanceof Map) return !((Map<?, ?>)value).isEmpty();
+        String text = value.toString();
+        return !text.isEmpty() && !text.equals("0");
+    }
+
+    private static boolean hasText(Object value) {
+        return value != null && !value.toString().isEmpty();
+    }
+
+    private static boolean contains(List<?> list, String value) {
+        for (Object item : list) {
+            if (item != null && item.toString().equals(value)) return true;
+        }
+        return false;
+    }
+
+    private static List<Object> asList(Object value) {
+        if (value instanceof Collection) return new ArrayList<>((Collection<?>)value);
+        if (value instanceof Map) return new ArrayList<>(((Map<?, ?>)value).values());
+        return new ArrayList<>();
+    }
+
+    private static double toNumber(Object value) {
+        if (value instanceof Number) return ((Number)value).doubleValue();
+        if (value instanceof Boolean) return (Boolean)value ? 1 : 0;
+        if (value == null) return 0;
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static Object toJsonNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return (long)value;
+        }
+        return value;
+    }
+}
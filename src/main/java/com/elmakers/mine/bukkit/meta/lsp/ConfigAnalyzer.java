@@ -0,0 +1,530 @@
+package com.elmakers.mine.bukkit.meta.lsp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.elmakers.mine.bukkit.meta.Configurable;
+import com.elmakers.mine.bukkit.meta.MetaIndex;
+import com.elmakers.mine.bukkit.meta.Parameter;
+import com.elmakers.mine.bukkit.meta.ParameterType;
+import com.elmakers.mine.bukkit.meta.ResolvedParameters;
+import com.elmakers.mine.bukkit.meta.config.ConfigSchema;
+
+/**
+ * Works out what each key in a block of config means, and what is wrong with it.
+ *
+ * <p>A block is one top-level entry of a config file, such as a single spell, along with everything
+ * indented under it. Files being edited are usually not valid YAML, so this reads them a line at a
+ * time, using indentation for structure, the same way the editor hints do. Then it follows the types
+ * in the metadata down from the section's property holder, much like ConfigValidator.
+ */
+class ConfigAnalyzer {
+    static final int ERROR = 1;
+    static final int WARNING = 2;
+
+    static final int COMPLETION_CLASS = 7;
+    static final int COMPLETION_PROPERTY = 10;
+    static final int COMPLETION_VALUE = 12;
+
+    // Values that are plainly an option key, anything else may be a variable, an expression or extra data
+    private static final Pattern OPTION_VALUE = Pattern.compile("[a-z0-9_]+");
+
+    private final ConfigSchema schema;
+
+    static class Node {
+        final int line;
+        final int column;
+        final boolean listItem;
+        final List<Node> children = new ArrayList<>();
+        String key;
+        int keyEnd;
+        String value;
+        int valueStart;
+        boolean blockScalar;
+
+        Parameter parameter;
+        String valueType;
+        String classSection;
+        String classKey;
+        List<Map<String, Parameter>> childContext;
+        String holderType;
+
+        Node(int line, int column, boolean listItem) {
+            this.line = line;
+            this.column = column;
+            this.listItem = listItem;
+        }
+
+        boolean hasKeyChildren() {
+            for (Node child : children) {
+                if (!child.listItem) return true;
+            }
+            return false;
+        }
+
+        @Nullable
+        Node getChild(String key) {
+            for (Node child : children) {
+                if (!child.listItem && key.equals(child.key)) return child;
+            }
+            return null;
+        }
+    }
+
+    static class Diagnostic {
+        final int line;
+        final int start;
+        final int end;
+        final int severity;
+        final String message;
+
+        Diagnostic(int line, int start, int end, int severity, String message) {
+            this.line = line;
+            this.start = start;
+            this.end = end;
+            this.severity = severity;
+            this.message = message;
+        }
+    }
+
+    static class Completion {
+        final String label;
+        final int kind;
+        final String detail;
+        final String documentation;
+        final String insertText;
+
+        Completion(String label, int kind, String detail, String documentation, String insertText) {
+            this.label = label;
+            this.kind = kind;
+            this.detail = detail;
+            this.documentation = documentation;
+            this.insertText = insertText;
+        }
+    }
+
+    /**
+     * What was found in one block. Lines are relative to the start of the block, so this can be kept
+     * as is when edits above the block move it up or down.
+     */
+    static class Analysis {
+        final List<Node> nodes = new ArrayList<>();
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+
+        @Nullable
+        Node getKeyNode(int line) {
+            Node found = null;
+            for (Node node : nodes) {
+                if (node.line > line) break;
+                if (node.line == line && node.key != null) {
+                    found = node;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Find the node that keys starting at the given column on the given line belong to.
+         */
+        @Nullable
+        Node getParent(int line, int column) {
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                Node node = nodes.get(i);
+                if (node.line > line) continue;
+                if (node.line == line && !node.listItem) continue;
+                if (node.column < column) return node;
+            }
+            return null;
+        }
+    }
+
+    ConfigAnalyzer(@Nonnull ConfigSchema schema) {
+        this.schema = schema;
+    }
+
+    @Nonnull
+    Analysis analyze(@Nonnull List<String> lines, int start, int end, @Nullable String sectionType) {
+        Analysis analysis = new Analysis();
+        List<Node> roots = parse(lines, start, end, analysis.nodes);
+        if (sectionType == null) return analysis;
+        for (Node root : roots) {
+            if (root.listItem || root.value != null) continue;
+            BlockAnalysis block = new BlockAnalysis(analysis, collectActionClasses(root, new HashSet<>()));
+            block.analyzeMap(root, Collections.singletonList(schema.getHolder(sectionType)), sectionType, true);
+        }
+        return analysis;
+    }
+
+    private List<Node> parse(List<String> lines, int start, int end, List<Node> nodes) {
+        List<Node> roots = new ArrayList<>();
+        List<Node> stack = new ArrayList<>();
+        int scalarColumn = -1;
+        for (int lineIndex = start; lineIndex < end; lineIndex++) {
+            String text = lines.get(lineIndex);
+            int line = lineIndex - start;
+            int column = 0;
+            while (column < text.length() && text.charAt(column) == ' ') {
+                column++;
+            }
+            if (column >= text.length() || text.charAt(column) == '#' || text.startsWith("---")) continue;
+            if (scalarColumn >= 0) {
+                if (column > scalarColumn) continue;
+                scalarColumn = -1;
+            }
+
+            boolean listLine = text.charAt(column) == '-' && (column + 1 == text.length() || text.charAt(column + 1) == ' ');
+            while (!stack.isEmpty()) {
+                Node top = stack.get(stack.size() - 1);
+                // Lists may start at the same indent as the key they belong to
+                boolean listOfTop = listLine && !top.listItem && top.column == column && top.value == null && !top.hasKeyChildren();
+                if (top.column < column || listOfTop) break;
+                stack.remove(stack.size() - 1);
+            }
+            Node parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+
+            Node node;
+            if (listLine) {
+                Node item = new Node(line, column, true);
+                add(item, parent, roots, nodes, stack);
+                int contentColumn = column + 1;
+                while (contentColumn < text.length() && text.charAt(contentColumn) == ' ') {
+                    contentColumn++;
+                }
+                if (contentColumn >= text.length()) continue;
+                if (findColon(text, contentColumn) < 0) {
+                    setValue(item, text, contentColumn);
+                    continue;
+                }
+                node = new Node(line, contentColumn, false);
+                add(node, item, roots, nodes, stack);
+            } else {
+                node = new Node(line, column, false);
+                add(node, parent, roots, nodes, stack);
+            }
+
+            int colon = findColon(text, node.column);
+            if (colon < 0) {
+                node.key = stripComment(text.substring(node.column)).trim();
+                node.keyEnd = node.column + node.key.length();
+                continue;
+            }
+            node.key = unquote(text.substring(node.column, colon).trim());
+            node.keyEnd = colon;
+            int valueStart = colon + 1;
+            while (valueStart < text.length() && text.charAt(valueStart) == ' ') {
+                valueStart++;
+            }
+            if (valueStart < text.length() && text.charAt(valueStart) != '#') {
+                setValue(node, text, valueStart);
+                if (node.value.startsWith("|") || node.value.startsWith(">")) {
+                    node.blockScalar = true;
+                    scalarColumn = column;
+                }
+            }
+        }
+        return roots;
+    }
+
+    private static void add(Node node, @Nullable Node parent, List<Node> roots, List<Node> nodes, List<Node> stack) {
+        if (parent == null) {
+            roots.add(node);
+        } else {
+            parent.children.add(node);
+        }
+        nodes.add(node);
+        stack.add(node);
+    }
+
+    private static void setValue(Node node, String text, int start) {
+        node.valueStart = start;
+        node.value = stripComment(text.substring(start)).trim();
+    }
+
+    /**
+     * Find the colon ending a key, which has to be followed by a space or the end of the line.
+     */
+    private static int findColon(String text, int start) {
+        char quote = 0;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (i == start && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == '#' && i > start && text.charAt(i - 1) == ' ') {
+                return -1;
+            } else if (c == '{' || c == '[') {
+                return -1;
+            } else if (c == ':' && (i + 1 == text.length() || text.charAt(i + 1) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String stripComment(String text) {
+        if (text.startsWith("'") || text.startsWith("\"")) return text;
+        int comment = text.indexOf(" #");
+        return comment < 0 ? text : text.substring(0, comment);
+    }
+
+    private static String unquote(String text) {
+        if (text.length() >= 2 && (text.startsWith("'") || text.startsWith("\"")) && text.charAt(text.length() - 1) == text.charAt(0)) {
+            return text.substring(1, text.length() - 1);
+        }
+        return text;
+    }
+
+    /**
+     * Spell parameters take the parameters of any action the spell uses.
+     */
+    private Set<String> collectActionClasses(Node node, Set<String> classes) {
+        for (Node child : node.children) {
+            if ("class".equals(child.key) && child.value != null) {
+                String classKey = schema.getClassKey(MetaIndex.ACTIONS, unquote(child.value));
+                if (classKey != null) {
+                    classes.add(classKey);
+                }
+            } else {
+                collectActionClasses(child, classes);
+            }
+        }
+        return classes;
+    }
+
+    private class BlockAnalysis {
+        private final Analysis analysis;
+        private final Set<String> actionClasses;
+
+        BlockAnalysis(Analysis analysis, Set<String> actionClasses) {
+            this.analysis = analysis;
+            this.actionClasses = actionClasses;
+        }
+
+        void report(int line, int start, int end, int severity, String message) {
+            analysis.diagnostics.add(new Diagnostic(line, start, end, severity, message));
+        }
+
+        /**
+         * Look up the keys of a map. Unknown keys aren't reported when the context is known to be incomplete,
+         * such as an action with no class yet, but their completions still work.
+         */
+        void analyzeMap(Node parent, List<Map<String, Parameter>> context, String holderType, boolean checkKeys) {
+            parent.childContext = context;
+            parent.holderType = holderType;
+            for (Node child : parent.children) {
+                if (child.listItem || child.key == null) continue;
+                Parameter parameter = null;
+                for (Map<String, Parameter> properties : context) {
+                    parameter = properties.get(child.key);
+                    if (parameter != null) break;
+                }
+                if (parameter == null) {
+                    if (!checkKeys) continue;
+                    report(child.line, child.column, child.keyEnd, ERROR, "Unknown property " + child.key + " in " + holderType);
+                    continue;
+                }
+                child.parameter = parameter;
+                analyzeValue(child, parameter.getType());
+            }
+        }
+
+        void analyzeValue(Node node, String typeKey) {
+            node.valueType = typeKey;
+            ParameterType type = schema.getType(typeKey);
+            if (type == null) return;
+
+            if (type.getPopulateFrom() != null) {
+                List<Map<String, Parameter>> context = new ArrayList<>();
+                context.add(schema.getHolder(typeKey));
+                for (String classKey : actionClasses) {
+                    context.add(schema.getClassProperties(type.getPopulateFrom(), classKey));
+                }
+                context.add(schema.getHolder(ResolvedParameters.ACTION_BASE));
+                analyzeMap(node, context, typeKey, true);
+            } else if (type.getClassed() != null) {
+                analyzeClassed(node, typeKey, type.getClassed());
+            } else if (schema.isHolder(typeKey)) {
+                analyzeMap(node, Collections.singletonList(schema.getHolder(typeKey)), typeKey, true);
+            } else if (type.getItemType() != null) {
+                for (Node child : node.children) {
+                    if (child.listItem) {
+                        analyzeValue(child, type.getItemType());
+                    }
+                }
+            } else if (type.getValueType() != null) {
+                for (Node child : node.children) {
+                    if (child.listItem || child.key == null) continue;
+                    if (type.getKeyType() != null) {
+                        checkOption(child.key, type.getKeyType(), child.line, child.column);
+                    }
+                    analyzeValue(child, type.getValueType());
+                }
+            }
+            if (node.value != null && !node.blockScalar) {
+                checkOption(unquote(node.value), typeKey, node.line, node.valueStart);
+            }
+        }
+
+        void analyzeClassed(Node node, String typeKey, String section) {
+            List<Map<String, Parameter>> context = new ArrayList<>();
+            context.add(schema.getHolder(typeKey));
+            Node classNode = node.getChild("class");
+            boolean classFound = false;
+            if (classNode != null) {
+                classNode.classSection = section;
+                if (classNode.value != null) {
+                    String className = unquote(classNode.value);
+                    String classKey = schema.getClassKey(section, className);
+                    if (classKey == null) {
+                        report(classNode.line, classNode.valueStart, classNode.valueStart + classNode.value.length(), ERROR, "Unknown class " + className);
+                    } else {
+                        classNode.classKey = classKey;
+                        classFound = true;
+                        context.add(schema.getClassProperties(section, classKey));
+                    }
+                }
+            } else if (node.hasKeyChildren()) {
+                int end = node.listItem ? node.column + 1 : node.keyEnd;
+                report(node.line, node.column, end, ERROR, "Missing class");
+            }
+            if (section.equals(MetaIndex.ACTIONS)) {
+                // Actions also see the spell parameters
+                context.add(schema.getHolder("spell_parameters"));
+            }
+            analyzeMap(node, context, typeKey, classFound);
+        }
+
+        void checkOption(String value, String typeKey, int line, int start) {
+            if (!schema.isEnum(typeKey)) return;
+            String option = value.toLowerCase(Locale.ROOT);
+            // Drop data and counts, as in diamond_axe:5 or stone@64
+            for (char separator : new char[] {':', '@', '{'}) {
+                int index = option.indexOf(separator);
+                if (index > 0) {
+                    option = option.substring(0, index);
+                }
+            }
+            if (!OPTION_VALUE.matcher(option).matches()) return;
+            if (!schema.getOptions(typeKey).contains(option)) {
+                if (schema.isOtherVersionOption(typeKey, option)) {
+                    report(line, start, start + value.length(), WARNING, typeKey + " " + value + " is not in version " + schema.getVersion());
+                } else {
+                    report(line, start, start + value.length(), WARNING, "Unknown " + typeKey + " " + value);
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    List<Completion> complete(@Nonnull Analysis analysis, @Nonnull String text, int line, int character) {
+        List<Completion> completions = new ArrayList<>();
+        String prefix = text.substring(0, Math.min(character, text.length()));
+        int column = 0;
+        while (column < prefix.length() && prefix.charAt(column) == ' ') {
+            column++;
+        }
+        if (column < prefix.length() && prefix.charAt(column) == '-') {
+            column++;
+            while (column < prefix.length() && prefix.charAt(column) == ' ') {
+                column++;
+            }
+        }
+
+        if (findColon(prefix, column) >= 0) {
+            Node node = analysis.getKeyNode(line);
+            if (node == null) return completions;
+            if (node.classSection != null) {
+                for (Map.Entry<String, ? extends Configurable> entry : schema.getClasses(node.classSection).entrySet()) {
+                    Configurable configurable = entry.getValue();
+                    String name = configurable.getShortClass() == null ? entry.getKey() : configurable.getShortClass();
+                    completions.add(new Completion(name, COMPLETION_CLASS, configurable.getName(), join(configurable.getDescription()), name));
+                }
+            } else {
+                addOptions(node.valueType, completions);
+            }
+            return completions;
+        }
+
+        // Nothing to offer for the keys of the top level entries themselves
+        if (column == 0) return completions;
+        Node parent = analysis.getParent(line, column);
+        if (parent == null || parent.childContext == null) return completions;
+        Set<String> added = new HashSet<>();
+        for (Map<String, Parameter> properties : parent.childContext) {
+            for (Map.Entry<String, Parameter> entry : properties.entrySet()) {
+                if (!added.add(entry.getKey())) continue;
+                Parameter parameter = entry.getValue();
+                completions.add(new Completion(entry.getKey(), COMPLETION_PROPERTY, parameter.getType(), join(parameter.getDescription()), entry.getKey() + ": "));
+            }
+        }
+        return completions;
+    }
+
+    private void addOptions(@Nullable String typeKey, List<Completion> completions) {
+        ParameterType type = schema.getType(typeKey);
+        if (type == null) return;
+        if (typeKey.equals("boolean")) {
+            completions.add(new Completion("true", COMPLETION_VALUE, typeKey, null, "true"));
+            completions.add(new Completion("false", COMPLETION_VALUE, typeKey, null, "false"));
+        }
+        if (type.getOptions() == null) return;
+        boolean isEnum = schema.isEnum(typeKey);
+        for (Map.Entry<String, String> option : type.getOptions().entrySet()) {
+            // Enum options are limited to the version given to the server, if any
+            if (isEnum && !schema.getOptions(typeKey).contains(option.getKey())) continue;
+            completions.add(new Completion(option.getKey(), COMPLETION_VALUE, typeKey, option.getValue(), option.getKey()));
+        }
+    }
+
+    /**
+     * Describe the key or value at a position, as markdown, or null if there is nothing to say.
+     */
+    @Nullable
+    String hover(@Nonnull Analysis analysis, int line, int character) {
+        Node node = analysis.getKeyNode(line);
+        if (node == null) return null;
+        if (character >= node.column && character <= node.keyEnd) {
+            Parameter parameter = node.parameter;
+            if (parameter == null) return null;
+            StringBuilder hover = new StringBuilder();
+            hover.append("**").append(parameter.getName() == null ? node.key : parameter.getName()).append("** `").append(parameter.getType()).append('`');
+            String description = join(parameter.getDescription());
+            if (description != null) {
+                hover.append("\n\n").append(description);
+            }
+            return hover.toString();
+        }
+        if (node.value == null || character < node.valueStart) return null;
+        if (node.classKey != null) {
+            Configurable configurable = schema.getClass(node.classSection, node.classKey);
+            if (configurable == null) return null;
+            String description = join(configurable.getDescription());
+            return "**" + configurable.getName() + "**" + (description == null ? "" : "\n\n" + description);
+        }
+        ParameterType type = schema.getType(node.valueType);
+        if (type == null || type.getOptions() == null) return null;
+        String description = type.getOptions().get(unquote(node.value).toLowerCase(Locale.ROOT));
+        return description == null || description.isEmpty() ? null : description;
+    }
+
+    @Nullable
+    private static String join(@Nullable List<String> lines) {
+        if (lines == null) return null;
+        StringBuilder joined = new StringBuilder();
+        for (String line : lines) {
+            if (joined.length() > 0) joined.append('\n');
+            joined.append(line);
+        }
+        String text = joined.toString().trim();
+        return text.isEmpty() ? null : text;
+    }
+}
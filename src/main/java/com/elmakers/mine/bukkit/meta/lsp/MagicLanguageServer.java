@@ -0,0 +1,351 @@
+package com.elmakers.mine.bukkit.meta.lsp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.elmakers.mine.bukkit.meta.MetaData;
+import com.elmakers.mine.bukkit.meta.SortedObjectMapper;
+import com.elmakers.mine.bukkit.meta.config.ConfigSchema;
+import com.elmakers.mine.bukkit.meta.config.ConfigValidator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A language server for Magic config files, speaking LSP over stdin and stdout.
+ *
+ * <p>This offers completion of property keys, classes and option values, hover descriptions and
+ * diagnostics for unknown keys, classes and options, all from meta.json. Documents are synced
+ * incrementally and only the blocks touched by an edit are analyzed again, see {@link TextDocument}.
+ *
+ * <p>Stdout carries the protocol, so all logging goes to stderr.
+ */
+public class MagicLanguageServer {
+    private static final int TEXT_DOCUMENT_SYNC_INCREMENTAL = 2;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INTERNAL_ERROR = -32603;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConfigAnalyzer analyzer;
+    private final Map<String, TextDocument> documents = new HashMap<>();
+    private OutputStream output;
+    private boolean shutdown;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: MagicLanguageServer <meta.json> [--version=V]");
+            return;
+        }
+        String version = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--version=")) {
+                version = args[i].substring("--version=".length());
+            }
+        }
+        MagicLanguageServer server;
+        try {
+            SortedObjectMapper mapper = new SortedObjectMapper();
+            File metaFile = new File(args[0]);
+            System.err.println("Loading " + metaFile.getAbsolutePath());
+            MetaData data = mapper.convertValue(mapper.readTree(metaFile), MetaData.class);
+            data.loaded();
+            if (version != null && data.getVersionIndex(version) < 0) {
+                System.err.println("Metadata was not generated for version " + version + ", checking against all versions");
+                version = null;
+            }
+            server = new MagicLanguageServer(data, version);
+        } catch (Exception ex) {
+            System.err.println("An error ocurred loading metadata " + ex.getMessage());
+            ex.printStackTrace();
+            System.exit(1);
+            return;
+        }
+        boolean clean = server.run(System.in, System.out);
+        System.exit(clean ? 0 : 1);
+    }
+
+    public MagicLanguageServer(@Nonnull MetaData data) {
+        this(data, null);
+    }
+
+    public MagicLanguageServer(@Nonnull MetaData data, @Nullable String version) {
+        analyzer = new ConfigAnalyzer(new ConfigSchema(data, version));
+    }
+
+    /**
+     * Handle messages until the client sends exit or closes the stream.
+     * Returns true if the client asked for a shutdown first, as it should.
+     */
+    public boolean run(@Nonnull InputStream input, @Nonnull OutputStream output) {
+        this.output = output;
+        InputStream in = new BufferedInputStream(input);
+        try {
+            while (true) {
+                JsonNode message = readMessage(in);
+                if (message == null) break;
+                String method = message.path("method").asText();
+                if (method.equals("exit")) break;
+                handle(message, method);
+            }
+        } catch (IOException ex) {
+            System.err.println("Error reading from client: " + ex.getMessage());
+        }
+        return shutdown;
+    }
+
+    private void handle(JsonNode message, String method) throws IOException {
+        JsonNode id = message.get("id");
+        JsonNode params = message.path("params");
+        try {
+            switch (method) {
+                case "initialize":
+                    respond(id, getCapabilities());
+                    break;
+                case "shutdown":
+                    shutdown = true;
+                    respond(id, null);
+                    break;
+                case "textDocument/didOpen":
+                    didOpen(params.path("textDocument"));
+                    break;
+                case "textDocument/didChange":
+                    didChange(params);
+                    break;
+                case "textDocument/didClose":
+                    documents.remove(params.path("textDocument").path("uri").asText());
+                    break;
+                case "textDocument/completion":
+                    respond(id, complete(params));
+                    break;
+                case "textDocument/hover":
+                    respond(id, hover(params));
+                    break;
+                default:
+                    // Notifications we don't care about are fine to drop, requests need an answer
+                    if (id != null) {
+                        respondError(id, METHOD_NOT_FOUND, "Unsupported method " + method);
+                    }
+            }
+        } catch (RuntimeException ex) {
+            System.err.println("Error handling " + method + ": " + ex.getMessage());
+            ex.printStackTrace();
+            if (id != null) {
+                respondError(id, INTERNAL_ERROR, String.valueOf(ex.getMessage()));
+            }
+        }
+    }
+
+    private ObjectNode getCapabilities() {
+        ObjectNode result = mapper.createObjectNode();
+        ObjectNode capabilities = result.putObject("capabilities");
+        ObjectNode sync = capabilities.putObject("textDocumentSync");
+        sync.put("openClose", true);
+        sync.put("change", TEXT_DOCUMENT_SYNC_INCREMENTAL);
+        capabilities.putObject("completionProvider").putArray("triggerCharacters").add(":").add("-");
+        capabilities.put("hoverProvider", true);
+        result.putObject("serverInfo").put("name", "MagicMeta");
+        return result;
+    }
+
+    private void didOpen(JsonNode textDocument) throws IOException {
+        String uri = textDocument.path("uri").asText();
+        TextDocument document = new TextDocument(getSectionType(uri), textDocument.path("text").asText());
+        documents.put(uri, document);
+        publishDiagnostics(uri, document);
+    }
+
+    private void didChange(JsonNode params) throws IOException {
+        String uri = params.path("textDocument").path("uri").asText();
+        TextDocument document = documents.get(uri);
+        if (document == null) return;
+        for (JsonNode change : params.path("contentChanges")) {
+            String text = change.path("text").asText();
+            JsonNode range = change.get("range");
+            if (range == null) {
+                document.setText(text);
+            } else {
+                document.applyChange(range.path("start").path("line").asInt(), range.path("start").path("character").asInt(),
+                    range.path("end").path("line").asInt(), range.path("end").path("character").asInt(), text);
+            }
+        }
+        publishDiagnostics(uri, document);
+    }
+
+    @Nullable
+    private static String getSectionType(String uri) {
+        try {
+            URI parsed = URI.create(uri);
+            String path = parsed.getPath();
+            return path == null ? null : ConfigValidator.getSectionType(new File(path));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private ConfigAnalyzer.Analysis getAnalysis(TextDocument document, TextDocument.Block block) {
+        if (block.analysis == null) {
+            block.analysis = analyzer.analyze(document.getLines(), block.start, block.end, document.getSectionType());
+        }
+        return block.analysis;
+    }
+
+    private void publishDiagnostics(String uri, TextDocument document) throws IOException {
+        ObjectNode params = mapper.createObjectNode();
+        params.put("uri", uri);
+        ArrayNode diagnostics = params.putArray("diagnostics");
+        for (TextDocument.Block block : document.getBlocks()) {
+            for (ConfigAnalyzer.Diagnostic diagnostic : getAnalysis(document, block).diagnostics) {
+                ObjectNode item = diagnostics.addObject();
+                int line = block.start + diagnostic.line;
+                item.set("range", createRange(line, diagnostic.start, line, diagnostic.end));
+                item.put("severity", diagnostic.severity);
+                item.put("source", "magic");
+                item.put("message", diagnostic.message);
+            }
+        }
+        notify("textDocument/publishDiagnostics", params);
+    }
+
+    @Nullable
+    private ArrayNode complete(JsonNode params) {
+        TextDocument document = documents.get(params.path("textDocument").path("uri").asText());
+        if (document == null) return null;
+        int line = params.path("position").path("line").asInt();
+        int character = params.path("position").path("character").asInt();
+        TextDocument.Block block = document.getBlock(line);
+        if (block == null) return null;
+
+        List<ConfigAnalyzer.Completion> completions = analyzer.complete(getAnalysis(document, block), document.getLines().get(line), line - block.start, character);
+        ArrayNode items = mapper.createArrayNode();
+        for (ConfigAnalyzer.Completion completion : completions) {
+            ObjectNode item = items.addObject();
+            item.put("label", completion.label);
+            item.put("kind", completion.kind);
+            if (completion.detail != null) {
+                item.put("detail", completion.detail);
+            }
+            if (completion.documentation != null) {
+                ObjectNode documentation = item.putObject("documentation");
+                documentation.put("kind", "markdown");
+                documentation.put("value", completion.documentation);
+            }
+            item.put("insertText", completion.insertText);
+            item.put("sortText", completion.label.toLowerCase(Locale.ROOT));
+        }
+        return items;
+    }
+
+    @Nullable
+    private ObjectNode hover(JsonNode params) {
+        TextDocument document = documents.get(params.path("textDocument").path("uri").asText());
+        if (document == null) return null;
+        int line = params.path("position").path("line").asInt();
+        TextDocument.Block block = document.getBlock(line);
+        if (block == null) return null;
+        String text = analyzer.hover(getAnalysis(document, block), line - block.start, params.path("position").path("character").asInt());
+        if (text == null) return null;
+        ObjectNode result = mapper.createObjectNode();
+        ObjectNode contents = result.putObject("contents");
+        contents.put("kind", "markdown");
+        contents.put("value", text);
+        return result;
+    }
+
+    private ObjectNode createRange(int startLine, int startCharacter, int endLine, int endCharacter) {
+        ObjectNode range = mapper.createObjectNode();
+        range.putObject("start").put("line", startLine).put("character", startCharacter);
+        range.putObject("end").put("line", endLine).put("character", endCharacter);
+        return range;
+    }
+
+    private void respond(JsonNode id, @Nullable JsonNode result) throws IOException {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("jsonrpc", "2.0");
+        message.set("id", id);
+        if (result == null) {
+            message.putNull("result");
+        } else {
+            message.set("result", result);
+        }
+        writeMessage(message);
+    }
+
+    private void respondError(JsonNode id, int code, String errorMessage) throws IOException {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("jsonrpc", "2.0");
+        message.set("id", id);
+        ObjectNode error = message.putObject("error");
+        error.put("code", code);
+        error.put("message", errorMessage);
+        writeMessage(message);
+    }
+
+    private void notify(String method, JsonNode params) throws IOException {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("jsonrpc", "2.0");
+        message.put("method", method);
+        message.set("params", params);
+        writeMessage(message);
+    }
+
+    private void writeMessage(JsonNode message) throws IOException {
+        byte[] content = mapper.writeValueAsBytes(message);
+        output.write(("Content-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.write(content);
+        output.flush();
+    }
+
+    /**
+     * Read one message, a set of headers and then a JSON body of the given Content-Length.
+     * Returns null at the end of the stream.
+     */
+    @Nullable
+    private JsonNode readMessage(InputStream in) throws IOException {
+        int contentLength = -1;
+        while (true) {
+            String header = readHeaderLine(in);
+            if (header == null) return null;
+            if (header.isEmpty()) {
+                if (contentLength >= 0) break;
+                continue;
+            }
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+            }
+        }
+        byte[] content = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            int count = in.read(content, read, contentLength - read);
+            if (count < 0) return null;
+            read += count;
+        }
+        return mapper.readTree(content);
+    }
+
+    @Nullable
+    private static String readHeaderLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.read();
+            if (b < 0) return line.size() == 0 ? null : line.toString("US-ASCII");
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        return line.toString("US-ASCII");
+    }
+}
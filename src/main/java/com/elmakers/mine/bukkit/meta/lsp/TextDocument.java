@@ -0,0 +1,149 @@
+package com.elmakers.mine.bukkit.meta.lsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An open config file, kept as a list of lines and split into top-level blocks.
+ *
+ * <p>Each block keeps its analysis until an edit touches it. Blocks entirely before or after an edit
+ * keep theirs, even if the edit moved them, and only the lines around the edit are split again, so
+ * typing in one spell of a large file only re-analyzes that spell.
+ */
+class TextDocument {
+    private final String sectionType;
+    private final List<String> lines = new ArrayList<>();
+    private List<Block> blocks = new ArrayList<>();
+
+    static class Block {
+        final int start;
+        final int end;
+        ConfigAnalyzer.Analysis analysis;
+
+        Block(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    TextDocument(@Nullable String sectionType, @Nonnull String text) {
+        this.sectionType = sectionType;
+        setText(text);
+    }
+
+    @Nullable
+    String getSectionType() {
+        return sectionType;
+    }
+
+    @Nonnull
+    List<String> getLines() {
+        return lines;
+    }
+
+    @Nonnull
+    List<Block> getBlocks() {
+        return blocks;
+    }
+
+    @Nullable
+    Block getBlock(int line) {
+        int index = findBlock(line);
+        return index < 0 ? null : blocks.get(index);
+    }
+
+    private int findBlock(int line) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (line < block.start) {
+                high = mid - 1;
+            } else if (line >= block.end) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    void setText(@Nonnull String text) {
+        lines.clear();
+        lines.addAll(splitLines(text));
+        blocks = new ArrayList<>();
+        findBlocks(0, lines.size(), blocks);
+    }
+
+    /**
+     * Replace a range of the document, with positions in lines and UTF-16 characters as LSP sends them.
+     */
+    void applyChange(int startLine, int startCharacter, int endLine, int endCharacter, @Nonnull String text) {
+        startLine = Math.min(startLine, lines.size() - 1);
+        endLine = Math.min(endLine, lines.size() - 1);
+        String first = lines.get(startLine);
+        String last = lines.get(endLine);
+        String prefix = first.substring(0, Math.min(startCharacter, first.length()));
+        String suffix = last.substring(Math.min(endCharacter, last.length()));
+        List<String> replacement = splitLines(prefix + text + suffix);
+
+        List<String> changed = lines.subList(startLine, endLine + 1);
+        changed.clear();
+        changed.addAll(replacement);
+        int delta = replacement.size() - (endLine - startLine + 1);
+
+        // Blocks before the one with the first changed line stay as they are, unless that line
+        // was where the block started and it might not start a block any more.
+        int firstChanged = findBlock(startLine);
+        if (firstChanged > 0 && blocks.get(firstChanged).start == startLine) {
+            firstChanged--;
+        }
+        // Blocks starting after the last changed line only move
+        int firstAfter = findBlock(endLine) + 1;
+        List<Block> updated = new ArrayList<>(blocks.size() + Math.max(0, delta));
+        updated.addAll(blocks.subList(0, firstChanged));
+        int regionEnd = firstAfter < blocks.size() ? blocks.get(firstAfter).start + delta : lines.size();
+        findBlocks(blocks.get(firstChanged).start, regionEnd, updated);
+        for (int i = firstAfter; i < blocks.size(); i++) {
+            Block moved = blocks.get(i);
+            Block block = new Block(moved.start + delta, moved.end + delta);
+            block.analysis = moved.analysis;
+            updated.add(block);
+        }
+        blocks = updated;
+    }
+
+    private static List<String> splitLines(String text) {
+        List<String> split = new ArrayList<>(Arrays.asList(text.split("\n", -1)));
+        for (int i = 0; i < split.size(); i++) {
+            String line = split.get(i);
+            if (line.endsWith("\r")) {
+                split.set(i, line.substring(0, line.length() - 1));
+            }
+        }
+        return split;
+    }
+
+    /**
+     * Split a range of lines into blocks, each starting at an unindented line.
+     * The range has to start at the start of a block.
+     */
+    private void findBlocks(int start, int end, List<Block> found) {
+        int blockStart = start;
+        for (int line = start + 1; line <= end; line++) {
+            if (line < end && !isBlockStart(lines.get(line))) continue;
+            found.add(new Block(blockStart, line));
+            blockStart = line;
+        }
+    }
+
+    private static boolean isBlockStart(String line) {
+        if (line.isEmpty()) return false;
+        char first = line.charAt(0);
+        return first != ' ' && first != '#' && first != '-' && first != '\t';
+    }
+}
@@ -0,0 +1,592 @@
+package com.elmakers.mine.bukkit.meta.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.elmakers.mine.bukkit.meta.CompletionIndex;
+import com.elmakers.mine.bukkit.meta.MetaData;
+import com.elmakers.mine.bukkit.meta.MetaSnapshot;
+import com.elmakers.mine.bukkit.meta.SearchIndex;
+import com.elmakers.mine.bukkit.meta.SortedObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metadata over HTTP from memory, see MagicMeta's --serve option.
+ *
+ * <p>Everything that can be is rendered once when the metadata is published: meta.json, each of its
+ * top-level sections, completions.json and search.json, along with gzipped copies and ETags. Queries
+ * for single entries and searches are answered from the same published copy.
+ *
+ * <p>POST /regenerate runs generation again in the background. Requests keep being answered from the
+ * previous copy until the new one is ready, then it is swapped in. A request always sees one copy
+ * from start to finish.
+ *
+ * <p>GET /events is a stream of server-sent events, so editors can follow changes without fetching
+ * everything again. Each publish sends a "parameter", "type", "class", "category" or "section" event
+ * for every entry that changed, with its new value, then a "generation" event with the generation as
+ * its id. Clients reconnecting with Last-Event-ID get the changes they missed, or a "reload" event if
+ * that was too long ago. Each client has its own queue and writer thread, so a slow client doesn't hold
+ * up the others or publishing. A client that falls more than {@link #SUBSCRIBER_BACKLOG} events behind
+ * is disconnected, and catches up with Last-Event-ID when it reconnects.
+ */
+public class MetaServer {
+    private static final int GZIP_MIN_SIZE = 1024;
+    private static final List<String> SECTIONS = Arrays.asList("categories", "classed", "properties", "types", "indexes", "resolved");
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int EVENT_HISTORY = 16;
+    private static final long HEARTBEAT_SECONDS = 20;
+    private static final long WATCH_SECONDS = 2;
+    private static final int SUBSCRIBER_BACKLOG = 64;
+    // Tells a subscriber's writer thread to close the connection
+    private static final byte[] CLOSE = new byte[0];
+
+    private final SortedObjectMapper mapper = new SortedObjectMapper();
+    private final Callable<MetaData> generator;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService regenerateExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicReference<Published> published = new AtomicReference<>();
+    private final AtomicBoolean regenerating = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Change events of recent generations, for clients catching up after reconnecting
+    private final Map<Integer, byte[]> eventHistory = new LinkedHashMap<>();
+    private final Object eventLock = new Object();
+
+    private static class Resource {
+        private final byte[] content;
+        private final byte[] gzipped;
+        private final String etag;
+
+        Resource(byte[] content, boolean compress) throws IOException {
+            this.content = content;
+            this.gzipped = compress && content.length >= GZIP_MIN_SIZE ? gzip(content) : null;
+            this.etag = '"' + hash(content) + '"';
+        }
+    }
+
+    /**
+     * One /events client. Events are queued by whoever publishes them and written by the subscriber's
+     * own thread, so only that thread ever waits on the client.
+     */
+    private class Subscriber implements Runnable {
+        private final HttpExchange exchange;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(SUBSCRIBER_BACKLOG);
+
+        Subscriber(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        /**
+         * Queue events to be sent, without waiting. Returns false if the client is too far behind,
+         * in which case it should be closed.
+         */
+        boolean send(byte[] events) {
+            return queue.offer(events);
+        }
+
+        void close() {
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+
+        @Override
+        public void run() {
+            try (OutputStream out = exchange.getResponseBody()) {
+                byte[] events;
+                while ((events = queue.take()) != CLOSE) {
+                    out.write(events);
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscribers.remove(this);
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * One generation of the metadata, rendered and ready to serve. This is never changed once published.
+     * Queries are answered from its snapshot, the tree is kept to work out what changed between generations.
+     */
+    private static class Published {
+        private final int generation;
+        private final long publishedAt;
+        private final Map<String, Resource> resources = new HashMap<>();
+        private final JsonNode root;
+        private final MetaSnapshot snapshot;
+        private final SearchIndex searchIndex;
+
+        Published(int generation, MetaData data, SortedObjectMapper mapper) throws IOException {
+            this.generation = generation;
+            this.publishedAt = System.currentTimeMillis();
+            byte[] meta = mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(data);
+            resources.put("/meta.json", new Resource(meta, true));
+            root = mapper.readTree(meta);
+            snapshot = new MetaSnapshot(data);
+            for (String section : SECTIONS) {
+                if (root.has(section)) {
+                    resources.put("/meta/" + section, new Resource(mapper.writeValueAsBytes(root.get(section)), true));
+                }
+            }
+            resources.put("/" + CompletionIndex.FILE_NAME, new Resource(mapper.writeValueAsBytes(new CompletionIndex(data)), true));
+            searchIndex = new SearchIndex(data);
+            resources.put("/" + SearchIndex.FILE_NAME, new Resource(mapper.writeValueAsBytes(searchIndex), true));
+        }
+    }
+
+    /**
+     * The generator is called on a background thread to regenerate, and needs to return
+     * new MetaData rather than changing any that was published.
+     */
+    public MetaServer(int port, int threads, @Nonnull Callable<MetaData> generator) throws IOException {
+        this.generator = generator;
+        // Only listen locally, anything else should go through the web server
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        requestExecutor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(requestExecutor);
+    }
+
+    public void start() {
+        server.start();
+        // Comments keep idle connections open through proxies, and find clients that went away
+        byte[] heartbeat = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+        scheduler.scheduleAtFixedRate(() -> {
+            synchronized (eventLock) {
+                broadcast(heartbeat);
+            }
+        }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdown();
+        synchronized (eventLock) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.close();
+            }
+            subscribers.clear();
+        }
+        server.stop(1);
+        requestExecutor.shutdown();
+        regenerateExecutor.shutdown();
+        try {
+            regenerateExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Render and start serving new metadata. Requests already being answered finish with the previous copy.
+     */
+    public void publish(@Nonnull MetaData data) throws IOException {
+        synchronized (eventLock) {
+            Published previous = published.get();
+            int generation = previous == null ? 1 : previous.generation + 1;
+            Published next = new Published(generation, data, mapper);
+            byte[] events = renderChanges(previous, next);
+            published.set(next);
+            eventHistory.put(generation, events);
+            if (eventHistory.size() > EVENT_HISTORY) {
+                Iterator<Integer> oldest = eventHistory.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            broadcast(events);
+            System.out.println("Serving metadata generation " + generation);
+        }
+    }
+
+    /**
+     * Start regenerating in the background, unless it already is.
+     * Returns false if a regeneration was already running.
+     */
+    public boolean regenerate() {
+        return refresh("Regenerating metadata", generator);
+    }
+
+    /**
+     * Check a file every few seconds, and reload using the given loader whenever it is not empty.
+     * This is for the description log, the loader folds the edits into meta.json and empties it.
+     */
+    public void watch(@Nonnull File file, @Nonnull Callable<MetaData> loader) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (file.length() > 0) {
+                refresh("Applying " + file.getName(), loader);
+            }
+        }, WATCH_SECONDS, WATCH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private boolean refresh(String message, Callable<MetaData> loader) {
+        if (!regenerating.compareAndSet(false, true)) return false;
+        regenerateExecutor.submit(() -> {
+            try {
+                System.out.println(message);
+                publish(loader.call());
+            } catch (Exception ex) {
+                System.out.println("An error ocurred regenerating metadata, still serving the previous copy: " + ex.getMessage());
+                ex.printStackTrace();
+            } finally {
+                regenerating.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        boolean keepOpen = false;
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/regenerate")) {
+                if (!method.equals("POST")) {
+                    sendError(exchange, 405, "Use POST to regenerate");
+                    return;
+                }
+                boolean started = regenerate();
+                send(exchange, started ? 202 : 409, getStatus(published.get()), false);
+                return;
+            }
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                sendError(exchange, 405, "Unsupported method " + method);
+                return;
+            }
+
+            // Use the same copy for the whole request, even if a new one is published meanwhile
+            Published current = published.get();
+            if (current == null) {
+                sendError(exchange, 503, "Metadata has not been generated yet");
+                return;
+            }
+            if (path.equals("/status")) {
+                send(exchange, 200, getStatus(current), false);
+                return;
+            }
+            if (path.equals("/events")) {
+                subscribe(exchange);
+                keepOpen = true;
+                return;
+            }
+            Resource resource = current.resources.get(path);
+            if (resource == null && path.startsWith("/query/")) {
+                resource = query(current, path.substring("/query/".length()), parseQuery(exchange.getRequestURI().getRawQuery()));
+            }
+            if (resource == null) {
+                sendError(exchange, 404, "Not found: " + path);
+                return;
+            }
+            sendResource(exchange, resource);
+        } catch (NumberFormatException ex) {
+            sendError(exchange, 400, "Invalid number: " + ex.getMessage());
+        } catch (Exception ex) {
+            System.out.println("Error handling " + exchange.getRequestURI() + ": " + ex.getMessage());
+            ex.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            if (!keepOpen) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void subscribe(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "text/event-stream; charset=utf-8");
+        headers.set("Cache-Control", "no-cache");
+        // Keep proxies such as nginx from holding on to events
+        headers.set("X-Accel-Buffering", "no");
+        exchange.sendResponseHeaders(200, 0);
+
+        String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventId == null) {
+            lastEventId = parseQuery(exchange.getRequestURI().getRawQuery()).get("since");
+        }
+        int since = -1;
+        try {
+            since = lastEventId == null ? -1 : Integer.parseInt(lastEventId.trim());
+        } catch (NumberFormatException ignored) {
+        }
+
+        Subscriber subscriber = new Subscriber(exchange);
+        // Holding the lock means no publish can come between catching up and subscribing.
+        // Nothing is written here, the subscriber's thread sends what was queued.
+        synchronized (eventLock) {
+            int generation = published.get().generation;
+            ByteArrayOutputStream catchUp = new ByteArrayOutputStream();
+            if (since < 0 || since > generation) {
+                catchUp.write(renderEvent(generation, "generation").getBytes(StandardCharsets.UTF_8));
+            } else if (since < generation && eventHistory.containsKey(since + 1)) {
+                for (int missed = since + 1; missed <= generation; missed++) {
+                    catchUp.write(eventHistory.get(missed));
+                }
+            } else if (since < generation) {
+                catchUp.write(renderEvent(generation, "reload").getBytes(StandardCharsets.UTF_8));
+            }
+            subscriber.send(catchUp.toByteArray());
+            subscribers.add(subscriber);
+        }
+        Thread writer = new Thread(subscriber, "MetaServer events " + exchange.getRemoteAddress());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue events for every subscriber, closing any that have fallen too far behind.
+     * Call with eventLock held, so every subscriber gets events in the same order.
+     */
+    private void broadcast(byte[] events) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.send(events)) {
+                System.out.println("Disconnecting events client " + subscriber.exchange.getRemoteAddress() + ", it is too far behind");
+                subscribers.remove(subscriber);
+                subscriber.close();
+            }
+        }
+    }
+
+    private byte[] renderChanges(@Nullable Published previous, Published next) throws IOException {
+        StringBuilder events = new StringBuilder();
+        if (previous != null) {
+            JsonNode before = previous.root;
+            JsonNode after = next.root;
+            addChanges(events, "category", null, before.path("categories"), after.path("categories"));
+            addChanges(events, "parameter", null, before.path("properties"), after.path("properties"));
+            addChanges(events, "type", null, before.path("types"), after.path("types"));
+            Set<String> classSections = new TreeSet<>();
+            before.path("classed").fieldNames().forEachRemaining(classSections::add);
+            after.path("classed").fieldNames().forEachRemaining(classSections::add);
+            for (String section : classSections) {
+                addChanges(events, "class", section, before.path("classed").path(section), after.path("classed").path(section));
+            }
+            // Indexes and resolved parameters are derived from the rest, send them whole if they changed
+            for (String section : Arrays.asList("indexes", "resolved")) {
+                if (!before.path(section).equals(after.path(section))) {
+                    addChange(events, "section", null, section, after.get(section));
+                }
+            }
+        }
+        events.append(renderEvent(next.generation, "generation"));
+        return events.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void addChanges(StringBuilder events, String kind, @Nullable String section, JsonNode before, JsonNode after) throws IOException {
+        Iterator<Map.Entry<String, JsonNode>> entries = after.fields();
+        while (entries.hasNext()) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                addChange(events, kind, section, entry.getKey(), entry.getValue());
+            }
+        }
+        Iterator<String> previousKeys = before.fieldNames();
+        while (previousKeys.hasNext()) {
+            String key = previousKeys.next();
+            if (!after.has(key)) {
+                addChange(events, kind, section, key, null);
+            }
+        }
+    }
+
+    private void addChange(StringBuilder events, String kind, @Nullable String section, String key, @Nullable JsonNode value) throws IOException {
+        ObjectNode change = mapper.createObjectNode();
+        if (section != null) {
+            change.put("section", section);
+        }
+        change.put("key", key);
+        if (value == null) {
+            change.put("removed", true);
+        } else {
+            change.set("value", value);
+        }
+        events.append("event: ").append(kind).append("\ndata: ").append(mapper.writeValueAsString(change)).append("\n\n");
+    }
+
+    private static String renderEvent(int generation, String kind) {
+        return "id: " + generation + "\nevent: " + kind + "\ndata: {\"generation\":" + generation + "}\n\n";
+    }
+
+    @Nullable
+    private Resource query(Published current, String endpoint, Map<String, String> parameters) throws IOException {
+        MetaSnapshot snapshot = current.snapshot;
+        String key = parameters.get("key");
+        ObjectNode result = null;
+        switch (endpoint) {
+            case "parameter":
+                if (key != null && snapshot.hasParameter(key)) {
+                    result = mapper.createObjectNode();
+                    result.put("key", key);
+                    result.put("name", snapshot.getName(key));
+                    result.put("field", snapshot.getField(key));
+                    result.put("type", snapshot.getType(key));
+                    result.put("category", snapshot.getCategory(key));
+                    result.put("alias", snapshot.getAlias(key));
+                    result.put("importance", snapshot.getImportance(key));
+                    addList(result.putArray("description"), snapshot.getDescription(key));
+                }
+                break;
+            case "type":
+                if (key != null && snapshot.hasType(key)) {
+                    result = mapper.createObjectNode();
+                    result.put("key", key);
+                    result.put("name", snapshot.getTypeName(key));
+                    addList(result.putArray("description"), snapshot.getTypeDescription(key));
+                    addList(result.putArray("options"), snapshot.getOptions(key));
+                    ObjectNode defaults = result.putObject("parameters");
+                    for (String parameterKey : snapshot.getTypeParameters(key)) {
+                        defaults.put(parameterKey, snapshot.getTypeDefault(key, parameterKey));
+                    }
+                }
+                break;
+            case "class":
+                String section = parameters.get("section");
+                if (key != null && section != null && snapshot.hasClass(section, key)) {
+                    result = mapper.createObjectNode();
+                    result.put("key", key);
+                    result.put("section", section);
+                    result.put("name", snapshot.getClassName(section, key));
+                    result.put("category", snapshot.getClassCategory(section, key));
+                    addList(result.putArray("description"), snapshot.getClassDescription(section, key));
+                    ObjectNode defaults = result.putObject("parameters");
+                    for (String parameterKey : snapshot.getClassParameters(section, key)) {
+                        defaults.put(parameterKey, snapshot.getClassDefault(section, key, parameterKey));
+                    }
+                }
+                break;
+            case "search":
+                String limit = parameters.get("limit");
+                int maxResults = limit == null ? DEFAULT_SEARCH_LIMIT : Integer.parseInt(limit);
+                return new Resource(mapper.writeValueAsBytes(current.searchIndex.search(parameters.get("q"), maxResults)), true);
+        }
+        return result == null ? null : new Resource(mapper.writeValueAsBytes(result), true);
+    }
+
+    private static void addList(ArrayNode array, List<String> values) {
+        for (String value : values) {
+            array.add(value);
+        }
+    }
+
+    private byte[] getStatus(@Nullable Published current) throws IOException {
+        ObjectNode status = mapper.createObjectNode();
+        status.put("generation", current == null ? 0 : current.generation);
+        if (current != null) {
+            status.put("published", current.publishedAt);
+        }
+        status.put("regenerating", regenerating.get());
+        return mapper.writeValueAsBytes(status);
+    }
+
+    private static Map<String, String> parseQuery(@Nullable String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) return parameters;
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                parameters.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private void sendResource(HttpExchange exchange, Resource resource) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", resource.etag);
+        // Clients may keep a copy, but need to check it is still current
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Vary", "Accept-Encoding");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || Arrays.asList(ifNoneMatch.split("\\s*,\\s*")).contains(resource.etag))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = resource.gzipped != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+        send(exchange, 200, gzip ? resource.gzipped : resource.content, false);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("error", message);
+        send(exchange, status, mapper.writeValueAsBytes(error), true);
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body, boolean error) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        if (error) {
+            headers.set("Cache-Control", "no-store");
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
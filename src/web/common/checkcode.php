@@ -7,6 +7,7 @@ if (!isset($_REQUEST['code'])) {
     die(json_encode(array('success' => false, 'message' => 'Missing code parameter')));
 }
 require_once('../config.inc.php');
+require_once('user.inc.php');
 
 $userId = $_REQUEST['user'];
 $userCode = $_REQUEST['code'];
@@ -16,8 +17,7 @@ if (!file_exists($registeredFile)) {
     die(json_encode(array('success' => false, 'message' => 'Missing registration file')));
 }
 
-$registered = yaml_parse_file($registeredFile);
-$registered = isset($registered[$userId]) ? $registered[$userId] : null;
+$registered = getRegisteredUser($userId);
 if (is_null($registered) || $registered['code'] !== $userCode) {
     die(json_encode(array('success' => false, 'message' => 'Incorrect code')));
 }
@@ -14,10 +14,23 @@ function Hints(fileType) {
     this.metadata = null;
     this.navigationPanel = null;
     this.fileType = fileType;
+    this.completionIndex = null;
+    this.indexedValues = null;
+    this.indexedMetadata = null;
+
+    // Parsed lines, kept until the document changes at or above them
+    this.lineContexts = [];
+    // For each line, the closest line above it that is not empty or a comment, or -1
+    this.previousLines = [];
+    // For each line, the line getHierarchy would find as its parent, or -1
+    this.parentLines = [];
 
     this.register = function(editor) {
         let cm = editor.getCodeMirror();
         CodeMirror.registerHelper('hint', 'yaml', this.generateHints.bind(this));
+        // This needs to happen before anything else looks at the new text, and "change" events are delayed
+        // until the end of the operation, so commands that edit and then autocomplete would see stale lines
+        cm.on('beforeChange', this.onBeforeChange.bind(this));
         CodeMirror.commands.magicNewlineAndIndent = this.newlineAndIndent.bind(this);
         CodeMirror.keyMap['basic']['Enter'] = 'magicNewlineAndIndent';
         cm.on('change', function onChange(editor, input) {
@@ -31,6 +44,60 @@ function Hints(fileType) {
             });
         });
         cm.on('cursorActivity', this.onCursorActivity.bind(this));
+        this.loadCompletionIndex();
+    };
+
+    // Prefix and trigram indexes generated by MagicMeta alongside meta.json
+    this.loadCompletionIndex = function() {
+        let hints = this;
+        $.ajax( {
+            type: "GET",
+            url: "common/completions.json",
+            dataType: 'json'
+        }).done(function(completionIndex) {
+            hints.completionIndex = completionIndex;
+            hints.indexedMetadata = null;
+        });
+    };
+
+    // Maps option and property maps to their completion index, if the index has exactly the same keys.
+    // Sessions can add custom options to the metadata, those types just don't get an index.
+    this.prepareCompletions = function() {
+        if (this.completionIndex == null || this.indexedMetadata === this.metadata) return;
+        this.indexedMetadata = this.metadata;
+        this.indexedValues = new Map();
+        let types = this.metadata.types;
+        for (let typeKey in this.completionIndex.types) {
+            if (this.completionIndex.types.hasOwnProperty(typeKey) && types.hasOwnProperty(typeKey)) {
+                this.addCompletions(types[typeKey].options, this.completionIndex.types[typeKey]);
+            }
+        }
+        for (let typeKey in this.completionIndex.properties) {
+            if (this.completionIndex.properties.hasOwnProperty(typeKey) && types.hasOwnProperty(typeKey)) {
+                this.addCompletions(this.getProperties(types[typeKey]), this.completionIndex.properties[typeKey]);
+            }
+        }
+    };
+
+    this.addCompletions = function(values, completions) {
+        if (values == null) return;
+        let keys = completions.keys;
+        if (Object.keys(values).length != keys.length) return;
+        for (let i = 0; i < keys.length; i++) {
+            if (!values.hasOwnProperty(keys[i])) return;
+        }
+        this.indexedValues.set(values, completions);
+    };
+
+    this.onBeforeChange = function(cm, change) {
+        let firstLine = Math.min(change.from.line, change.to.line);
+        if (this.lineContexts.length > firstLine) {
+            this.lineContexts.length = firstLine;
+        }
+        if (this.previousLines.length > firstLine) {
+            this.previousLines.length = firstLine;
+            this.parentLines.length = firstLine;
+        }
     };
 
     this.initialize = function(cm) {
@@ -41,6 +108,7 @@ function Hints(fileType) {
         this.metadata = this.cm.metadata;
         this.cursor = this.cm.getCursor();
         if (this.metadata == null) return false;
+        this.prepareCompletions();
         this.hierarchy = this.getHierarchy();
         this.parent = this.hierarchy.length > 1 ? this.hierarchy[this.hierarchy.length - 2] : null;
         return true;
@@ -367,15 +435,9 @@ function Hints(fileType) {
 
             // Filter out duplicate list and map suggestions
             let siblings = this.getSiblings(this.context);
-            values = filterMap(values, siblings);
-            if (inherited != null) {
-                inherited = filterMap(inherited, siblings);
-            }
-            if (additional != null) {
-                additional = filterMap(additional, siblings);
-            }
+
             // Filter and sort list, adding suggestions based on class type
-            suggestions = this.getSortedKeys(values, inherited, additional, null, currentToken.word, this.metadata, classType, additionalClassType, null);
+            suggestions = this.getSortedKeys(values, inherited, additional, null, currentToken.word, this.metadata, classType, additionalClassType, null, siblings);
         }
 
         // If we didn't find any suggestions, just return
@@ -445,18 +507,11 @@ function Hints(fileType) {
         if (classedSection.hasOwnProperty(key)) {
             let classed = this.metadata.classed[classType][key];
 
-            // Need to map properties here
+            // Need to map properties here, the class lists what it adds and
+            // the resolved parameters say which base class it inherits the rest from
             if (!classed.hasOwnProperty('properties')) {
-                classed.properties = {};
-                let properties = this.metadata.properties;
-                for (let key in classed.parameters) {
-                    if (classed.parameters.hasOwnProperty(key) && properties.hasOwnProperty(key)) {
-                        let property = properties[key];
-                        if (!property.hasOwnProperty('alias') && property.importance >= 0) {
-                            classed.properties[property['field']] = key;
-                        }
-                    }
-                }
+                classed.properties = this.getProperties(classed);
+                classed.inherited = this.getResolvedBase(this.getClassBase(classType, key, classed));
             }
             return classed;
         }
@@ -529,10 +584,15 @@ function Hints(fileType) {
             if (!a.inherited && b.inherited) {
                 return -1;
             }
-            if (a.importance == b.importance) {
-                return a.text.localeCompare(b.text);
+            if (a.importance != b.importance) {
+                return b.importance - a.importance;
+            }
+            // Hints from the same completion index come with a precomputed rank, in the same
+            // plain string order as comparing their text here
+            if (a.completions != null && a.completions === b.completions) {
+                return a.rank - b.rank;
             }
-            return b.importance - a.importance;
+            return a.text < b.text ? -1 : (a.text > b.text ? 1 : 0);
         }
         properties.sort(sortProperties);
     };
@@ -553,9 +613,14 @@ function Hints(fileType) {
     };
 
     // Returns true if the default value was found
-    this.matchProperties = function(values, defaultValue, currentInput, classType, valueType, inherited, additional, startsWith, contains) {
+    this.matchProperties = function(values, defaultValue, currentInput, classType, valueType, inherited, additional, startsWith, contains, excluded) {
+        let completions = this.indexedValues == null ? null : this.indexedValues.get(values);
+        if (completions) {
+            return this.matchCompletions(completions, values, defaultValue, currentInput, classType, valueType, inherited, additional, startsWith, contains, excluded);
+        }
         let foundDefault = false;
         for (let kw in values) {
+            if (excluded != null && excluded.hasOwnProperty(kw)) continue;
             let isDefault = defaultValue == kw;
             let description = values[kw];
             if (isDefault) foundDefault = true;
@@ -564,16 +629,109 @@ function Hints(fileType) {
         return foundDefault;
     };
 
-    this.getSortedKeys = function(values, inheritedValues, additionalValues, defaultValue, currentInput, metadata, classType, additionalClassType, valueType) {
+    // Same as matchProperties, but looks matches up in a completion index instead of checking every value
+    this.matchCompletions = function(completions, values, defaultValue, currentInput, classType, valueType, inherited, additional, startsWith, contains, excluded) {
+        let input = currentInput.toLowerCase();
+        let keys = completions.keys;
+        let texts = completions.texts;
+        let range = this.getPrefixRange(completions, input);
+        let addMatch = function(index, matches) {
+            let key = keys[index];
+            if (excluded != null && excluded.hasOwnProperty(key)) return;
+            let hint = this.convertHint(key, values[key], this.metadata, classType, valueType, inherited, additional, defaultValue == key);
+            hint.completions = completions;
+            hint.rank = completions.ranks[index];
+            matches.push(hint);
+        }.bind(this);
+
+        for (let i = range[0]; i < range[1]; i++) {
+            addMatch(i, startsWith);
+        }
+        if (input.length >= 3) {
+            let candidates = this.getTrigramCandidates(completions, input);
+            for (let i = 0; i < candidates.length; i++) {
+                let index = candidates[i];
+                if (index >= range[0] && index < range[1]) continue;
+                if (texts[index].indexOf(input) !== -1) {
+                    addMatch(index, contains);
+                }
+            }
+        } else if (input.length > 0) {
+            // Too short for trigrams, but the texts are already lowercased and trimmed
+            for (let i = 0; i < texts.length; i++) {
+                if (i >= range[0] && i < range[1]) continue;
+                if (texts[i].indexOf(input) !== -1) {
+                    addMatch(i, contains);
+                }
+            }
+        }
+        return defaultValue != null && values.hasOwnProperty(defaultValue);
+    };
+
+    // Returns the [start, end) range of texts starting with input, which are sorted
+    this.getPrefixRange = function(completions, input) {
+        let texts = completions.texts;
+        if (input.length == 0) return [0, texts.length];
+        let first = input.charAt(0);
+        if (!completions.prefixes.hasOwnProperty(first)) return [0, 0];
+        let bounds = completions.prefixes[first];
+        let lowerBound = function(target) {
+            let low = bounds[0];
+            let high = bounds[1];
+            while (low < high) {
+                let middle = (low + high) >>> 1;
+                if (texts[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        };
+        return [lowerBound(input), lowerBound(input + '\uffff')];
+    };
+
+    // Intersects the postings of every trigram in input, rarest first
+    this.getTrigramCandidates = function(completions, input) {
+        let postings = [];
+        for (let i = 0; i + 3 <= input.length; i++) {
+            let gram = input.substring(i, i + 3);
+            if (!completions.trigrams.hasOwnProperty(gram)) return [];
+            postings.push(completions.trigrams[gram]);
+        }
+        postings.sort(function(a, b) { return a.length - b.length; });
+        let candidates = postings[0];
+        for (let i = 1; i < postings.length && candidates.length > 0; i++) {
+            let next = postings[i];
+            let intersection = [];
+            let j = 0;
+            let k = 0;
+            while (j < candidates.length && k < next.length) {
+                if (candidates[j] == next[k]) {
+                    intersection.push(candidates[j]);
+                    j++;
+                    k++;
+                } else if (candidates[j] < next[k]) {
+                    j++;
+                } else {
+                    k++;
+                }
+            }
+            candidates = intersection;
+        }
+        return candidates;
+    };
+
+    this.getSortedKeys = function(values, inheritedValues, additionalValues, defaultValue, currentInput, metadata, classType, additionalClassType, valueType, excluded) {
         let startsWith = [];
         let contains = [];
         additionalClassType = additionalClassType == null ? classType : additionalClassType;
-        this.matchProperties(values, defaultValue, currentInput, classType, valueType, false, false, startsWith, contains);
+        this.matchProperties(values, defaultValue, currentInput, classType, valueType, false, false, startsWith, contains, excluded);
         if (inheritedValues != null) {
-            this.matchProperties(inheritedValues, defaultValue, currentInput, classType, valueType, true, false, startsWith, contains);
+            this.matchProperties(inheritedValues, defaultValue, currentInput, classType, valueType, true, false, startsWith, contains, excluded);
         }
         if (additionalValues != null) {
-            this.matchProperties(additionalValues, defaultValue, currentInput, additionalClassType, valueType, false, true, startsWith, contains);
+            this.matchProperties(additionalValues, defaultValue, currentInput, additionalClassType, valueType, false, true, startsWith, contains, excluded);
         }
         this.sortProperties(startsWith);
         this.sortProperties(contains);
@@ -729,6 +887,29 @@ function Hints(fileType) {
         return propertyType.mapped_properties;
     };
 
+    this.getClassBase = function(classType, key, classed) {
+        let resolved = this.metadata.hasOwnProperty('resolved') ? this.metadata.resolved[classType] : null;
+        if (resolved && resolved.hasOwnProperty(key)) {
+            return resolved[key].base;
+        }
+        // Classes added by the change feed aren't resolved until the metadata is reloaded
+        if (classType == 'effectlib_effects') {
+            return 'effectlib_properties';
+        }
+        return classed.category == 'compound' ? 'compound_action_parameters' : 'action_parameters';
+    };
+
+    this.getResolvedBase = function(baseKey) {
+        let resolved = this.metadata.resolved;
+        if (!resolved.hasOwnProperty('base_types')) {
+            resolved.base_types = {};
+        }
+        if (!resolved.base_types.hasOwnProperty(baseKey)) {
+            resolved.base_types[baseKey] = {parameters: resolved.bases.hasOwnProperty(baseKey) ? resolved.bases[baseKey] : {}};
+        }
+        return this.getProperties(resolved.base_types[baseKey]);
+    };
+
     this.getBasePropertyType = function() {
         let contextType = this.fileType;
         // Remove the "s", kind of hacky
@@ -831,25 +1012,72 @@ function Hints(fileType) {
         return context;
     };
 
-    this.getPreviousLine = function(lineNumber) {
-        let previousLineNumber = lineNumber;
-        while (previousLineNumber > 0) {
-            let testLine = this.cm.getLine(--previousLineNumber);
-            let context = this.getContext(testLine, previousLineNumber);
-            if (!context.isEmpty && !context.isComment) {
-                return context;
+    // Returns the parsed line from the cache, this is shared so don't modify it
+    this.getLineContext = function(lineNumber) {
+        let context = this.lineContexts[lineNumber];
+        if (context == null) {
+            context = this.getContext(this.cm.getLine(lineNumber), lineNumber);
+            this.lineContexts[lineNumber] = context;
+        }
+        return context;
+    };
+
+    // Fills in previousLines and parentLines up to and including the given line.
+    // These only depend on the lines above, so edits only invalidate them from the edited line down.
+    this.updateLineLinks = function(lineNumber) {
+        for (let i = this.previousLines.length; i <= lineNumber; i++) {
+            let previous = -1;
+            if (i > 0) {
+                let context = this.getLineContext(i - 1);
+                previous = !context.isEmpty && !context.isComment ? i - 1 : this.previousLines[i - 1];
             }
+            this.previousLines[i] = previous;
+            let context = this.getLineContext(i);
+            this.parentLines[i] = this.findParentLine(context, context.isListItem, context.indent, false);
         }
-        return null;
+    };
+
+    // Walks up from current to the line getHierarchy treats as its parent.
+    // Lines between a sibling and that sibling's own parent can't be a match either, so whole blocks are
+    // skipped using parentLines, which makes this proportional to the nesting depth rather than the line count.
+    this.findParentLine = function(current, isInList, listIndent, lookForInlineList) {
+        let previousNumber = this.previousLines[current.lineNumber];
+        while (previousNumber >= 0) {
+            let previous = this.getLineContext(previousNumber);
+            if (previous.listIndent < current.listIndent) {
+                return previousNumber;
+            }
+            if (previous.indent == listIndent && isInList && !previous.isListItem) {
+                return previousNumber;
+            }
+            if (!isInList && previous.isListItem && lookForInlineList) {
+                isInList = true;
+                listIndent = previous.indent;
+            }
+            let canSkip = previous.listIndent >= current.listIndent;
+            if (isInList) {
+                canSkip = canSkip && previous.isListItem && previous.indent == listIndent;
+            } else {
+                canSkip = canSkip && !lookForInlineList;
+            }
+            previousNumber = canSkip ? this.parentLines[previousNumber] : this.previousLines[previousNumber];
+        }
+        return -1;
+    };
+
+    this.getPreviousLine = function(lineNumber) {
+        if (lineNumber <= 0) return null;
+        this.updateLineLinks(lineNumber);
+        let previousLineNumber = this.previousLines[lineNumber];
+        return previousLineNumber < 0 ? null : $.extend({}, this.getLineContext(previousLineNumber));
     };
 
     this.getNextLine = function(lineNumber) {
         let nextLineNumber = lineNumber;
         while (nextLineNumber < this.cm.lineCount() - 1) {
-            let testLine = this.cm.getLine(++nextLineNumber);
-            let context = this.getContext(testLine, nextLineNumber);
+            let context = this.getLineContext(++nextLineNumber);
             if (!context.isEmpty && !context.isComment) {
-                return context;
+                return $.extend({}, context);
             }
         }
         return null;
@@ -863,34 +1091,14 @@ function Hints(fileType) {
     this.getHierarchy = function() {
         this.context = this.getCurrentContext();
         let hierarchy = [this.context];
-        let currentLine = this.context;
-        let previousLine = this.getPreviousLine(this.context.lineNumber);
-        let isInList = currentLine.isListItem;
-        let listIndent = currentLine.indent;
-        let lookForInlineList = true;
-        while (previousLine != null) {
-            // Check indent
-            let isNewParent = false;
-            if (previousLine.listIndent < currentLine.listIndent) {
-                isNewParent = true;
-            } else if (previousLine.indent == listIndent && isInList && !previousLine.isListItem) {
-                isNewParent = true;
-            }
-
-            if (isNewParent) {
-                hierarchy.unshift(previousLine);
-                currentLine = previousLine;
-                isInList = currentLine.isListItem;
-                listIndent = currentLine.indent;
-                lookForInlineList = false;
-            }
-            if (!isInList && previousLine.isListItem && lookForInlineList) {
-                isInList = true;
-                listIndent = previousLine.indent;
-            }
 
-            // Go to previous step
-            previousLine = this.getPreviousLine(previousLine.lineNumber);
+        // The current line's indent depends on the cursor, so only its parent is looked up here,
+        // everything above that comes from the cached parent of each line
+        this.updateLineLinks(this.context.lineNumber);
+        let parentLine = this.findParentLine(this.context, this.context.isListItem, this.context.indent, true);
+        while (parentLine >= 0) {
+            hierarchy.unshift($.extend({}, this.getLineContext(parentLine)));
+            parentLine = this.parentLines[parentLine];
         }
 
         // Walk down the tree to figure out types of everything in the path
@@ -975,12 +1183,8 @@ function Hints(fileType) {
                 context.classed_class = classType;
                 classType = this.getMappedClass(type.classed, classType);
                 if (classType != null) {
-                    context.inherited = context.properties;
-                    context.properties = $.extend({}, classType.properties);
-                    if (classType.hasOwnProperty('category') && classType.category == 'compound') {
-                        let compoundType = this.metadata.types['compound_action_parameters'];
-                        context.properties = $.extend(context.properties, this.getProperties(compoundType));
-                    }
+                    context.inherited = classType.inherited;
+                    context.properties = classType.properties;
                 }
             }
         }
@@ -1055,8 +1259,7 @@ function Hints(fileType) {
         let sectionStart = 0;
         let sectionIndent = 0;
         for (let i = 1; i < cm.lineCount(); i++) {
-            let line = cm.getLine(i);
-            let context = this.getContext(line, i);
+            let context = this.getLineContext(i);
             sectionIndent = context.indent;
             if (context.trimmed == fromSection + ":") {
                 sectionStart = i;
@@ -1067,11 +1270,10 @@ function Hints(fileType) {
         let classes = [];
         let current = sectionStart + 1;
         while (current < cm.lineCount()) {
-            let line = cm.getLine(current);
-            let context = this.getContext(line, current);
+            let context = this.getLineContext(current);
             let indent = context.indent;
             if (indent <= sectionIndent) break;
-            line = line.replace("-", "").trim();
+            let line = context.line.replace("-", "").trim();
             if (line.startsWith("class:")) {
                 let sectionClass = line.replace("class: ", "");
                 classes.push(sectionClass);
@@ -1096,4 +1298,23 @@ function Hints(fileType) {
         }
         return isList;
     };
-}
\ No newline at end of file
+}
+
+// Remove the options a version does not have from metadata generated for several versions.
+// option_versions has a bit mask of versions for each option that is not in all of them.
+Hints.filterVersion = function(meta, version) {
+    let index = meta.versions.indexOf(version);
+    if (index < 0) return;
+    // Masks can be wider than 32 bits, so no bitwise operators here
+    let bit = Math.pow(2, index);
+    for (let typeKey in meta.types) {
+        if (!meta.types.hasOwnProperty(typeKey)) continue;
+        let type = meta.types[typeKey];
+        if (type.options == null || type.option_versions == null) continue;
+        for (let option in type.option_versions) {
+            if (type.option_versions.hasOwnProperty(option) && Math.floor(type.option_versions[option] / bit) % 2 == 0) {
+                delete type.options[option];
+            }
+        }
+    }
+};
@@ -0,0 +1,81 @@
+// Follows the change feed of a MagicMeta server, see MetaServer in MagicMeta.
+// Parameters, classes and categories are patched into the metadata in place. Types and the derived
+// sections are filled in by meta.php, so changes to those fetch the metadata again instead.
+// The callback gets the updated metadata once each generation has been applied.
+function MetaFeed(url, metaURL, callback)
+{
+    this.url = url;
+    this.metaURL = metaURL;
+    this.callback = callback;
+    this.meta = null;
+    this.changed = false;
+    this.reload = false;
+    this.source = null;
+}
+
+MetaFeed.prototype.start = function(meta)
+{
+    if (typeof(EventSource) === 'undefined') return;
+    this.meta = meta;
+    if (this.source != null) return;
+
+    var feed = this;
+    var source = new EventSource(this.url);
+    source.addEventListener('parameter', function(event) {
+        feed.patch(feed.meta.properties, JSON.parse(event.data));
+    });
+    source.addEventListener('class', function(event) {
+        var change = JSON.parse(event.data);
+        if (!feed.meta.classed.hasOwnProperty(change.section)) {
+            feed.meta.classed[change.section] = {};
+        }
+        feed.patch(feed.meta.classed[change.section], change);
+    });
+    source.addEventListener('category', function(event) {
+        feed.patch(feed.meta.categories, JSON.parse(event.data));
+    });
+    source.addEventListener('type', function() {
+        feed.reload = true;
+    });
+    source.addEventListener('section', function() {
+        feed.reload = true;
+    });
+    source.addEventListener('reload', function() {
+        feed.reload = true;
+        feed.finish();
+    });
+    source.addEventListener('generation', function() {
+        feed.finish();
+    });
+    this.source = source;
+};
+
+MetaFeed.prototype.patch = function(entries, change)
+{
+    if (change.removed) {
+        delete entries[change.key];
+    } else {
+        entries[change.key] = change.value;
+    }
+    this.changed = true;
+};
+
+MetaFeed.prototype.finish = function()
+{
+    var feed = this;
+    if (this.reload) {
+        this.reload = false;
+        this.changed = false;
+        $.ajax( {
+            type: "GET",
+            url: this.metaURL,
+            dataType: 'json'
+        }).done(function(meta) {
+            feed.meta = meta;
+            feed.callback(meta);
+        });
+    } else if (this.changed) {
+        this.changed = false;
+        this.callback(this.meta);
+    }
+};
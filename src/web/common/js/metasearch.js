@@ -0,0 +1,160 @@
+// Searches the full-text index in search.json, see SearchIndex in MagicMeta.
+// This needs to score and order results the same way SearchIndex.search does.
+function MetaSearch(index)
+{
+    this.kinds = index.kinds;
+    this.documentKinds = index.document_kinds;
+    this.documentKeys = index.document_keys;
+    this.terms = index.terms;
+    this.postings = index.postings;
+    this.fuzzy = index.fuzzy;
+}
+
+MetaSearch.FUZZY_LENGTH = 4;
+MetaSearch.NAME_WEIGHT = 4;
+MetaSearch.DESCRIPTION_WEIGHT = 1;
+MetaSearch.PREFIX_WEIGHT = 0.5;
+MetaSearch.FUZZY_WEIGHT = 0.25;
+
+MetaSearch.tokenize = function(text)
+{
+    var tokens = [];
+    if (text == null) return tokens;
+    var pieces = text.replace(/<[^>]*>/g, ' ').toLowerCase().split(/[^a-z0-9]+/);
+    for (var i = 0; i < pieces.length; i++) {
+        if (pieces[i] != '') {
+            tokens.push(pieces[i]);
+        }
+    }
+    return tokens;
+};
+
+MetaSearch.getDeletions = function(term)
+{
+    var deletions = [];
+    for (var i = 0; i < term.length; i++) {
+        deletions.push(term.substring(0, i) + term.substring(i + 1));
+    }
+    return deletions;
+};
+
+// Returns the index of the term, or -(insertion point) - 1 like Java's binarySearch
+MetaSearch.prototype.findTerm = function(term)
+{
+    var low = 0;
+    var high = this.terms.length - 1;
+    while (low <= high) {
+        var mid = (low + high) >>> 1;
+        var midTerm = this.terms[mid];
+        if (midTerm < term) {
+            low = mid + 1;
+        } else if (midTerm > term) {
+            high = mid - 1;
+        } else {
+            return mid;
+        }
+    }
+    return -(low + 1);
+};
+
+// Returns a list of {kind, key, score}, best matches first
+MetaSearch.prototype.search = function(query, limit)
+{
+    var tokens = MetaSearch.tokenize(query);
+    var results = [];
+    if (tokens.length == 0) return results;
+
+    var documentCount = this.documentKeys.length;
+    var scores = new Float64Array(documentCount);
+    var tokenScores = new Float64Array(documentCount);
+    for (var i = 0; i < tokens.length; i++) {
+        tokenScores.fill(0);
+        this.scoreToken(tokens[i], tokenScores);
+        for (var document = 0; document < documentCount; document++) {
+            // Every word has to match
+            var matched = tokenScores[document] > 0 && (i == 0 || scores[document] > 0);
+            scores[document] = matched ? scores[document] + tokenScores[document] : 0;
+        }
+    }
+
+    for (var document = 0; document < documentCount; document++) {
+        if (scores[document] > 0) {
+            results.push({
+                kind: this.kinds[this.documentKinds[document]],
+                key: this.documentKeys[document],
+                score: scores[document],
+                document: document
+            });
+        }
+    }
+    results.sort(function(a, b) {
+        if (a.score != b.score) {
+            return b.score - a.score;
+        }
+        if (a.key.length != b.key.length) {
+            return a.key.length - b.key.length;
+        }
+        return a.document - b.document;
+    });
+    if (limit > 0 && results.length > limit) {
+        results.length = limit;
+    }
+    return results;
+};
+
+MetaSearch.prototype.scoreToken = function(token, tokenScores)
+{
+    var exact = this.findTerm(token);
+    if (exact >= 0) {
+        this.scoreTerm(exact, 1, tokenScores);
+    }
+
+    if (token.length >= 2) {
+        var start = exact >= 0 ? exact + 1 : -exact - 1;
+        for (var termIndex = start; termIndex < this.terms.length && this.terms[termIndex].startsWith(token); termIndex++) {
+            this.scoreTerm(termIndex, MetaSearch.PREFIX_WEIGHT, tokenScores);
+        }
+    }
+
+    if (token.length >= MetaSearch.FUZZY_LENGTH) {
+        var candidates = {};
+        this.addFuzzy(token, candidates);
+        var deletions = MetaSearch.getDeletions(token);
+        for (var i = 0; i < deletions.length; i++) {
+            this.addFuzzy(deletions[i], candidates);
+            var termIndex = this.findTerm(deletions[i]);
+            if (termIndex >= 0) {
+                candidates[termIndex] = true;
+            }
+        }
+        delete candidates[exact];
+        for (var candidate in candidates) {
+            if (candidates.hasOwnProperty(candidate)) {
+                this.scoreTerm(parseInt(candidate), MetaSearch.FUZZY_WEIGHT, tokenScores);
+            }
+        }
+    }
+};
+
+MetaSearch.prototype.addFuzzy = function(deletion, candidates)
+{
+    if (!this.fuzzy.hasOwnProperty(deletion)) return;
+    var termIndexes = this.fuzzy[deletion];
+    for (var i = 0; i < termIndexes.length; i++) {
+        candidates[termIndexes[i]] = true;
+    }
+};
+
+MetaSearch.prototype.scoreTerm = function(termIndex, weight, tokenScores)
+{
+    var postings = this.postings[termIndex];
+    var value = 0;
+    for (var i = 0; i < postings.length; i++) {
+        value += postings[i];
+        var document = value >> 1;
+        var score = weight * ((value & 1) != 0 ? MetaSearch.NAME_WEIGHT : MetaSearch.DESCRIPTION_WEIGHT);
+        if (score > tokenScores[document]) {
+            tokenScores[document] = score;
+        }
+    }
+};
@@ -13,6 +13,12 @@
 
   var HINT_ELEMENT_CLASS        = "CodeMirror-hint";
   var ACTIVE_HINT_ELEMENT_CLASS = "CodeMirror-hint-active";
+  var HINT_SPACER_CLASS         = "CodeMirror-hint-spacer";
+
+  // Only the visible hints plus this many on either side are in the DOM,
+  // so long option lists (and their icons) are rendered as they scroll into view.
+  var HINT_ROW_BUFFER = 10;
+  var HINT_INITIAL_ROWS = 40;
 
   // This is the old interface, kept around for now to stay
   // backwards-compatible.
@@ -229,15 +235,15 @@
     this.selectedHint = data.selectedHint || 0;
 
     var completions = data.list;
-    for (var i = 0; i < completions.length; ++i) {
-      var elt = hints.appendChild(ownerDocument.createElement("li")), cur = completions[i];
-      var className = HINT_ELEMENT_CLASS + (i != this.selectedHint ? "" : " " + ACTIVE_HINT_ELEMENT_CLASS);
-      if (cur.className != null) className = cur.className + " " + className;
-      elt.className = className;
-      if (cur.render) cur.render(elt, data, cur);
-      else elt.appendChild(ownerDocument.createTextNode(cur.displayText || getText(cur)));
-      elt.hintId = i;
-    }
+    this.rows = [];
+    this.rowPadding = null;
+    this.topSpacer = hints.appendChild(ownerDocument.createElement("li"));
+    this.topSpacer.className = HINT_SPACER_CLASS;
+    this.bottomSpacer = hints.appendChild(ownerDocument.createElement("li"));
+    this.bottomSpacer.className = HINT_SPACER_CLASS;
+    this.firstRow = this.lastRow = 0;
+    this.rowHeight = 0;
+    this.showRows(0, Math.min(completions.length, Math.max(HINT_INITIAL_ROWS, this.selectedHint + 1)));
 
     var container = completion.options.container || ownerDocument.body;
     var pos = cm.cursorCoords(completion.options.alignWithWord ? data.from : null);
@@ -259,6 +265,7 @@
     var winW = parentWindow.innerWidth || Math.max(ownerDocument.body.offsetWidth, ownerDocument.documentElement.offsetWidth);
     var winH = parentWindow.innerHeight || Math.max(ownerDocument.body.offsetHeight, ownerDocument.documentElement.offsetHeight);
     container.appendChild(hints);
+    this.measureRows();
     var box = hints.getBoundingClientRect(), overlapY = box.bottom - winH;
     var scrolls = hints.scrollHeight > hints.clientHeight + 1
     var startScroll = cm.getScrollInfo();
@@ -287,8 +294,21 @@
       }
       hints.style.left = (left = pos.left - overlapX - offsetLeft) + "px";
     }
-    if (scrolls) for (var node = hints.firstChild; node; node = node.nextSibling)
-      node.style.paddingRight = cm.display.nativeBarWidth + "px"
+    if (scrolls) {
+      this.rowPadding = cm.display.nativeBarWidth + "px";
+      for (var r = this.firstRow; r < this.lastRow; r++) this.rows[r].style.paddingRight = this.rowPadding;
+    }
+    // Rows come and go while scrolling, don't let that resize the popup
+    hints.style.minWidth = (hints.getBoundingClientRect().width) + "px";
+
+    var renderFrame = null;
+    CodeMirror.on(hints, "scroll", function() {
+      if (renderFrame != null) return;
+      renderFrame = requestAnimationFrame(function() {
+        renderFrame = null;
+        if (completion.widget == widget) widget.renderVisibleRows();
+      });
+    });
 
     cm.addKeyMap(this.keyMap = buildKeyMap(completion, {
       moveFocus: function(n, avoidWrap) { widget.changeActive(widget.selectedHint + n, avoidWrap); },
@@ -334,11 +354,69 @@
     });
     this.scrollToActive()
 
-    CodeMirror.signal(data, "select", completions[this.selectedHint], hints.childNodes[this.selectedHint]);
+    CodeMirror.signal(data, "select", completions[this.selectedHint], this.getRow(this.selectedHint));
     return true;
   }
 
   Widget.prototype = {
+    // Rows are created on first use and kept, so scrolling back doesn't render them again
+    getRow: function(i) {
+      var elt = this.rows[i];
+      if (elt) return elt;
+      var cur = this.data.list[i];
+      var ownerDocument = this.hints.ownerDocument;
+      elt = this.rows[i] = ownerDocument.createElement("li");
+      var className = HINT_ELEMENT_CLASS + (i != this.selectedHint ? "" : " " + ACTIVE_HINT_ELEMENT_CLASS);
+      if (cur.className != null) className = cur.className + " " + className;
+      elt.className = className;
+      if (cur.render) cur.render(elt, this.data, cur);
+      else elt.appendChild(ownerDocument.createTextNode(cur.displayText || getText(cur)));
+      elt.hintId = i;
+      if (this.rowPadding) elt.style.paddingRight = this.rowPadding;
+      return elt;
+    },
+
+    // Puts rows [first, last) in the DOM between the spacers
+    showRows: function(first, last) {
+      if (first == this.firstRow && last == this.lastRow) return;
+      for (var i = this.firstRow; i < this.lastRow; i++) {
+        if (i < first || i >= last) this.hints.removeChild(this.rows[i]);
+      }
+      var fragment = this.hints.ownerDocument.createDocumentFragment();
+      for (var i = first; i < last; i++) {
+        if (i >= this.firstRow && i < this.lastRow) {
+          // Already shown, flush anything in front of it first
+          if (fragment.firstChild) this.hints.insertBefore(fragment, this.rows[i]);
+          continue;
+        }
+        fragment.appendChild(this.getRow(i));
+      }
+      if (fragment.firstChild) this.hints.insertBefore(fragment, this.bottomSpacer);
+      this.firstRow = first;
+      this.lastRow = last;
+      this.topSpacer.style.height = (first * this.rowHeight) + "px";
+      this.bottomSpacer.style.height = ((this.data.list.length - last) * this.rowHeight) + "px";
+    },
+
+    // Rows without a selection or hover are all the same height, spacers use that for the rows not shown
+    measureRows: function() {
+      var height = 0;
+      for (var i = this.firstRow; i < this.lastRow; i++) {
+        var rowHeight = this.rows[i].offsetHeight;
+        if (rowHeight > 0 && (height == 0 || rowHeight < height)) height = rowHeight;
+      }
+      this.rowHeight = height || 16;
+      this.topSpacer.style.height = (this.firstRow * this.rowHeight) + "px";
+      this.bottomSpacer.style.height = ((this.data.list.length - this.lastRow) * this.rowHeight) + "px";
+    },
+
+    renderVisibleRows: function() {
+      var count = this.data.list.length;
+      var first = Math.floor(this.hints.scrollTop / this.rowHeight) - HINT_ROW_BUFFER;
+      var last = Math.ceil((this.hints.scrollTop + this.hints.clientHeight) / this.rowHeight) + HINT_ROW_BUFFER;
+      this.showRows(Math.max(0, first), Math.min(count, last));
+    },
+
     close: function() {
       if (this.completion.widget != this) return;
       this.completion.widget = null;
@@ -370,18 +448,27 @@
       else if (i < 0)
         i = avoidWrap ? 0  : this.data.list.length - 1;
       if (this.selectedHint == i) return;
-      var node = this.hints.childNodes[this.selectedHint];
+      var node = this.rows[this.selectedHint];
       if (node) node.className = node.className.replace(" " + ACTIVE_HINT_ELEMENT_CLASS, "");
-      node = this.hints.childNodes[this.selectedHint = i];
-      node.className += " " + ACTIVE_HINT_ELEMENT_CLASS;
+      this.selectedHint = i;
       this.scrollToActive()
+      node = this.getRow(i);
+      if (node.className.indexOf(ACTIVE_HINT_ELEMENT_CLASS) == -1) node.className += " " + ACTIVE_HINT_ELEMENT_CLASS;
       CodeMirror.signal(this.data, "select", this.data.list[this.selectedHint], node);
     },
 
     scrollToActive: function() {
       var margin = this.completion.options.scrollMargin || 0;
-      var node1 = this.hints.childNodes[Math.max(0, this.selectedHint - margin)];
-      var node2 = this.hints.childNodes[Math.min(this.data.list.length - 1, this.selectedHint + margin)];
+      var first = Math.max(0, this.selectedHint - margin);
+      var last = Math.min(this.data.list.length - 1, this.selectedHint + margin);
+      if (first < this.firstRow || last >= this.lastRow) {
+        // Jump to about the right place so the rows get rendered, then line them up below
+        if (first < this.firstRow) this.hints.scrollTop = first * this.rowHeight;
+        else this.hints.scrollTop = (last + 1) * this.rowHeight - this.hints.clientHeight;
+        this.showRows(Math.max(0, first - HINT_ROW_BUFFER), Math.min(this.data.list.length, last + 1 + HINT_ROW_BUFFER));
+      }
+      var node1 = this.getRow(first);
+      var node2 = this.getRow(last);
       var firstNode = this.hints.firstChild;
       if (node1.offsetTop < this.hints.scrollTop)
         this.hints.scrollTop = node1.offsetTop - firstNode.offsetTop;
@@ -390,7 +477,7 @@
     },
 
     screenAmount: function() {
-      return Math.floor(this.hints.clientHeight / this.hints.firstChild.offsetHeight) || 1;
+      return Math.floor(this.hints.clientHeight / this.rowHeight) || 1;
     }
   };
 
@@ -16,17 +16,21 @@ function getMetadata($legacyIcons, $forceUpdate = false)
     }
     flock($lockFile, LOCK_EX);
     try {
+        $metadata = null;
         if (filesize($cacheFile) > 0 && !$forceUpdate) {
             $dataCreated = filemtime(dirname(__FILE__) . '/meta.json');
             $cacheCreated = filemtime($cacheFile);
-            $codeChanged = filemtime(dirname(__FILE__) . '/meta.php');
+            $codeChanged = max(filemtime(dirname(__FILE__) . '/meta.php'), filemtime(__FILE__));
             if ($cacheCreated >= $codeChanged && $cacheCreated >= $dataCreated) {
-                return file_get_contents($cacheFile);
+                $metadata = file_get_contents($cacheFile);
             }
         }
-        $metadata = generateMeta();
-        file_put_contents($cacheFile, $metadata);
-        return $metadata;
+        if ($metadata === null) {
+            $metadata = generateMeta();
+            file_put_contents($cacheFile, $metadata);
+            clearstatcache(true, $cacheFile);
+        }
+        return overlayDescriptions($metadata, $cacheFile, $forceUpdate);
     } catch (Exception $ex) {
         error_log("Error creating cache file", $ex);
         return generateMeta();
@@ -37,6 +41,64 @@ function getMetadata($legacyIcons, $forceUpdate = false)
     }
 }
 
+// MagicMeta moves descriptions.log aside while it folds the edits into meta.json,
+// edits in there are older than any in the current log.
+function getDescriptionLogs() {
+    $logFilename = dirname(__FILE__) . '/descriptions.log';
+    return array($logFilename . '.compacting', $logFilename);
+}
+
+function readDescriptionLog() {
+    $descriptions = array();
+    foreach (getDescriptionLogs() as $logFilename) {
+        $logFile = @fopen($logFilename, 'r');
+        if ($logFile === FALSE) continue;
+        flock($logFile, LOCK_SH);
+        while (($line = fgets($logFile)) !== FALSE) {
+            $edit = json_decode($line, true);
+            if (!$edit || !isset($edit['property']) || !isset($edit['description'])) continue;
+            // Later edits of the same property win
+            $descriptions[$edit['property']] = $edit['description'];
+        }
+        flock($logFile, LOCK_UN);
+        fclose($logFile);
+    }
+    return $descriptions;
+}
+
+function overlayDescriptions($metadata, $cacheFile, $forceUpdate) {
+    $logChanged = 0;
+    foreach (getDescriptionLogs() as $logFilename) {
+        clearstatcache(true, $logFilename);
+        if (!file_exists($logFilename) || filesize($logFilename) == 0) continue;
+        $logChanged = max($logChanged, filemtime($logFilename));
+    }
+    if ($logChanged == 0) {
+        return $metadata;
+    }
+
+    // The overlaid copy is cached separately so that description edits never invalidate the base cache
+    $overlayFile = substr($cacheFile, 0, -strlen('.cache')) . '_overlay.cache';
+    if (file_exists($overlayFile) && filesize($overlayFile) > 0 && !$forceUpdate) {
+        $overlayCreated = filemtime($overlayFile);
+        if ($overlayCreated > $logChanged && $overlayCreated >= filemtime($cacheFile)) {
+            return file_get_contents($overlayFile);
+        }
+    }
+
+    $descriptions = readDescriptionLog();
+    $meta = json_decode($metadata, true);
+    $pattern = '/<link url=(.*) text="(.*)">/';
+    $replacement = '<a href=$1 target="_blank">$2</a>';
+    foreach ($descriptions as $property => $description) {
+        if (!isset($meta['properties'][$property])) continue;
+        $meta['properties'][$property]['description'] = preg_replace($pattern, $replacement, $description);
+    }
+    $metadata = json_encode($meta);
+    file_put_contents($overlayFile, $metadata);
+    return $metadata;
+}
+
 function getClassedOptions($meta, $type) {
     $options = array();
     $classes = $meta['classed'][$type];
@@ -47,6 +109,55 @@ function getClassedOptions($meta, $type) {
     return $options;
 }
 
+function addIndexedFields(&$fields, $meta, $parameters) {
+    foreach ($parameters as $key => $value) {
+        if (!isset($meta['properties'][$key])) continue;
+        $fields[$meta['properties'][$key]['field']] = $key;
+    }
+}
+
+// Same as EditorIndexes in MagicMeta, for meta.json files generated before it wrote these out
+function generateIndexes($meta) {
+    $indexes = array('aliases' => array(), 'fields' => array(), 'merged_class_fields' => array());
+    foreach ($meta['properties'] as $key => $property) {
+        if (!isset($property['alias'])) continue;
+        $indexes['aliases'][$property['alias']][] = $key;
+    }
+    foreach ($meta['types'] as $typeKey => $type) {
+        if (empty($type['parameters'])) continue;
+        $fields = array();
+        addIndexedFields($fields, $meta, $type['parameters']);
+        $indexes['fields'][$typeKey] = $fields;
+    }
+    foreach (array('actions', 'effectlib_effects') as $section) {
+        $fields = array();
+        foreach ($meta['classed'][$section] as $class) {
+            addIndexedFields($fields, $meta, $class['parameters']);
+        }
+        $indexes['merged_class_fields'][$section] = $fields;
+    }
+    return $indexes;
+}
+
+// Same as ResolvedParameters in MagicMeta, for meta.json files generated before it wrote these out
+function generateResolved($meta) {
+    $actionBase = $meta['types']['action_parameters']['parameters'];
+    $bases = array(
+        'action_parameters' => $actionBase,
+        'compound_action_parameters' => array_merge($actionBase, $meta['types']['compound_action_parameters']['parameters']),
+        'effectlib_properties' => $meta['types']['effectlib_properties']['parameters']
+    );
+    $resolved = array('bases' => $bases, 'actions' => array(), 'effectlib_effects' => array());
+    foreach ($meta['classed']['actions'] as $key => $action) {
+        $base = isset($action['category']) && $action['category'] === 'compound' ? 'compound_action_parameters' : 'action_parameters';
+        $resolved['actions'][$key] = array('base' => $base);
+    }
+    foreach ($meta['classed']['effectlib_effects'] as $key => $effect) {
+        $resolved['effectlib_effects'][$key] = array('base' => 'effectlib_properties');
+    }
+    return $resolved;
+}
+
 function makeIcon($texture, $className) {
     $icon = '';
     $texture = 'image/' . $texture;
@@ -191,5 +302,13 @@ function generateMeta() {
     $entityData = $meta['types']['mob_properties']['parameters'];
     $meta['classed']['actions']['spawn_entity']['parameters'] = array_merge($meta['classed']['actions']['spawn_entity']['parameters'], $entityData);
 
+    if (!isset($meta['indexes'])) {
+        $meta['indexes'] = generateIndexes($meta);
+    }
+    addIndexedFields($meta['indexes']['merged_class_fields']['actions'], $meta, $entityData);
+    if (!isset($meta['resolved'])) {
+        $meta['resolved'] = generateResolved($meta);
+    }
+
     return json_encode($meta);
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+<?php
+require_once('../config.inc.php');
+
+// Relay the MagicMeta server's change feed, it only listens on localhost
+if (!$metaServiceURL) {
+    http_response_code(404);
+    die('No meta service configured');
+}
+
+$url = rtrim($metaServiceURL, '/') . '/events';
+$headers = '';
+$lastEventId = isset($_SERVER['HTTP_LAST_EVENT_ID']) ? $_SERVER['HTTP_LAST_EVENT_ID'] : '';
+if (ctype_digit($lastEventId)) {
+    $headers = "Last-Event-ID: $lastEventId\r\n";
+}
+$context = stream_context_create(array('http' => array('header' => $headers, 'timeout' => 10)));
+$feed = @fopen($url, 'r', false, $context);
+if (!$feed) {
+    http_response_code(502);
+    die('Meta service is not available');
+}
+
+// Each connection holds a PHP worker, so only relay for a while. The browser then reconnects
+// with the id of the last generation it saw, and gets anything it missed in between.
+$deadline = time() + $metaFeedLifetime;
+set_time_limit($metaFeedLifetime + 60);
+stream_set_timeout($feed, 15);
+header('Content-Type: text/event-stream');
+header('Cache-Control: no-cache');
+header('X-Accel-Buffering: no');
+while (ob_get_level() > 0) {
+    ob_end_flush();
+}
+echo "retry: 1000\n\n";
+flush();
+
+while (!feof($feed) && !connection_aborted()) {
+    $line = fgets($feed);
+    if ($line === false) {
+        $status = stream_get_meta_data($feed);
+        if (!$status['timed_out'] || time() >= $deadline) break;
+        // Nothing to relay, a comment lets us notice when the editor has been closed
+        echo ": idle\n\n";
+        flush();
+        continue;
+    }
+    echo $line;
+    flush();
+    // Only stop in between events, so none is cut in half
+    if (trim($line) === '' && time() >= $deadline) break;
+}
+fclose($feed);
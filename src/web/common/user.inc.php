@@ -2,6 +2,132 @@
 
 require_once('../config.inc.php');
 
+// Registered users are sharded into one small file per user, rebuilt only when registered.yml changes.
+// This keeps the cost of authenticating a request independent of how many players have registered.
+function getRegistryFolder() {
+    global $sessionFolder;
+    return $sessionFolder . '/_registered';
+}
+
+function getRegistryShard($registryFolder, $userId) {
+    return $registryFolder . '/' . md5($userId) . '.json';
+}
+
+// Shards are read without a lock, so they are replaced by renaming a complete file over them
+function writeRegistryFile($filename, $contents) {
+    $tempFile = $filename . '.' . getmypid() . '.tmp';
+    if (file_put_contents($tempFile, $contents) === FALSE) return false;
+    if (!rename($tempFile, $filename)) {
+        @unlink($tempFile);
+        return false;
+    }
+    return true;
+}
+
+function rebuildRegistry($registeredFile, $registryFolder, $stampFile, $registeredStamp) {
+    if (!is_dir($registryFolder) && !mkdir($registryFolder, 0775, true) && !is_dir($registryFolder)) {
+        error_log("Could not create registry folder at $registryFolder");
+        return false;
+    }
+
+    $lockFile = fopen($registryFolder . '/.lock', 'c');
+    if ($lockFile === FALSE) {
+        error_log("Could not create registry lock in $registryFolder");
+        return false;
+    }
+    flock($lockFile, LOCK_EX);
+    try {
+        // Another request may have rebuilt the registry while we waited for the lock
+        clearstatcache();
+        if (isRegistryCurrent(@file_get_contents($stampFile), $registeredStamp)) {
+            return true;
+        }
+
+        $registered = yaml_parse_file($registeredFile);
+        if (!is_array($registered)) {
+            error_log("Error parsing registration file: " . $registeredFile);
+            return false;
+        }
+
+        // The index holds a hash of each shard, so only registrations that changed get written
+        $indexFile = $registryFolder . '/.index';
+        $index = @json_decode(@file_get_contents($indexFile), true);
+        if (!is_array($index)) $index = array();
+        $shards = array();
+        foreach ($registered as $userId => $registration) {
+            if (!is_array($registration)) continue;
+            $shard = json_encode(array(
+                'id' => (string)$userId,
+                'code' => isset($registration['code']) ? (string)$registration['code'] : '',
+                'name' => isset($registration['name']) ? $registration['name'] : '',
+                'skin_url' => isset($registration['skin_url']) ? $registration['skin_url'] : ''
+            ));
+            $shardFile = getRegistryShard($registryFolder, (string)$userId);
+            $shardName = basename($shardFile);
+            $shards[$shardName] = md5($shard);
+            if (isset($index[$shardName]) && $index[$shardName] === $shards[$shardName] && file_exists($shardFile)) continue;
+            if (!writeRegistryFile($shardFile, $shard)) {
+                error_log("Could not write registry shard at $shardFile");
+                return false;
+            }
+        }
+
+        // Removed registrations go away, everything else stays readable throughout
+        foreach (glob($registryFolder . '/*.json') as $shardFile) {
+            if (!isset($shards[basename($shardFile)])) {
+                unlink($shardFile);
+            }
+        }
+        writeRegistryFile($indexFile, json_encode($shards));
+
+        // A file modified within the current second could still change without its stamp changing,
+        // so mark the stamp to be checked once more after that second has passed.
+        if (filemtime($registeredFile) >= time()) {
+            $registeredStamp .= ':recheck';
+        }
+        writeRegistryFile($stampFile, $registeredStamp);
+        return true;
+    } finally {
+        flock($lockFile, LOCK_UN);
+        fclose($lockFile);
+    }
+}
+
+function isRegistryCurrent($currentStamp, $registeredStamp) {
+    if ($currentStamp === $registeredStamp) return true;
+    // Rebuilt in the same second registered.yml was written, good until that second is over
+    if ($currentStamp === $registeredStamp . ':recheck') {
+        return time() <= (int)$registeredStamp;
+    }
+    return false;
+}
+
+function getRegisteredUser($userId) {
+    global $sandboxServer;
+
+    $registeredFile = "$sandboxServer/plugins/Magic/data/registered.yml";
+    $registeredStat = @stat($registeredFile);
+    if ($registeredStat === FALSE || !$userId) return null;
+
+    $registeredStamp = $registeredStat['mtime'] . ':' . $registeredStat['size'];
+    $registryFolder = getRegistryFolder();
+    $stampFile = $registryFolder . '/.stamp';
+    $currentStamp = @file_get_contents($stampFile);
+    if (!isRegistryCurrent($currentStamp, $registeredStamp)) {
+        if (!rebuildRegistry($registeredFile, $registryFolder, $stampFile, $registeredStamp)) {
+            // Fall back to reading the registration file directly
+            $registered = yaml_parse_file($registeredFile);
+            return isset($registered[$userId]) ? $registered[$userId] : null;
+        }
+    }
+
+    $shard = @file_get_contents(getRegistryShard($registryFolder, $userId));
+    if ($shard === FALSE) return null;
+    $registered = json_decode($shard, true);
+    if (!$registered || $registered['id'] !== (string)$userId) return null;
+    return $registered;
+}
+
 function getUser() {
     global $sandboxServer;
 
@@ -16,11 +142,8 @@ function getUser() {
 
     if (!$sandboxServer) return $user;
 
-    $registeredFile = "$sandboxServer/plugins/Magic/data/registered.yml";
-    if (file_exists($registeredFile) && $userId && $userCode) {
-        $registered = $config = yaml_parse_file($registeredFile);
-
-        $registered = isset($registered[$userId]) ? $registered[$userId] : null;
+    if ($userId && $userCode) {
+        $registered = getRegisteredUser($userId);
         if ($registered && $registered['code'] === $userCode) {
             $user['name'] = $registered['name'];
             $user['skin'] = $registered['skin_url'];
@@ -28,6 +28,18 @@ $magicDefaultsFolder = $magicRootFolder . '/defaults';
 // Resource Pack folder
 $resourcePackFolder = $magicRootFolder . '/../resource-pack';
 
+// Output folder of the MagicMeta ConfigCompiler, if you run it.
+// When set, the magic/ viewer serves the processed JSON from here instead of parsing the YAML configs itself.
+$compiledConfigsFolder = '';
+
+// URL of a MagicMeta server started with --serve, such as 'http://localhost:8180'.
+// When set, the editors follow its change feed and pick up new metadata and descriptions without reloading.
+$metaServiceURL = '';
+
+// How many seconds common/metafeed.php relays the change feed before letting the browser reconnect.
+// Each open editor holds a PHP worker while it is connected, see the README for proxying the feed instead.
+$metaFeedLifetime = 300;
+
 // Configure InfoBook integration (external plugin)
 $infoBookRootConfig = dirname(__FILE__) . '/../main/resources/examples/InfoBook/config.yml';
 
@@ -1,6 +1,6 @@
 <?php
 require_once('../config.inc.php');
-$version = 6;
+$version = 8;
 
 $session = null;
 $sessionId = null;
@@ -22,6 +22,8 @@ $fileType = $session && isset($session['type']) ? $session['type'] : '';
 if (!$session && isset($_REQUEST['type'])) {
     $fileType = $_REQUEST['type'];
 }
+// Only show options that exist in this Minecraft version, if meta.json was generated for several
+$targetVersion = isset($_REQUEST['version']) ? $_REQUEST['version'] : null;
 $legacyIcons = $session && isset($session['isLegacyIcons']) ? $session['isLegacyIcons'] : false;
 $seenTutorial = isset($_COOKIE['tutorial']);
 setcookie('tutorial', true, time()+60*60*24*30);
@@ -68,6 +70,7 @@ setcookie('tutorial', true, time()+60*60*24*30);
 
     <script src="common/js/formatters.js?v=<?=$version?>"></script>
     <script src="common/js/hints.js?v=<?=$version?>"></script>
+    <script src="common/js/metafeed.js?v=<?=$version?>"></script>
     <script src="js/editor.js?v=<?=$version?>"></script>
     <script src="js/tutorial.js?v=<?=$version?>"></script>
     <script src="js/main.js?v=<?=$version?>"></script>
@@ -79,6 +82,8 @@ setcookie('tutorial', true, time()+60*60*24*30);
         var _fileType = '<?=$fileType?>';
         var _seenTutorial = <?= $seenTutorial ? 'true' : 'false'; ?>;
         var _legacyIcons = <?= $legacyIcons ? 'true' : 'false'; ?>;
+        var _metaFeed = <?= $metaServiceURL ? 'true' : 'false'; ?>;
+        var _targetVersion = <?= json_encode($targetVersion); ?>;
     </script>
     <?php if ($analytics) echo $analytics; ?>
 </head>
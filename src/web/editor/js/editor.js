@@ -243,6 +243,10 @@ Editor.prototype.setMetadata = function(meta) {
         }
     }
 
+    if (_targetVersion && meta.versions) {
+        Hints.filterVersion(meta, _targetVersion);
+    }
+
     this.metadata = meta;
     this.editor.metadata = meta;
 };
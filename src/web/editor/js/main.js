@@ -90,6 +90,11 @@ function initialize() {
 
     }).done(function(meta) {
         editor.setMetadata(meta);
+        if (_metaFeed) {
+            new MetaFeed("common/metafeed.php", "common/meta.php?legacyIcons=" + _legacyIcons, function(meta) {
+                editor.setMetadata(meta);
+            }).start(meta);
+        }
     });
 
     if (!_seenTutorial) {
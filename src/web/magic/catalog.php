@@ -0,0 +1,84 @@
+<?php
+require_once('../config.inc.php');
+require_once('common/meta.inc.php');
+require_once('configs.inc.php');
+header('Content-Type: application/json');
+
+// Serves all the details of one kind of thing (spells, wands, mobs, ...) for the browser,
+// which only gets the lightweight lists in index.php up front.
+$catalogTypes = array(
+    'spell' => 'spells',
+    'wand' => 'wands',
+    'upgrade' => 'upgrades',
+    'recipe' => 'crafting',
+    'path' => 'enchanting',
+    'mob' => 'mobs',
+    'book' => 'books'
+);
+
+$example = isset($_REQUEST['example']) ? basename($_REQUEST['example']) : 'survival';
+$type = isset($_REQUEST['type']) ? $_REQUEST['type'] : '';
+$language = isset($_REQUEST['lang']) ? $_REQUEST['lang'] : '';
+if (!isset($catalogTypes[$type])) {
+    http_response_code(400);
+    die(json_encode(array('success' => false, 'message' => 'Invalid type: ' . $type)));
+}
+$section = $catalogTypes[$type];
+
+function checkETag($etag) {
+    header('ETag: ' . $etag);
+    header('Cache-Control: public, max-age=300');
+    if (isset($_SERVER['HTTP_IF_NONE_MATCH']) && trim($_SERVER['HTTP_IF_NONE_MATCH']) === $etag) {
+        http_response_code(304);
+        exit;
+    }
+}
+
+// Compiled catalogs are already processed, so they go out as they are
+$viewerFolder = $type === 'book' ? null : getCompiledViewer($example, $language);
+if ($viewerFolder) {
+    $catalogFile = "$viewerFolder/catalog/$section.json";
+    $stat = @stat($catalogFile);
+    if (!$stat) {
+        http_response_code(404);
+        die(json_encode(array('success' => false, 'message' => 'Missing catalog: ' . $section)));
+    }
+    checkETag('"' . md5(implode('|', array($catalogFile, $stat['mtime'], $stat['size'], $stat['ino']))) . '"');
+    header('Content-Length: ' . $stat['size']);
+    readfile($catalogFile);
+    exit;
+}
+
+if ($type === 'book') {
+    checkETag('"' . md5(implode('|', array(filemtime(__FILE__), $infoBookRootConfig, @filemtime($infoBookRootConfig)))) . '"');
+    echo json_encode((object)getBooks());
+    exit;
+}
+
+checkETag('"' . md5(implode('|', array(getConfigsVersion($example), filemtime(__FILE__), $example, $language, $type))) . '"');
+$configData = getConfigs($example);
+if (!$configData) {
+    http_response_code(503);
+    die(json_encode(array('success' => false, 'message' => 'Sorry, the site is currently unavailable!')));
+}
+
+// The first path that teaches or requires a spell, as shown in its details
+function getPathAvailability($spellKey, $paths) {
+    foreach ($paths as $path) {
+        if (isset($path['path_spells']) && is_array($path['path_spells']) && in_array($spellKey, $path['path_spells'])) {
+            return array('type' => 'available', 'name' => $path['name']);
+        }
+        if (isset($path['required_spells']) && is_array($path['required_spells']) && in_array($spellKey, $path['required_spells'])) {
+            return array('type' => 'required', 'name' => $path['name']);
+        }
+    }
+    return null;
+}
+
+$catalog = $configData[$section];
+if ($type === 'spell') {
+    foreach ($catalog as $spellKey => &$spell) {
+        $spell['path_availability'] = getPathAvailability($spellKey, $configData['enchanting']);
+    }
+}
+echo json_encode((object)$catalog);
@@ -1,5 +1,48 @@
 <?php
 
+function getCompiledExample($example) {
+    global $compiledConfigsFolder;
+    if (!$compiledConfigsFolder || !file_exists("$compiledConfigsFolder/manifest.json")) return null;
+    $example = $example ? basename($example) : 'survival';
+    return is_dir("$compiledConfigsFolder/$example") ? "$compiledConfigsFolder/$example" : null;
+}
+
+// The processed lists and details ConfigCompiler writes for the viewer, null when the configs aren't compiled
+function getCompiledViewer($example, $language) {
+    $exampleFolder = getCompiledExample($example);
+    if (!$exampleFolder) return null;
+    $language = $language ? basename($language) : 'default';
+    $viewerFolder = "$exampleFolder/viewer/$language";
+    // The compiler writes the index last
+    return file_exists("$viewerFolder/index.json") ? $viewerFolder : null;
+}
+
+// Everything index.php shows, straight from the compiled viewer data when there is some
+function getViewerConfigs($example, $language) {
+    $viewerFolder = getCompiledViewer($example, $language);
+    if (!$viewerFolder) {
+        return getConfigs($example);
+    }
+    $configs = json_decode(file_get_contents("$viewerFolder/index.json"), true);
+    if (!$configs) return null;
+    $configs['spellIcons'] = getSpellIcons();
+    $configs['textures'] = getTextures();
+    $configs['books'] = getBooks();
+    return $configs;
+}
+
+// Changes whenever the configs returned by getConfigs could have changed, without loading them
+function getConfigsVersion($example) {
+    global $sessionFolder;
+    global $magicRootFolder;
+
+    $cacheFile = "$sessionFolder/_configs_$example.cache";
+    $configsUpdated = filemtime($magicRootFolder);
+    $cacheCreated = file_exists($cacheFile) ? filemtime($cacheFile) : 0;
+    return max($configsUpdated, $cacheCreated, filemtime(__FILE__));
+}
+
+// Only used when there are no compiled configs, see getViewerConfigs
 function getConfigs($example) {
     global $sessionFolder;
     global $magicRootFolder;
@@ -83,6 +126,7 @@ function loadConfigs($example) {
 
         $language = isset($_REQUEST['lang']) ? $_REQUEST['lang'] : '';
         if ($language) {
+            $language = basename($language);
             $localizationFile = "$magicRootFolder/examples/localizations/messages.$language.yml";
             if (!file_exists($localizationFile)) {
                 die("Can't find localization file for language $language");
@@ -91,37 +135,7 @@ function loadConfigs($example) {
             $messages = array_replace_recursive($messages, $localization);
         }
 
-        // load meta textures
-        $spellIcons = array();
-        $metadata = getMetadata(false);
-        $metadata = $metadata ? json_decode($metadata, true) : null;
-        if ($metadata) {
-            $iconOptions = $metadata['types']['spell_icon']['options'];
-            foreach ($iconOptions as $itemKey => $description) {
-                // Kind hacky, if description format ever changes this could break
-                $texture = explode('/', $description);
-                if (count($texture) < 3) continue;
-                if (strpos($texture[count($texture) - 2], "spells") === -1) continue;
-                $texture = 'spells/' . $texture[count($texture) - 1];
-                array_push($spellIcons,
-                    array('texture' => $texture, 'item' => $itemKey)
-                );
-                asort($spellIcons);
-            }
-        } else {
-            // Load resource pack textures
-            $spellJson = json_decode(file_get_contents($resourcePackFolder . '/default/assets/minecraft/models/item/diamond_axe.json'), true);
-            $spellJson = $spellJson['overrides'];
-            $diamondUses = 1562;
-            foreach ($spellJson as $spellPredicate) {
-                $durability = round($spellPredicate['predicate']['damage'] * $diamondUses);
-                $texture = str_replace('item/', '', $spellPredicate['model']);
-                array_push($spellIcons,
-                    array('texture' => $texture, 'item' => 'diamond_axe:' . $durability)
-                );
-            }
-        }
-
+        $spellIcons = getSpellIcons();
     } catch (Exception $ex) {
         die($ex->getMessage());
     }
@@ -369,24 +383,8 @@ function loadConfigs($example) {
     $replicateMaterial = isset($general['replicate_item']) ? $general['replicate_item'] : 'nether_stalk';
     $cloneMaterial = isset($general['clone_item']) ? $general['clone_item'] : 'pumpkin_seeds';
 
-    $books = array();
-    global $infoBookRootConfig;
-    if (file_exists($infoBookRootConfig)) {
-        $booksConfigKeys = array('version-check', 'onlogin', 'protected');
-        $booksConfig = yaml_parse_file($infoBookRootConfig);
-        foreach ($booksConfig as $key => $book) {
-            // Hacky.. InfoBook has a weird config :\
-            if (!in_array($booksConfig, $booksConfigKeys)) {
-                $books[$key] = $book;
-            }
-        }
-    }
-
-    $textures = array();
-    $textureConfig = $resourcePackFolder . '/common/source/image_map.yml';
-    if (file_exists($textureConfig)) {
-        $textures = array_values(yaml_parse_file($textureConfig));
-    }
+    $books = getBooks();
+    $textures = getTextures();
 
     return array(
         'wands' => $wands,
@@ -476,4 +474,105 @@ function getPath($key) {
     }
 
     return $enchanting[$key];
-}
\ No newline at end of file
+}
+
+// The few things the viewer shows that don't come from the example configs are cached on their own
+function getCachedViewerData($name, $sourceFiles, $loader) {
+    global $sessionFolder;
+
+    $cacheFile = "$sessionFolder/_viewer_$name.cache";
+    $sourcesChanged = filemtime(__FILE__);
+    foreach ($sourceFiles as $sourceFile) {
+        if (file_exists($sourceFile)) {
+            $sourcesChanged = max($sourcesChanged, filemtime($sourceFile));
+        }
+    }
+    if (file_exists($cacheFile) && filemtime($cacheFile) >= $sourcesChanged) {
+        $data = json_decode(file_get_contents($cacheFile), true);
+        if (is_array($data)) return $data;
+    }
+    $data = $loader();
+    // Written aside and renamed so other requests never read half of it
+    $tempFile = tempnam($sessionFolder, "_viewer_$name");
+    if ($tempFile && file_put_contents($tempFile, json_encode($data)) !== FALSE) {
+        rename($tempFile, $cacheFile);
+    }
+    return $data;
+}
+
+function getSpellIcons() {
+    global $resourcePackFolder;
+
+    $axeModel = $resourcePackFolder . '/default/assets/minecraft/models/item/diamond_axe.json';
+    $sourceFiles = array(dirname(__FILE__) . '/common/meta.json', $axeModel);
+    return getCachedViewerData('spell_icons', $sourceFiles, function() use ($axeModel) {
+        // load meta textures
+        $spellIcons = array();
+        $metadata = getMetadata(false);
+        $metadata = $metadata ? json_decode($metadata, true) : null;
+        if ($metadata) {
+            $iconOptions = $metadata['types']['spell_icon']['options'];
+            foreach ($iconOptions as $itemKey => $description) {
+                // Kind hacky, if description format ever changes this could break
+                $texture = explode('/', $description);
+                if (count($texture) < 3) continue;
+                if (strpos($texture[count($texture) - 2], "spells") === -1) continue;
+                $texture = 'spells/' . $texture[count($texture) - 1];
+                array_push($spellIcons,
+                    array('texture' => $texture, 'item' => $itemKey)
+                );
+                asort($spellIcons);
+            }
+        } else {
+            // Load resource pack textures
+            $spellJson = json_decode(file_get_contents($axeModel), true);
+            $spellJson = $spellJson['overrides'];
+            $diamondUses = 1562;
+            foreach ($spellJson as $spellPredicate) {
+                $durability = round($spellPredicate['predicate']['damage'] * $diamondUses);
+                $texture = str_replace('item/', '', $spellPredicate['model']);
+                array_push($spellIcons,
+                    array('texture' => $texture, 'item' => 'diamond_axe:' . $durability)
+                );
+            }
+        }
+        return $spellIcons;
+    });
+}
+
+function getBooks() {
+    global $infoBookRootConfig;
+
+    if (!file_exists($infoBookRootConfig)) {
+        return array();
+    }
+    return getCachedViewerData('books', array($infoBookRootConfig), function() use ($infoBookRootConfig) {
+        $books = array();
+        $booksConfigKeys = array('version-check', 'onlogin', 'protected');
+        $booksConfig = yaml_parse_file($infoBookRootConfig);
+        foreach ($booksConfig as $key => $book) {
+            // Hacky.. InfoBook has a weird config :\
+            if (!in_array($booksConfig, $booksConfigKeys)) {
+                $books[$key] = $book;
+            }
+        }
+        return $books;
+    });
+}
+
+function getTextures() {
+    global $resourcePackFolder;
+    global $compiledConfigsFolder;
+
+    $compiledTextures = "$compiledConfigsFolder/resource-pack/textures.json";
+    if ($compiledConfigsFolder && file_exists($compiledTextures)) {
+        return array_values(json_decode(file_get_contents($compiledTextures), true));
+    }
+    $textureConfig = $resourcePackFolder . '/common/source/image_map.yml';
+    if (!file_exists($textureConfig)) {
+        return array();
+    }
+    return getCachedViewerData('textures', array($textureConfig), function() use ($textureConfig) {
+        return array_values(yaml_parse_file($textureConfig));
+    });
+}
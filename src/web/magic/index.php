@@ -105,7 +105,7 @@ function findAndPrintIcon($name, $iconItem, $iconUrl, $spellKey = null) {
     return $icon;
 }
 
-$configData = getConfigs($_REQUEST['example'] ?? 'survival');
+$configData = getViewerConfigs($_REQUEST['example'] ?? 'survival', $_REQUEST['lang'] ?? '');
 if (!$configData) {
     die("Sorry, the site is currently unavailable!");
 }
@@ -147,17 +147,13 @@ $texturePath = $configData['texturePath'];
 		<script src="common/js/jquery-1.10.2.min.js"></script>
 		<script src="common/js/jquery-ui-1.10.3.custom.min.js"></script>
 		<script>
-			var spells = <?= json_encode($spells); ?>;
-			var paths = <?= json_encode($enchanting); ?>;
-			var recipes = <?= json_encode($crafting); ?>;
-			var wands = <?= json_encode($wands); ?>;
-			var upgrades = <?= json_encode($upgrades); ?>;
+			var configExample = <?= json_encode($_REQUEST['example'] ?? 'survival'); ?>;
+			var configLanguage = <?= json_encode($_REQUEST['lang'] ?? ''); ?>;
 			var eraseMaterial = '<?= $eraseMaterial ?>';
 			var copyMaterial = '<?= $copyMaterial ?>';
 			var cloneMaterial = '<?= $cloneMaterial ?>';
 			var replicateMaterial = '<?= $replicateMaterial ?>';
-			var books = <?= json_encode($books); ?>;
-			var mobs = <?= json_encode($mobs); ?>;
+			var hasBooks = <?= count($books) > 0 ? 'true' : 'false' ?>;
 			var worthItems = <?= json_encode($worthItems); ?>;
 			var worthBase = <?= $worthBase ?>;
 			var maxXpRegeneration = <?= $maxXpRegeneration ?>;
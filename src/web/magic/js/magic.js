@@ -172,28 +172,17 @@ function createSpellDetails(spell, showTitle, useMana, costReduction, probabilit
     }
 	detailsDiv.append(icon);
 
-    // Check for path availability
-    for (var pathIndex in paths) {
-		var spAmount = spell.hasOwnProperty('worth') ? spell['worth'] : 0;
-        var path = paths[pathIndex];
-        if ('path_spells' in path && path.path_spells != null && path.path_spells.indexOf(key) >= 0) {
-        	var pathSpan = $('<span>');
-        	pathSpan.append($('<span>').text('Available to: '));
-        	pathSpan.append(convertColorCodes(path.name));
-			pathSpan.append($('<span>').text(' for ' + spAmount + " SP"));
-            var availability = $('<div class="spellPathAvailability"/>').append(pathSpan);
-            detailsDiv.append(availability);
-            break;
-        }
-        if ('required_spells' in path && path.required_spells != null && path.required_spells.indexOf(key) >= 0) {
-			var pathSpan = $('<span>');
-			pathSpan.append($('<span>').text('Required at: '));
-			pathSpan.append(convertColorCodes(path.name));
-			pathSpan.append($('<span>').text(' for ' + spAmount + " SP"));
-            var requirement = $('<div class="spellPathRequirement"/>').append(pathSpan);
-            detailsDiv.append(requirement);
-            break;
-        }
+    // Check for path availability, resolved by catalog.php
+    var pathAvailability = spell.path_availability;
+    if (pathAvailability) {
+        var spAmount = spell.hasOwnProperty('worth') ? spell['worth'] : 0;
+        var available = pathAvailability.type == 'available';
+        var pathSpan = $('<span>');
+        pathSpan.append($('<span>').text(available ? 'Available to: ' : 'Required at: '));
+        pathSpan.append(convertColorCodes(pathAvailability.name));
+        pathSpan.append($('<span>').text(' for ' + spAmount + " SP"));
+        var availabilityClass = available ? 'spellPathAvailability' : 'spellPathRequirement';
+        detailsDiv.append($('<div class="' + availabilityClass + '"/>').append(pathSpan));
     }
 
 	// Check for rarity
@@ -731,17 +720,86 @@ function getWandItemDetails(key, wand, recipe)
 	return detailsDiv;
 }
  
+// Details are fetched from catalog.php one whole catalog at a time, the first time something is selected
+var spells = {};
+var paths = {};
+var recipes = {};
+var wands = {};
+var upgrades = {};
+var books = {};
+var mobs = {};
+
+var _catalogs = {
+	spell: spells,
+	path: paths,
+	recipe: recipes,
+	wand: wands,
+	upgrade: upgrades,
+	book: books,
+	mob: mobs
+};
+var _catalogRequests = {};
+
+function loadCatalog(type)
+{
+	if (!(type in _catalogRequests)) {
+		_catalogRequests[type] = $.ajax({
+			type: "GET",
+			url: "catalog.php",
+			data: {
+				example: configExample,
+				lang: configLanguage,
+				type: type
+			},
+			dataType: 'json'
+		}).done(function(response) {
+			$.extend(_catalogs[type], response);
+		}).fail(function() {
+			// Try again on the next selection
+			delete _catalogRequests[type];
+		});
+	}
+	return _catalogRequests[type];
+}
+
+function showDetails(container, type, key, getDetails)
+{
+	container.data('selectedKey', key);
+	// Wands, upgrades, paths and recipes list the spells they come with
+	var requests = [loadCatalog(type)];
+	if (type == 'wand' || type == 'upgrade' || type == 'path' || type == 'recipe') {
+		requests.push(loadCatalog('spell'));
+	}
+	var pending = false;
+	for (var i = 0; i < requests.length; i++) {
+		if (requests[i].state() != 'resolved') pending = true;
+	}
+	if (!pending) {
+		container.empty().append(getDetails(key));
+		return;
+	}
+
+	container.empty().append($('<div class="loading"/>').text("Loading..."));
+	$.when.apply($, requests).done(function() {
+		// Skip responses that come back after something else was selected
+		if (container.data('selectedKey') != key) return;
+		container.empty().append(getDetails(key));
+	}).fail(function() {
+		if (container.data('selectedKey') != key) return;
+		container.empty().append($('<span/>').text("Sorry, something went wrong!"));
+	});
+}
+
 $(document).ready(function() {
 	$("#tabs").tabs();
-	if (books.length == 0) {
+	if (!hasBooks) {
 		$('#booksTab').hide(); 
 	} else {
 		$("#bookList").selectable({
 			selected: function(event, ui) {
 				var selected = jQuery(".ui-selected", this);
 				var key = selected.prop('id').substr(5);
-				$('#bookDetails').empty();
-				$('#bookDetails').append(getBookDetails(key));
+				showDetails($('#bookDetails'), 'book', key, getBookDetails);
 			}
 	    });
 	}
@@ -749,48 +807,42 @@ $(document).ready(function() {
 		selected: function(event, ui) {
 			var selected = jQuery(".ui-selected", this);
 			var key = selected.prop('id').substr(6);
-			$('#spellDetails').empty();
-			$('#spellDetails').append(getSpellDetails(key));
+			showDetails($('#spellDetails'), 'spell', key, getSpellDetails);
 		}
     });
     $("#craftingList").selectable({
         selected: function(event, ui) {
             var selected = jQuery(".ui-selected", this);
             var key = selected.prop('id').substr(7);
-            $('#craftingDetails').empty();
-            $('#craftingDetails').append(getRecipeDetails(key));
+            showDetails($('#craftingDetails'), 'recipe', key, getRecipeDetails);
         }
     });
     $("#enchantingList").selectable({
         selected: function(event, ui) {
             var selected = jQuery(".ui-selected", this);
             var key = selected.prop('id').substr(5);
-            $('#enchantingDetails').empty();
-            $('#enchantingDetails').append(getPathDetails(key));
+            showDetails($('#enchantingDetails'), 'path', key, getPathDetails);
         }
     });
     $("#wandList").selectable({
 		selected: function(event, ui) {
 			var selected = jQuery(".ui-selected", this);
 			var key = selected.prop('id').substr(5);
-			$('#wandDetails').empty();
-			$('#wandDetails').append(getWandDetails(key));
+			showDetails($('#wandDetails'), 'wand', key, getWandDetails);
 		}
     });
     $("#upgradeList").selectable({
 		selected: function(event, ui) {
 			var selected = jQuery(".ui-selected", this);
 			var key = selected.prop('id').substr(5);
-			$('#upgradeDetails').empty();
-			$('#upgradeDetails').append(getWandUpgradeDetails(key));
+			showDetails($('#upgradeDetails'), 'upgrade', key, getWandUpgradeDetails);
 		}
     });
     $("#mobList").selectable({
 		selected: function(event, ui) {
 			var selected = jQuery(".ui-selected", this);
 			var key = selected.prop('id').substr(4);
-			$('#mobDetails').empty();
-			$('#mobDetails').append(getMobDetails(key));
+			showDetails($('#mobDetails'), 'mob', key, getMobDetails);
 		}
     });
 
@@ -16,40 +16,67 @@ if (!isset($_REQUEST['description'])) {
     die(json_encode(array('success' => false, 'message' => 'Missing description parameter')));
 }
 
-$metadata = json_decode(file_get_contents('common/meta.json'));
-
+// Property keys are checked against the key list MagicMeta saves next to meta.json,
+// decoding meta.json here would make each edit cost as much as the whole metadata file.
 $property = $_REQUEST['property'];
-if (!property_exists($metadata->properties, $property)) {
+if (!is_string($property) || !preg_match('/^[A-Za-z0-9_]+$/', $property)) {
     die(json_encode(array('success' => false, 'message' => 'Invalid property key: ' . $property)));
 }
+$propertyKeys = @file_get_contents('common/property_keys.json');
+if ($propertyKeys !== FALSE) {
+    $propertyKeys = json_decode($propertyKeys, true);
+} else {
+    // For meta.json files generated before MagicMeta wrote the key list out
+    $meta = json_decode(file_get_contents('common/meta.json'), true);
+    $propertyKeys = isset($meta['properties']) ? array_keys($meta['properties']) : null;
+}
+if (!is_array($propertyKeys) || !in_array($property, $propertyKeys, true)) {
+    die(json_encode(array('success' => false, 'message' => 'Unknown property: ' . $property)));
+}
 
 $description = $_REQUEST['description'];
 if (!is_array($description)) {
     $description = array($description);
 }
+$description = array_values(array_map('strval', $description));
 
-$previous = $metadata->properties->$property->description;
-$metadata->properties->$property->description = $description;
+$edit = array(
+    'timestamp' => time(),
+    'id' => $user['id'],
+    'name' => $user['name'],
+    'property' => $property,
+    'description' => $description
+);
 
-$metadata = json_encode($metadata, JSON_PRETTY_PRINT);
-
-if (file_put_contents('common/meta.json', $metadata) === FALSE) {
-    die(json_encode(array('success' => false, 'message' => 'Could not write to metadata file')));
+// Edits are appended to a log which is overlaid onto meta.json when serving metadata,
+// and folded back into meta.json by MagicMeta the next time it loads it.
+// MagicMeta moves the log aside to compact it, if that happens between opening and locking
+// it then open the new log instead. Anything that still lands in the old one is carried over.
+$logFilename = 'common/descriptions.log';
+for ($attempt = 0; $attempt < 3; $attempt++) {
+    $logFile = fopen($logFilename, 'a');
+    if ($logFile === FALSE) {
+        die(json_encode(array('success' => false, 'message' => 'Could not open description log')));
+    }
+    flock($logFile, LOCK_EX);
+    clearstatcache(true, $logFilename);
+    $opened = fstat($logFile);
+    $current = @stat($logFilename);
+    if ($current !== FALSE && $current['ino'] == $opened['ino']) break;
+    flock($logFile, LOCK_UN);
+    fclose($logFile);
+    $logFile = FALSE;
+}
+if ($logFile === FALSE) {
+    die(json_encode(array('success' => false, 'message' => 'Could not open description log')));
 }
+$written = fwrite($logFile, json_encode($edit) . "\n");
+fflush($logFile);
+flock($logFile, LOCK_UN);
+fclose($logFile);
 
-if (file_exists('common/edits.json')) {
-    $edits = json_decode(file_get_contents('common/edits.json'), true);
-    $edit = array(
-        'timestamp' => time(),
-        'id' => $user['id'],
-        'name' => $user['name'],
-        'property' => $property,
-        'description' => $description,
-        'previous' => $previous
-    );
-    array_push($edits, $edit);
-    $edits = json_encode($edits, JSON_PRETTY_PRINT);
-    file_put_contents('common/edits.json', $edits);
+if ($written === FALSE) {
+    die(json_encode(array('success' => false, 'message' => 'Could not write to description log')));
 }
 
-echo json_encode(array('success' => true, 'message' => 'Updated, Thank you!'));
\ No newline at end of file
+echo json_encode(array('success' => true, 'message' => 'Updated, Thank you!'));
@@ -15,6 +15,7 @@ $version = 3;
     <script src="common/js/jquery-1.10.2.min.js"></script>
     <script src="common/js/jquery-ui-1.10.3.custom.min.js"></script>
     <script src="common/js/loading.js?v=<?=$version?>"></script>
+    <script src="common/js/metasearch.js?v=<?=$version?>"></script>
     <script src="js/reference.js?v=<?=$version?>"></script>
     <?php if ($analytics) echo $analytics; ?>
 </head>
@@ -32,6 +33,7 @@ $version = 3;
             <li><a href="#modifiers">Modifiers</a></li>
             <li><a href="#mobs">Mobs</a></li>
             <li><a href="#crafting">Crafting</a></li>
+            <li><a href="#search">Search</a></li>
         </ul>
     </div>
     <div id="spellProperties" class="flextab">
@@ -242,6 +244,22 @@ $version = 3;
             </div>
         </div>
     </div>
+    <div id="search" class="flextab">
+        <div class="flexContainer">
+            <div class="scrollingTab">
+                <input type="text" id="searchInput" placeholder="Search properties, actions, effects..."/>
+                <ol id="searchResults">
+                </ol>
+            </div>
+            <div class="details" id="searchDetails">
+                <div>
+                Search the names and descriptions of every property, action, effect, type and category.
+                <br/><br/>
+                Select a result for details.
+                </div>
+            </div>
+        </div>
+    </div>
 </div>
 
 <div id="addDescriptionDialog" title="Describe Property" style="display: none">
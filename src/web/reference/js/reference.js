@@ -5,25 +5,21 @@ var metadata = null;
 var _selectedDetails = [];
 var _selectedTab = "spell_properties";
 var _firstLoad = true;
+var _search = null;
+var _searchLoading = false;
 
 function processMetadata(meta) {
+    // Aliases are indexed when the metadata is generated, see EditorIndexes
     var properties = meta.properties;
-    var filtered = {};
-
-    for (var key in properties) {
-        var property = properties[key];
-        if (property.hasOwnProperty('alias')) {
-            var aliased = properties[property.alias];
-            if (aliased.hasOwnProperty('aliases')) {
-                aliased.aliases.push(key)
-            } else {
-                aliased.aliases = [key];
-            }
-        } else {
-            filtered[key] = property;
+    var aliases = meta.indexes.aliases;
+    for (var key in aliases) {
+        if (!aliases.hasOwnProperty(key)) continue;
+        var aliasKeys = aliases[key];
+        properties[key].aliases = aliasKeys;
+        for (var i = 0; i < aliasKeys.length; i++) {
+            delete properties[aliasKeys[i]];
         }
     }
-    meta.properties = filtered;
     return meta;
 }
 
@@ -318,6 +314,82 @@ function getSelectable(selectable, key) {
     return parameterItem;
 }
 
+function loadSearch() {
+    if (_searchLoading) return;
+    _searchLoading = true;
+    $.ajax( {
+        type: "GET",
+        url: "common/search.json",
+        dataType: 'json'
+    }).done(function(index) {
+        _search = new MetaSearch(index);
+        populateSearchResults();
+    }).fail(function() {
+        _searchLoading = false;
+    });
+}
+
+function getSearchTarget(kind, key) {
+    switch (kind) {
+        case 'property': return metadata.properties[key];
+        case 'type': return metadata.types[key];
+        case 'action': return metadata.classed.actions[key];
+        case 'effectlib': return metadata.classed.effectlib_effects[key];
+        case 'category': return metadata.categories[key];
+    }
+    return null;
+}
+
+function populateSearchResults() {
+    if (_search == null) {
+        loadSearch();
+        return;
+    }
+    var list = $('#searchResults');
+    list.empty();
+    var results = _search.search($('#searchInput').val(), 100);
+    for (var i = 0; i < results.length; i++) {
+        var result = results[i];
+        var target = getSearchTarget(result.kind, result.key);
+        if (!target) continue;
+        var item = getSelectable(target, result.key);
+        item.attr('data-kind', result.kind);
+        item.data('kind', result.kind);
+        list.append(item);
+    }
+}
+
+function addSearchResultDetails(container, listItem) {
+    var key = listItem.data('key');
+    switch (listItem.data('kind')) {
+        case 'property':
+            addParameterDetails(container, listItem);
+            break;
+        case 'action':
+            addPropertyHolderDetails(container, key, 'actions', 'action_parameters', 'compound', 'compound_action_parameters');
+            break;
+        case 'effectlib':
+            addPropertyHolderDetails(container, key, 'effectlib_effects', 'effectlib_properties');
+            break;
+        case 'type':
+            addNamedDetails(container, metadata.types[key]);
+            populateOptions(metadata.types[key].options, container);
+            break;
+        case 'category':
+            addNamedDetails(container, metadata.categories[key]);
+            break;
+    }
+}
+
+function addNamedDetails(container, described) {
+    container.append($('<div class="titleBanner"/>').text(described.name));
+    var description = $('<div class="propertyTypeDescription"/>');
+    for (var i = 0; i < described.description.length; i++) {
+        description.append($('<div class="descriptionLine"/>').html(described.description[i]));
+    }
+    container.append(description);
+}
+
 function addPropertyDescription(key, descriptionContainer) {
     var property = metadata.properties[key];
     $('#describePropertyName').text(property.name);
@@ -387,6 +459,10 @@ function initialize() {
         makePropertyHolderSelector($("#effectList"), "effectlib_effects", $('#effectDetails'), 'effectlib_properties');
         makePropertyHolderSelector($("#actionList"), "actions", $('#actionDetails'), 'action_parameters', 'compound', 'compound_action_parameters');
 
+        // The search index is only loaded once something is searched for
+        makeSelectable($("#searchResults"), $('#searchDetails'), addSearchResultDetails, 1);
+        $('#searchInput').on('input', populateSearchResults);
+
         // Kinda hacky but not sure how to work around this
         var currentHash = window.location.hash;
         if (currentHash != '') {
@@ -2,7 +2,7 @@
 require_once('../config.inc.php');
 require_once('common/user.inc.php');
 if (!$sandboxServer) die('No sandbox server defined');
-$version = 3;
+$version = 4;
 
 $user = getUser();
 
@@ -51,6 +51,7 @@ $user = getUser();
 
     <script src="common/js/formatters.js?v=<?=$version?>"></script>
     <script src="common/js/hints.js?v=<?=$version?>"></script>
+    <script src="common/js/metafeed.js?v=<?=$version?>"></script>
     <script src="js/editor.js?v=<?=$version?>"></script>
     <script src="js/tutorial.js?v=<?=$version?>"></script>
     <script src="js/main.js?v=<?=$version?>"></script>
@@ -58,6 +59,7 @@ $user = getUser();
     <script type="text/javascript">
         var user = <?= json_encode($user) ?>;
         var referenceURL = '//<?= $referenceURL ?>';
+        var _metaFeed = <?= $metaServiceURL ? 'true' : 'false'; ?>;
     </script>
     <?php if ($analytics) echo $analytics; ?>
 </head>
@@ -115,6 +117,7 @@ $user = getUser();
 <?php include 'common/register.inc.php' ?>
 
 <div id="loadSpellDialog" title="Load Spell" style="display:none">
+    <input type="text" id="loadSpellFilter" placeholder="Search spells">
     <table id="loadSpellsTable">
         <colgroup>
             <col><col><col><col style="width: 100%">
@@ -7,6 +7,12 @@ function Editor(container)
     this.spellFiles = null;
     this.metadata = null;
     this.spellKeys = {};
+    this.spellFilter = '';
+    this.spellFilterTimer = null;
+    this.spellPage = 0;
+    this.spellPageSize = 100;
+    this.spellTotal = 0;
+    this.spellGroups = {};
 
     this.editor = CodeMirror.fromTextArea(container.get(0), {
         mode: 'yaml',
@@ -85,28 +91,34 @@ Editor.prototype.startNew = function(template) {
     this.setText($('#template' + template).val());
 };
 
-Editor.prototype.getSpellFiles = function(callback) {
+Editor.prototype.getSpellKeys = function(callback) {
     if (this.loading) return null;
 
     if (this.spellFiles == null) {
         this.loading = true;
         var me = this;
-        $("#loadButton").button('disable');
         $.ajax( {
             type: "POST",
             url: "spells.php",
+            data: {
+                keys: true
+            },
             dataType: 'json'
         }).done(function(response) {
             me.loading = false;
-            $("#loadButton").button('enable');
             if (!response.success) {
                 alert("Failed to fetch spells: " + response.message);
             } else {
-                me.spellFiles = response.spells;
-                if (me.spellFiles != null) {
-                    me.populateSpellFiles();
-                    callback();
+                me.spellFiles = response.keys;
+                me.spellKeys = {};
+                for (var i = 0; i < me.spellFiles.length; i++) {
+                    var key = me.spellFiles[i];
+                    if (key.startsWith("survival.")) {
+                        key = key.substr(9);
+                    }
+                    me.spellKeys[key] = true;
                 }
+                callback();
             }
         });
         return null;
@@ -115,10 +127,45 @@ Editor.prototype.getSpellFiles = function(callback) {
     return this.spellFiles;
 };
 
+Editor.prototype.fetchSpellPage = function(page) {
+    if (this.loading) return;
+
+    this.loading = true;
+    var me = this;
+    $("#loadButton").button('disable');
+    $.ajax( {
+        type: "POST",
+        url: "spells.php",
+        data: {
+            filter: this.spellFilter,
+            page: page,
+            page_size: this.spellPageSize
+        },
+        dataType: 'json'
+    }).done(function(response) {
+        me.loading = false;
+        $("#loadButton").button('enable');
+        if (!response.success) {
+            alert("Failed to fetch spells: " + response.message);
+        } else {
+            me.spellPage = page;
+            me.spellTotal = response.total;
+            me.populateSpellFiles(response.spells, page > 0);
+        }
+    });
+};
+
 Editor.prototype.load = function() {
     var me = this;
-    var spells = this.getSpellFiles(function() { me.load(); });
-    if (spells == null) return;
+    this.spellFilter = '';
+    $('#loadSpellFilter').val('').off('input').on('input', function() {
+        var filter = $(this).val().trim();
+        if (filter == me.spellFilter) return;
+        me.spellFilter = filter;
+        clearTimeout(me.spellFilterTimer);
+        me.spellFilterTimer = setTimeout(function() { me.fetchSpellPage(0); }, 250);
+    });
+    this.fetchSpellPage(0);
 
     $("#loadSpellDialog").dialog({
         modal: true,
@@ -171,33 +218,18 @@ Editor.prototype.loadFile = function(fileName) {
     });
 };
 
-Editor.prototype.populateSpellFiles = function() {
+Editor.prototype.populateSpellFiles = function(spells, append) {
     var select = $('#loadSpellList');
-    select.empty();
-    this.spellKeys = {};
+    select.find('.moreRow').remove();
+    if (!append) {
+        select.empty();
+        this.spellGroups = {owned: false, unowned: false, defaults: false};
+    }
 
-    this.spellFiles.sort(function(a, b) {
-        var aIsDefault = (a.creator_id == '');
-        var bIsDefault = (b.creator_id == '');
-        if (aIsDefault && !bIsDefault) {
-            return 1;
-        } else if (!aIsDefault && bIsDefault) {
-            return -1;
-        }
-        var aIsCreators = (user.id != '' && a.creator_id != '' && a.creator_id == user.id);
-        var bIsCreators = (user.id != '' && b.creator_id != '' && b.creator_id == user.id);
-        if (aIsCreators && !bIsCreators) {
-            return -1;
-        } else if (!aIsCreators && bIsCreators) {
-            return 1;
-        }
-        return a.key.localeCompare(b.key);
-    });
-    var owned = false;
-    var unowned = false;
-    var defaults = false;
-    for (var i = 0; i < this.spellFiles.length; i++) {
-        var spell = this.spellFiles[i];
+    // Spells arrive sorted by spells.php: your own first, then other sandbox spells, then survival defaults
+    var groups = this.spellGroups;
+    for (var i = 0; i < spells.length; i++) {
+        var spell = spells[i];
         var key = spell.key;
         var loadKey = key;
         var isDefault = false;
@@ -206,15 +238,15 @@ Editor.prototype.populateSpellFiles = function() {
             key = key.substr(9);
         }
         var groupLabel = null;
-        if (!owned && spell.creator_id != '' && spell.creator_id == user.id) {
-            owned = true;
+        if (!groups.owned && spell.creator_id != '' && spell.creator_id == user.id) {
+            groups.owned = true;
             groupLabel = "Your Spells";
         }
-        if (!unowned && (spell.creator_id == ''|| spell.creator_id !== user.id)) {
-            unowned = true;
+        if (!groups.unowned && (spell.creator_id == ''|| spell.creator_id !== user.id)) {
+            groups.unowned = true;
             groupLabel = "Sandbox Spells Created by Others";
-        } else if (!defaults && isDefault) {
-            defaults = true;
+        } else if (!groups.defaults && isDefault) {
+            groups.defaults = true;
             groupLabel = "Default Survival Spells";
         }
         if (groupLabel != null) {
@@ -232,7 +264,18 @@ Editor.prototype.populateSpellFiles = function() {
             )
         ));
         select.append(spellRow);
-        this.spellKeys[key] = true;
+    }
+
+    var loaded = (this.spellPage + 1) * this.spellPageSize;
+    if (loaded < this.spellTotal) {
+        var me = this;
+        var moreRow = $('<tr class="headerRow moreRow">');
+        var moreCell = $('<td>').prop('colspan', 4).text("Show more (" + (this.spellTotal - loaded) + " remaining)");
+        moreRow.click(function(event) {
+            event.stopPropagation();
+            me.fetchSpellPage(me.spellPage + 1);
+        });
+        select.append(moreRow.append(moreCell));
     }
 };
 
@@ -298,7 +341,7 @@ Editor.prototype.deleteSpell = function() {
 
 Editor.prototype.fork = function() {
     var me = this;
-    var spells = this.getSpellFiles(function() { me.fork(); });
+    var spells = this.getSpellKeys(function() { me.fork(); });
     if (spells == null) return;
 
     var spellConfig = this.getText();
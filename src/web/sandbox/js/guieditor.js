@@ -52,6 +52,13 @@ function GUIEditor(container)
                   .nextAll().remove();
             }
         },
+        lazyLoad: function(event, data) {
+            // Folders past the node budget keep their config until they are first expanded
+            var node = data.node;
+            editor.nodeBudget = GUIEditor.NODE_BUDGET;
+            data.result = editor.getChildNodes(node.data.config, node.data.metaSection);
+            delete node.data.config;
+        },
         renderColumns: function(event, data) {
             var node = data.node;
             var tdList = $(node.tr).find(">td");
@@ -69,6 +76,14 @@ function GUIEditor(container)
     var editor = this;
     this.tree = fancytree.fancytree("getTree");
 
+    // Rows are only rendered for expanded nodes, so keep values on the nodes rather than reading inputs back
+    container.on("input change", "input.propertyInput", function() {
+        var node = $.ui.fancytree.getNode(this);
+        if (node) {
+            node.data.value = $(this).val();
+        }
+    });
+
     fancytree.on("nodeCommand", function (event, data) {
         // Custom event handler that is triggered by keydown-handler and
         // context menu:
@@ -238,21 +253,25 @@ function GUIEditor(container)
     });
 };
 
+// Spells are built fully expanded until this many nodes have been created,
+// past that folders are left collapsed and only get their children when expanded.
+GUIEditor.NODE_BUDGET = 500;
+
 GUIEditor.prototype.setMetadata = function(meta)
 {
-    this.metaindex = {};
+    // Field lookups are generated along with the metadata, see EditorIndexes
+    var fields = meta.indexes.fields;
+    var classFields = meta.indexes.merged_class_fields;
     this.metadata = meta;
-    this.indexMetadata("spell_properties");
-    this.indexMetadata("spell_parameters");
-    this.indexMetadata("effect_parameters");
-    this.indexMetadata("effectlib_parameters");
-    this.indexMetadata("action_parameters");
-
-    var allEffectParameters = this.mergeMetadata("effectlib_effects");
-    this.metaindex['all_effect_parameters'] = $.extend(allEffectParameters, this.metaindex["effect_parameters"], this.metaindex["effectlib_parameters"]);
-
-    var allActionParameters = this.mergeMetadata("actions");
-    this.metaindex['all_action_parameters'] = $.extend(allActionParameters, this.metaindex["action_parameters"]);
+    this.metaindex = {
+        spell_properties: fields["spell_properties"],
+        spell_parameters: fields["spell_parameters"],
+        effect_parameters: fields["effect_properties"],
+        effectlib_parameters: fields["effectlib_properties"],
+        action_parameters: fields["action_parameters"]
+    };
+    this.metaindex['all_effect_parameters'] = $.extend({}, classFields["effectlib_effects"], this.metaindex["effect_parameters"], this.metaindex["effectlib_parameters"]);
+    this.metaindex['all_action_parameters'] = $.extend({}, classFields["actions"], this.metaindex["action_parameters"]);
     this.metaindex['all_spell_parameters'] = $.extend({}, this.metaindex["all_action_parameters"], this.metaindex["spell_parameters"]);
 
     if (this.pendingConfig != null) {
@@ -279,37 +298,6 @@ GUIEditor.prototype.setMetadata = function(meta)
     }
 };
 
-GUIEditor.prototype.mergeMetadata = function(section) {
-    var properties = this.metadata.properties;
-    var allParameters = {};
-    for (var parameterClass in this.metadata[section]) {
-        if (this.metadata[section].hasOwnProperty(parameterClass)) {
-            var classSection = this.metadata[section][parameterClass].parameters;
-            for (var key in classSection) {
-                if (classSection.hasOwnProperty(key)) {
-                    var property = properties[key];
-                    allParameters[property.field] = key;
-                }
-            }
-        }
-    }
-
-    return allParameters;
-};
-
-GUIEditor.prototype.indexMetadata = function(section) {
-    var properties = this.metadata.properties;
-    var sectionProperties = this.metadata[section];
-    var propertyIndex = {};
-    for (var key in sectionProperties) {
-        if (sectionProperties.hasOwnProperty(key)) {
-            var property = properties[key];
-            propertyIndex[property.field] = key;
-        }
-    }
-    this.metaindex[section] = propertyIndex;
-};
-
 GUIEditor.prototype.setValue = function(spellConfig)
 {
     if (this.metadata == null) {
@@ -373,13 +361,27 @@ GUIEditor.prototype.getSpellValue = function(spellNode)
     return spell;
 };
 
+GUIEditor.prototype.getNodeValue = function(node) {
+    return node.data.value == null ? '' : String(node.data.value);
+};
+
+// Config of a folder that was never expanded, so has no child nodes yet
+GUIEditor.prototype.getUnloadedConfig = function(node) {
+    if (!node.isLazy() || node.isLoaded() || !node.data.hasOwnProperty('config')) return null;
+    var config = node.data.config;
+    return $.extend(true, Array.isArray(config) ? [] : {}, config);
+};
+
 GUIEditor.prototype.appendClassListToObject = function(nodes, list) {
     if (nodes == null) return;
     for (var i = 0; i < nodes.length; i++) {
-        var nodeInput = $("input", nodes[i].tr);
-        var value = nodeInput.val();
-        var newObject = {class: value};
-        this.appendToObject(nodes[i].children, newObject);
+        var newObject = {class: this.getNodeValue(nodes[i])};
+        var unloaded = this.getUnloadedConfig(nodes[i]);
+        if (unloaded != null) {
+            $.extend(newObject, unloaded);
+        } else {
+            this.appendToObject(nodes[i].children, newObject);
+        }
         list.push(newObject);
     }
 };
@@ -388,7 +390,10 @@ GUIEditor.prototype.appendToObject = function(nodes, object) {
     if (nodes == null) return;
     for (var i = 0; i < nodes.length; i++) {
         var node = nodes[i];
-        if (node.data.type == 'action_handler') {
+        var unloaded = this.getUnloadedConfig(node);
+        if (unloaded != null) {
+            object[node.title] = unloaded;
+        } else if (node.data.type == 'action_handler') {
             var newList = [];
             this.appendClassListToObject(node.children, newList);
             object[node.title] = newList;
@@ -397,8 +402,7 @@ GUIEditor.prototype.appendToObject = function(nodes, object) {
             this.appendToObject(node.children, newObject);
             object[node.title] = newObject;
         } else {
-            var nodeInput = $("input", node.tr);
-            var value = nodeInput.val();
+            var value = this.getNodeValue(node);
             if (node.data.type == 'double') {
                 value = parseFloat(value);
             } else if (node.data.type == 'integer') {
@@ -414,6 +418,7 @@ GUIEditor.prototype.appendToObject = function(nodes, object) {
 
 GUIEditor.prototype.convertToTree = function(config) {
     var tree = [];
+    this.nodeBudget = GUIEditor.NODE_BUDGET;
     for (var key in config) {
         if (config.hasOwnProperty(key)) {
             var spell = {
@@ -431,6 +436,7 @@ GUIEditor.prototype.convertToTree = function(config) {
 
 GUIEditor.prototype.getNode = function(key, value, metaSection, nodeType) {
     var node = {title: key, data: {}};
+    this.nodeBudget--;
 
     if (metaSection && this.metaindex[metaSection].hasOwnProperty(key)) {
         var propertyKey = this.metaindex[metaSection][key];
@@ -438,30 +444,14 @@ GUIEditor.prototype.getNode = function(key, value, metaSection, nodeType) {
     } else if (nodeType) {
         node.data.type = nodeType;
     }
-    if (Array.isArray(value))
-    {
-        node.children = [];
-        node.folder = true;
-        node.expanded = true;
-
-        // TODO: This should be handled generically?
-        node.data.type = 'action_handler';
-        for (var i = 0; i < value.length; i++) {
-            var className = value[i]['class'];
-            delete value[i]['class'];
-            this.addConfigurableClass(value[i], className, node.children, metaSection);
-        }
-    }
-    else if (typeof(value) === 'object')
+    if (Array.isArray(value) || typeof(value) === 'object')
     {
-        node.children = [];
         node.folder = true;
-        node.expanded = true;
-        for (var childKey in value) {
-            if (value.hasOwnProperty(childKey)) {
-                node.children.push(this.getNode(childKey, value[childKey], metaSection));
-            }
+        if (Array.isArray(value)) {
+            // TODO: This should be handled generically?
+            node.data.type = 'action_handler';
         }
+        this.setChildNodes(node, value, metaSection);
     } else {
         node.value = value;
     }
@@ -469,6 +459,39 @@ GUIEditor.prototype.getNode = function(key, value, metaSection, nodeType) {
     return node;
 };
 
+// Builds the children of a folder now, or marks it lazy if we're out of budget
+GUIEditor.prototype.setChildNodes = function(node, config, metaSection) {
+    if (this.nodeBudget > 0) {
+        node.children = this.getChildNodes(config, metaSection);
+        node.expanded = true;
+    } else {
+        node.lazy = true;
+        node.data.config = config;
+        node.data.metaSection = metaSection;
+    }
+};
+
+GUIEditor.prototype.getChildNodes = function(config, metaSection) {
+    var children = [];
+    if (config == null) return children;
+    if (Array.isArray(config)) {
+        for (var i = 0; i < config.length; i++) {
+            // Copied, the original is still needed if this is saved before being expanded
+            var classConfig = $.extend({}, config[i]);
+            var className = classConfig['class'];
+            delete classConfig['class'];
+            this.addConfigurableClass(classConfig, className, children, metaSection);
+        }
+    } else {
+        for (var key in config) {
+            if (config.hasOwnProperty(key)) {
+                children.push(this.getNode(key, config[key], metaSection));
+            }
+        }
+    }
+    return children;
+};
+
 GUIEditor.prototype.convertSpellToTree = function(config) {
     var tree = [];
 
@@ -520,12 +543,11 @@ GUIEditor.prototype.addSection = function(section, title, tree, metaSection, nod
 GUIEditor.prototype.addConfigurableClass = function(section, value, tree, metaSection, classType) {
     var sectionFolder = {
         title: 'class',
-        children: [],
-        expanded: true,
         folder: false,
         value: value,
         data: {}
     };
+    this.nodeBudget--;
 
     if (classType) {
         sectionFolder.data.type = classType;
@@ -534,13 +556,7 @@ GUIEditor.prototype.addConfigurableClass = function(section, value, tree, metaSe
         sectionFolder.data.type = this.metadata.properties[propertyKey].type;
     }
 
-    if (section != null) {
-        for (var key in section) {
-            if (section.hasOwnProperty(key)) {
-                sectionFolder.children.push(this.getNode(key, section[key], metaSection));
-            }
-        }
-    }
+    this.setChildNodes(sectionFolder, section, metaSection);
     tree.push(sectionFolder);
 };
 
@@ -56,6 +56,11 @@ function initialize() {
         dataType: 'json'
     }).done(function(meta) {
         editor.setMetadata(meta);
+        if (_metaFeed) {
+            new MetaFeed("common/metafeed.php", "common/meta.php?context", function(meta) {
+                editor.setMetadata(meta);
+            }).start(meta);
+        }
     });
 
     if (user.id == '') {
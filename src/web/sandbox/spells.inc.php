@@ -0,0 +1,246 @@
+<?php
+require_once('../config.inc.php');
+
+// Persistent catalog of sandbox and survival spells.
+// Each spell file is only re-parsed when its mtime or size changes, everything else is served from the index.
+
+function endsWith($haystack, $needle)
+{
+    $length = strlen($needle);
+    return $length === 0 || (substr($haystack, -$length) === $needle);
+}
+
+function getConfigString($config, $key) {
+    return isset($config[$key]) && is_scalar($config[$key]) ? (string)$config[$key] : '';
+}
+
+function parseSandboxSpell($spellFolder, $spellFile) {
+    $spellConfig = yaml_parse_file($spellFolder . '/' . $spellFile);
+    if (!$spellConfig) {
+        error_log("Error parsing spell file: " . $spellFolder . '/' . $spellFile);
+        return null;
+    }
+    $spellKeys = array_keys($spellConfig);
+
+    // TODO: Spell levels
+    if (count($spellKeys) != 1) return null;
+
+    $spellKey = $spellKeys[0];
+    if ($spellFile != $spellKey . '.yml') return null;
+
+    $spellConfig = $spellConfig[$spellKey];
+    return array(
+        'key' => $spellKey,
+        'creator_id' => getConfigString($spellConfig, 'creator_id'),
+        'creator_name' => getConfigString($spellConfig, 'creator_name'),
+        'name' => getConfigString($spellConfig, 'name'),
+        'description' => getConfigString($spellConfig, 'description')
+    );
+}
+
+function parseSurvivalSpell($survivalFolder, $spellFile) {
+    $spellConfig = yaml_parse_file($survivalFolder . '/' . $spellFile);
+    if (!$spellConfig) {
+        error_log("Error parsing spell file: " . $survivalFolder . '/' . $spellFile);
+        return null;
+    }
+    $spellKeys = array_keys($spellConfig);
+    if (count($spellKeys) == 0) return null;
+    $spellKey = $spellKeys[0];
+
+    $spellConfig = $spellConfig[$spellKey];
+    if (isset($spellConfig['hidden']) && $spellConfig['hidden']) return null;
+    if ($spellKey === 'default') return null;
+
+    return array(
+        'key' => 'survival.' . $spellKey,
+        'creator_id' => getConfigString($spellConfig, 'creator_id'),
+        'creator_name' => getConfigString($spellConfig, 'creator_name'),
+        'name' => getConfigString($spellConfig, 'name'),
+        'description' => getConfigString($spellConfig, 'description')
+    );
+}
+
+function parseSurvivalMessages($messagesFile) {
+    $messages = array();
+    $survivalMessages = yaml_parse_file($messagesFile);
+    if (!$survivalMessages || !isset($survivalMessages['spells'])) {
+        return $messages;
+    }
+    foreach ($survivalMessages['spells'] as $spellKey => $spellMessages) {
+        if (!is_array($spellMessages)) continue;
+        $messages[$spellKey] = array(
+            'name' => getConfigString($spellMessages, 'name'),
+            'description' => getConfigString($spellMessages, 'description')
+        );
+    }
+    return $messages;
+}
+
+function fileStamp($filename) {
+    $stat = @stat($filename);
+    if ($stat === FALSE) return null;
+    return $stat['mtime'] . ':' . $stat['size'];
+}
+
+function updateSpellFolder($folder, $skipFiles, $parser, &$entries, &$changed) {
+    $updated = array();
+    $spellFiles = @scandir($folder);
+    if ($spellFiles === FALSE) {
+        $changed = $changed || count($entries) > 0;
+        $entries = $updated;
+        return;
+    }
+    foreach ($spellFiles as $spellFile) {
+        if (!endsWith($spellFile, '.yml') || in_array($spellFile, $skipFiles)) continue;
+
+        $stamp = fileStamp($folder . '/' . $spellFile);
+        if (isset($entries[$spellFile]) && $entries[$spellFile]['stamp'] === $stamp) {
+            $updated[$spellFile] = $entries[$spellFile];
+            continue;
+        }
+
+        // Unparseable files are indexed too, so they are not re-read until they change
+        $updated[$spellFile] = array(
+            'stamp' => $stamp,
+            'spell' => call_user_func($parser, $folder, $spellFile)
+        );
+        $changed = true;
+    }
+    if (count($updated) != count($entries)) {
+        $changed = true;
+    }
+    $entries = $updated;
+}
+
+// Checks stamps only, so listings can share the index without parsing anything
+function isSpellFolderCurrent($folder, $skipFiles, $entries) {
+    $spellFiles = @scandir($folder);
+    if ($spellFiles === FALSE) return count($entries) == 0;
+    $count = 0;
+    foreach ($spellFiles as $spellFile) {
+        if (!endsWith($spellFile, '.yml') || in_array($spellFile, $skipFiles)) continue;
+        if (!isset($entries[$spellFile]) || $entries[$spellFile]['stamp'] !== fileStamp($folder . '/' . $spellFile)) return false;
+        $count++;
+    }
+    return $count == count($entries);
+}
+
+function readSpellIndex($lockFile) {
+    $index = null;
+    rewind($lockFile);
+    $contents = stream_get_contents($lockFile);
+    if ($contents) {
+        $index = json_decode($contents, true);
+    }
+    if (!$index) {
+        $index = array('sandbox' => array(), 'survival' => array(), 'messages' => array('stamp' => null, 'spells' => array()));
+    }
+    return $index;
+}
+
+function getSpellIndex() {
+    global $sandboxServer;
+    global $magicRootFolder;
+    global $sessionFolder;
+
+    $indexFile = $sessionFolder . '/_spells.index';
+    $lockFile = fopen($indexFile, 'c+');
+    if ($lockFile === FALSE) {
+        error_log("Could not create file at $indexFile");
+        return null;
+    }
+    $sandboxFolder = "$sandboxServer/plugins/Magic/spells";
+    $survivalFolder = "$magicRootFolder/examples/survival/spells";
+    $survivalSkipFiles = array('_header.yml');
+    $messagesFile = "$magicRootFolder/examples/survival/messages/spells.yml";
+
+    flock($lockFile, LOCK_SH);
+    try {
+        $index = readSpellIndex($lockFile);
+        if (isSpellFolderCurrent($sandboxFolder, array(), $index['sandbox'])
+            && isSpellFolderCurrent($survivalFolder, $survivalSkipFiles, $index['survival'])
+            && $index['messages']['stamp'] === fileStamp($messagesFile)) {
+            return $index;
+        }
+
+        // Upgrading the lock is not atomic, so read the index again in case another request just rebuilt it
+        flock($lockFile, LOCK_EX);
+        $index = readSpellIndex($lockFile);
+        $changed = false;
+        updateSpellFolder($sandboxFolder, array(), 'parseSandboxSpell', $index['sandbox'], $changed);
+        updateSpellFolder($survivalFolder, $survivalSkipFiles, 'parseSurvivalSpell', $index['survival'], $changed);
+
+        $messagesStamp = fileStamp($messagesFile);
+        if ($index['messages']['stamp'] !== $messagesStamp) {
+            $index['messages'] = array(
+                'stamp' => $messagesStamp,
+                'spells' => $messagesStamp === null ? array() : parseSurvivalMessages($messagesFile)
+            );
+            $changed = true;
+        }
+
+        if ($changed) {
+            ftruncate($lockFile, 0);
+            rewind($lockFile);
+            fwrite($lockFile, json_encode($index));
+            fflush($lockFile);
+        }
+        return $index;
+    } finally {
+        flock($lockFile, LOCK_UN);
+        fclose($lockFile);
+    }
+}
+
+function getSpellCatalog() {
+    $index = getSpellIndex();
+    if ($index === null) return null;
+
+    $spells = array();
+    foreach ($index['sandbox'] as $entry) {
+        if ($entry['spell'] !== null) {
+            array_push($spells, $entry['spell']);
+        }
+    }
+    $survivalMessages = $index['messages']['spells'];
+    foreach ($index['survival'] as $entry) {
+        $spell = $entry['spell'];
+        if ($spell === null) continue;
+        $spellKey = substr($spell['key'], 9);
+        if (isset($survivalMessages[$spellKey])) {
+            if (!$spell['name']) {
+                $spell['name'] = $survivalMessages[$spellKey]['name'];
+            }
+            if (!$spell['description']) {
+                $spell['description'] = $survivalMessages[$spellKey]['description'];
+            }
+        }
+        array_push($spells, $spell);
+    }
+    return $spells;
+}
+
+function spellMatches($spell, $filter) {
+    foreach (array('key', 'name', 'creator_name', 'description') as $field) {
+        if (stripos($spell[$field], $filter) !== FALSE) return true;
+    }
+    return false;
+}
+
+// Orders the current user's spells first, then other sandbox spells, then survival defaults
+function sortSpells(&$spells, $userId) {
+    usort($spells, function($a, $b) use ($userId) {
+        $aIsDefault = $a['creator_id'] === '';
+        $bIsDefault = $b['creator_id'] === '';
+        if ($aIsDefault != $bIsDefault) {
+            return $aIsDefault ? 1 : -1;
+        }
+        $aIsCreators = $userId !== '' && $a['creator_id'] === $userId;
+        $bIsCreators = $userId !== '' && $b['creator_id'] === $userId;
+        if ($aIsCreators != $bIsCreators) {
+            return $aIsCreators ? -1 : 1;
+        }
+        return strcmp($a['key'], $b['key']);
+    });
+}